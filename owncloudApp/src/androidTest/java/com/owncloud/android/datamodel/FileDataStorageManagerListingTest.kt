@@ -0,0 +1,125 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.os.Debug
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.MainApp
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+
+/**
+ * Benchmark: latency and allocations to materialise a folder of 50k files, as full [OCFile]s and as [OCFileRow]s.
+ */
+@LargeTest
+class FileDataStorageManagerListingTest {
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+
+    private lateinit var account: Account
+    private lateinit var storageManager: FileDataStorageManager
+    private lateinit var folder: OCFile
+
+    @Before
+    fun setUp() {
+        val context = instrumentation.targetContext
+        account = Account(ACCOUNT_NAME, MainApp.accountType)
+        AccountManager.get(context).addAccountExplicitly(account, null, null)
+
+        storageManager = FileDataStorageManager(context, account, context.contentResolver)
+        val root = storageManager.getFileByPath(OCFile.ROOT_PATH)!!
+        folder = OCFile(FOLDER_PATH).apply {
+            parentId = root.fileId
+            mimetype = "DIR"
+            storageManager.saveFile(this)
+        }
+        val files = (0 until FILES).map { i ->
+            if (i % FOLDER_EVERY == 0) {
+                OCFile("${FOLDER_PATH}folder_$i/").apply { mimetype = "DIR" }
+            } else {
+                OCFile("${FOLDER_PATH}file_$i.jpg").apply {
+                    mimetype = "image/jpeg"
+                    fileLength = i.toLong()
+                    modificationTimestamp = i.toLong()
+                    etag = "etag"
+                }
+            }
+        }
+        storageManager.saveFolder(folder, files, emptyList())
+    }
+
+    @After
+    fun tearDown() {
+        storageManager.removeFolder(storageManager.getFileByPath(OCFile.ROOT_PATH), true, false)
+        @Suppress("DEPRECATION")
+        AccountManager.get(instrumentation.targetContext).removeAccount(account, null, null)
+    }
+
+    @Test
+    fun materialise50kFolder() {
+        // warm up the database and the code paths
+        storageManager.getFolderContent(folder)
+        storageManager.getFolderRows(folder.fileId)
+
+        val files = measure("full files") { storageManager.getFolderContent(folder).size }
+        val rows = measure("rows") { storageManager.getFolderRows(folder.fileId).size }
+        val subfolders = measure("subfolders") { storageManager.getSubfolders(folder).size }
+
+        assertEquals(FILES, files)
+        assertEquals(FILES, rows)
+        assertEquals(FILES / FOLDER_EVERY, subfolders)
+    }
+
+    /**
+     * Logs the time and the allocations of the current thread to load the folder.
+     *
+     * @return Number of files loaded.
+     */
+    @Suppress("DEPRECATION")
+    private fun measure(variant: String, load: () -> Int): Int {
+        Debug.resetThreadAllocCount()
+        Debug.resetThreadAllocSize()
+        Debug.startAllocCounting()
+        val start = SystemClock.elapsedRealtimeNanos()
+        val count = load()
+        val elapsed = (SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_MILLI
+        Debug.stopAllocCounting()
+
+        Timber.i(
+            "Materialising a folder of %d files as %s: %d loaded in %.1f ms, %d objects and %d KiB allocated",
+            FILES, variant, count, elapsed, Debug.getThreadAllocCount(), Debug.getThreadAllocSize() / 1024
+        )
+        return count
+    }
+
+    companion object {
+        private const val ACCOUNT_NAME = "benchmark@localhost"
+        private const val FOLDER_PATH = "/benchmark/"
+        private const val FILES = 50_000
+        private const val FOLDER_EVERY = 50
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.datamodel.UploadsStorageManager.UploadStatus
+import com.owncloud.android.db.UploadResult
+import com.owncloud.android.operations.UploadFileOperation
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+
+/**
+ * Benchmarks:
+ * - time to enqueue the uploads of 5,000 new photos in the database, one by one and in a batch, as camera uploads
+ * does after a long time without connection.
+ * - time to refresh the uploads list after a status change with 20,000 uploads stored, reloading all the groups
+ * and reloading only the upload changed.
+ */
+@LargeTest
+class UploadsStorageManagerTest {
+
+    private lateinit var uploadsStorageManager: UploadsStorageManager
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        uploadsStorageManager = UploadsStorageManager(context.contentResolver)
+    }
+
+    @After
+    fun tearDown() {
+        uploadsStorageManager.removeUploads(ACCOUNT_NAME)
+    }
+
+    @Test
+    fun enqueue5000Photos() {
+        val oneByOneUploads = newUploads("one_by_one")
+        val oneByOneStart = SystemClock.elapsedRealtime()
+        oneByOneUploads.forEach { uploadsStorageManager.storeUpload(it) }
+        val oneByOne = SystemClock.elapsedRealtime() - oneByOneStart
+
+        val batchUploads = newUploads("batch")
+        val batchStart = SystemClock.elapsedRealtime()
+        assertTrue(uploadsStorageManager.storeUploads(batchUploads))
+        val batch = SystemClock.elapsedRealtime() - batchStart
+
+        Timber.i("Enqueueing %d photos: %d ms one by one, %d ms in a batch", PHOTOS, oneByOne, batch)
+
+        assertEquals(PHOTOS, batchUploads.map { it.uploadId }.filter { it > 0 }.distinct().size)
+        assertEquals(
+            2 * PHOTOS,
+            uploadsStorageManager.allStoredUploads.count { it.accountName == ACCOUNT_NAME }
+        )
+    }
+
+    @Test
+    fun refreshListOf20000Uploads() {
+        val pending = newUploads("pending", HISTORY / 2)
+        val failed = newUploads("failed", HISTORY / 2).onEach {
+            it.uploadStatus = UploadStatus.UPLOAD_FAILED
+            it.lastResult = UploadResult.NETWORK_CONNECTION
+        }
+        assertTrue(uploadsStorageManager.storeUploads(pending + failed))
+        val changed = pending.last()
+
+        val fullStart = SystemClock.elapsedRealtimeNanos()
+        repeat(REFRESHES) {
+            uploadsStorageManager.currentAndPendingUploads
+            uploadsStorageManager.failedButNotDelayedForWifiUploads
+            uploadsStorageManager.finishedUploads
+        }
+        val full = (SystemClock.elapsedRealtimeNanos() - fullStart) / NANOS_PER_MILLI / REFRESHES
+
+        val incrementalStart = SystemClock.elapsedRealtimeNanos()
+        repeat(REFRESHES) {
+            assertNotNull(uploadsStorageManager.getUpload(changed.uploadId))
+        }
+        val incremental = (SystemClock.elapsedRealtimeNanos() - incrementalStart) / NANOS_PER_MILLI / REFRESHES
+
+        Timber.i(
+            "Refreshing the list of %d uploads after a change: %.1f ms reloading all, %.2f ms reloading the upload",
+            HISTORY, full, incremental
+        )
+    }
+
+    private fun newUploads(folder: String, count: Int = PHOTOS): List<OCUpload> = (0 until count).map { i ->
+        OCUpload("/sdcard/DCIM/Camera/$folder/IMG_$i.jpg", "/CameraUpload/$folder/IMG_$i.jpg", ACCOUNT_NAME).apply {
+            fileSize = i.toLong()
+            uploadStatus = UploadStatus.UPLOAD_IN_PROGRESS
+            createdBy = UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE
+            localAction = 0
+        }
+    }
+
+    companion object {
+        private const val ACCOUNT_NAME = "benchmark@localhost"
+        private const val PHOTOS = 5000
+        private const val HISTORY = 20_000
+        private const val REFRESHES = 5
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Benchmark: time to add, get and remove 20,000 pending camera uploads, and to remove all the uploads of an
+ * account, with the previous map of full keys and with the tree of path segments.
+ */
+@LargeTest
+class IndexedForestTest {
+
+    private val paths = (0 until TRANSFERS).map { i ->
+        "/CameraUpload/${FIRST_YEAR + i % YEARS}/${i % MONTHS + 1}/IMG_$i.jpg"
+    }
+
+    @Test
+    fun foldersAreLinkedAndUnlinked() {
+        val forest = IndexedForest<String>()
+
+        assertEquals(OCFile.ROOT_PATH, forest.putIfAbsent(ACCOUNT_NAME, "/a/b/file1", "1").second)
+        assertEquals("/a/b/", forest.putIfAbsent(ACCOUNT_NAME, "/a/b/file2", "2").second)
+        assertEquals("/a/", forest.putIfAbsent(ACCOUNT_NAME, "/a/c/", "3").second)
+        assertNull(forest.putIfAbsent(ACCOUNT_NAME, "/a/b/file1", "4"))
+        assertTrue(forest.contains(ACCOUNT_NAME, "/a/b/"))
+        assertEquals("2", forest.get(ACCOUNT_NAME, "/a/b/file2"))
+
+        assertEquals("/a/b/", forest.removePayload(ACCOUNT_NAME, "/a/b/file1").second)
+        assertEquals("/a/", forest.removePayload(ACCOUNT_NAME, "/a/b/file2").second)
+        assertFalse(forest.contains(ACCOUNT_NAME, "/a/b/"))
+        assertNull(forest.removePayload(ACCOUNT_NAME, "/a/c/").second)
+        assertFalse(forest.contains(ACCOUNT_NAME, OCFile.ROOT_PATH))
+    }
+
+    @Test
+    fun folderWithValueIsKeptWhenItsContentIsRemoved() {
+        val forest = IndexedForest<String>()
+        forest.putIfAbsent(ACCOUNT_NAME, "/a/", "folder")
+        forest.putIfAbsent(ACCOUNT_NAME, "/a/file", "file")
+
+        assertEquals("/a/", forest.remove(ACCOUNT_NAME, "/a/file").second)
+        assertEquals("folder", forest.get(ACCOUNT_NAME, "/a/"))
+    }
+
+    @Test
+    fun index20000PendingUploads() {
+        repeat(WARM_UP_RUNS) {
+            runLegacy()
+            runTrie()
+        }
+        val legacy = runLegacy()
+        val trie = runTrie()
+
+        Timber.i(
+            "Indexing %d pending uploads with a map of keys: put %.1f ms, get %.1f ms, remove %.1f ms, " +
+                    "remove account %.1f ms",
+            TRANSFERS, legacy.put, legacy.get, legacy.remove, legacy.removeAccount
+        )
+        Timber.i(
+            "Indexing %d pending uploads with a tree of segments: put %.1f ms, get %.1f ms, remove %.1f ms, " +
+                    "remove account %.1f ms",
+            TRANSFERS, trie.put, trie.get, trie.remove, trie.removeAccount
+        )
+
+        assertEquals(legacy.linkedTo, trie.linkedTo)
+        assertEquals(legacy.unlinkedFrom, trie.unlinkedFrom)
+    }
+
+    private fun runLegacy(): Measures {
+        val forest = LegacyIndexedForest<String>()
+        val linkedTo = mutableListOf<String?>()
+        val unlinkedFrom = mutableListOf<String?>()
+        val keys = mutableListOf<String>()
+
+        val put = measure {
+            paths.forEach { path ->
+                forest.putIfAbsent(ACCOUNT_NAME, path, path)?.let { result ->
+                    keys.add(result.first)
+                    linkedTo.add(result.second)
+                }
+            }
+        }
+        val get = measure { keys.forEach { forest.get(it) } }
+        val remove = measure { paths.forEach { unlinkedFrom.add(forest.removePayload(ACCOUNT_NAME, it)) } }
+        paths.forEach { forest.putIfAbsent(ACCOUNT_NAME, it, it) }
+        val removeAccount = measure { forest.remove(ACCOUNT_NAME) }
+
+        return Measures(put, get, remove, removeAccount, linkedTo, unlinkedFrom)
+    }
+
+    private fun runTrie(): Measures {
+        val forest = IndexedForest<String>()
+        val linkedTo = mutableListOf<String?>()
+        val unlinkedFrom = mutableListOf<String?>()
+
+        val put = measure {
+            paths.forEach { path ->
+                forest.putIfAbsent(ACCOUNT_NAME, path, path)?.let { result -> linkedTo.add(result.second) }
+            }
+        }
+        val get = measure { paths.forEach { forest.get(ACCOUNT_NAME, it) } }
+        val remove = measure { paths.forEach { unlinkedFrom.add(forest.removePayload(ACCOUNT_NAME, it).second) } }
+        paths.forEach { forest.putIfAbsent(ACCOUNT_NAME, it, it) }
+        val removeAccount = measure { forest.remove(ACCOUNT_NAME) }
+
+        return Measures(put, get, remove, removeAccount, linkedTo, unlinkedFrom)
+    }
+
+    /**
+     * @return Milliseconds elapsed.
+     */
+    private fun measure(block: () -> Unit): Double {
+        val start = SystemClock.elapsedRealtimeNanos()
+        block()
+        return (SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_MILLI
+    }
+
+    private class Measures(
+        val put: Double,
+        val get: Double,
+        val remove: Double,
+        val removeAccount: Double,
+        val linkedTo: List<String?>,
+        val unlinkedFrom: List<String?>
+    )
+
+    /**
+     * Previous implementation: a map of nodes by full key, linked to their parents building the key of every
+     * parent folder.
+     */
+    private class LegacyIndexedForest<V> {
+        private class Node<V>(val key: String, var payload: V?) {
+            var parent: Node<V>? = null
+            val children = HashSet<Node<V>>()
+        }
+
+        private val map = ConcurrentHashMap<String, Node<V>>()
+
+        fun putIfAbsent(accountName: String, remotePath: String, value: V): Pair<String, String>? {
+            val targetKey = accountName + remotePath
+            val valuedNode = Node(targetKey, value)
+            if (map.putIfAbsent(targetKey, valuedNode) != null) {
+                return null
+            }
+            var currentPath = remotePath
+            var currentNode = valuedNode
+            var parentNode: Node<V>? = null
+            var linked = false
+            while (OCFile.ROOT_PATH != currentPath && !linked) {
+                var parentPath = File(currentPath).parent!!
+                if (!parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
+                    parentPath += OCFile.PATH_SEPARATOR
+                }
+                val parentKey = accountName + parentPath
+                parentNode = map[parentKey]
+                if (parentNode == null) {
+                    parentNode = Node(parentKey, null)
+                    map[parentKey] = parentNode
+                } else {
+                    linked = true
+                }
+                parentNode.children.add(currentNode)
+                currentNode.parent = parentNode
+                currentPath = parentPath
+                currentNode = parentNode
+            }
+            val linkedTo = if (linked) parentNode!!.key.substring(accountName.length) else OCFile.ROOT_PATH
+            return Pair(targetKey, linkedTo)
+        }
+
+        fun get(key: String): V? = map[key]?.payload
+
+        /**
+         * @return Folder where the path was unlinked from.
+         */
+        fun removePayload(accountName: String, remotePath: String): String? {
+            val target = map[accountName + remotePath] ?: return null
+            target.payload = null
+            if (target.children.isNotEmpty()) {
+                return null
+            }
+            map.remove(target.key)
+            var removed = target
+            var parent = target.parent
+            while (parent != null) {
+                parent.children.remove(removed)
+                if (parent.children.isNotEmpty()) {
+                    break
+                }
+                removed = map.remove(parent.key)!!
+                parent = removed.parent
+            }
+            return parent?.key?.substring(accountName.length)
+        }
+
+        fun remove(accountName: String) {
+            val iterator = map.keys.iterator()
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(accountName)) {
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val ACCOUNT_NAME = "benchmark@localhost"
+        private const val TRANSFERS = 20_000
+        private const val FIRST_YEAR = 2015
+        private const val YEARS = 6
+        private const val MONTHS = 12
+        private const val WARM_UP_RUNS = 3
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.util.Random
+
+/**
+ * Callbacks that reach the listener per second in a fast local transfer, reporting progress every time a buffer
+ * is written as the network layer does, without and with the dispatcher.
+ */
+@LargeTest
+class TransferProgressDispatcherBenchmarkTest {
+
+    private lateinit var source: File
+
+    @Before
+    fun setUp() {
+        val cacheDir = InstrumentationRegistry.getInstrumentation().targetContext.cacheDir
+        source = File.createTempFile("transfer_source", ".bin", cacheDir)
+    }
+
+    @After
+    fun tearDown() {
+        source.delete()
+    }
+
+    @Test
+    fun transfer256MegabytesFile() {
+        FileOutputStream(source).use { output ->
+            val chunk = ByteArray(BUFFER_SIZE * 16).also { Random(SEED).nextBytes(it) }
+            repeat(BENCHMARK_SIZE / chunk.size) { output.write(chunk) }
+        }
+
+        val direct = CountingListener()
+        val directSeconds = transfer(direct)
+
+        val throttled = CountingListener()
+        val throttledSeconds = transfer(
+            TransferProgressDispatcher(throttled, TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND)
+        )
+
+        Timber.i(
+            "Transferring %d bytes: %d callbacks in %.2f s (%.0f/s) without dispatcher, " +
+                    "%d callbacks in %.2f s (%.0f/s) with dispatcher at %d/s",
+            BENCHMARK_SIZE, direct.count, directSeconds, direct.count / directSeconds,
+            throttled.count, throttledSeconds, throttled.count / throttledSeconds,
+            TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND
+        )
+
+        // one per interval elapsed, plus the first progress and the completion
+        assertTrue(throttled.count <= throttledSeconds * TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND + 2)
+        assertEquals(source.length(), throttled.lastTransferred)
+        assertEquals(source.length(), throttled.progressRatesSum)
+    }
+
+    /**
+     * @return Seconds elapsed in the transfer.
+     */
+    private fun transfer(listener: OnDatatransferProgressListener): Double {
+        val start = SystemClock.elapsedRealtimeNanos()
+        val total = source.length()
+        var transferred = 0L
+        FileInputStream(source).use { input ->
+            val buffer = ByteArray(BUFFER_SIZE)
+            var read = input.read(buffer)
+            while (read > -1) {
+                transferred += read
+                listener.onTransferProgress(read.toLong(), transferred, total, source.absolutePath)
+                read = input.read(buffer)
+            }
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_SECOND
+    }
+
+    private class CountingListener : OnDatatransferProgressListener {
+        var count = 0
+        var lastTransferred = 0L
+        var progressRatesSum = 0L
+
+        override fun onTransferProgress(
+            progressRate: Long,
+            totalTransferredSoFar: Long,
+            totalToTransfer: Long,
+            fileName: String?
+        ) {
+            count++
+            lastTransferred = totalTransferredSoFar
+            progressRatesSum += progressRate
+        }
+    }
+
+    companion object {
+        private const val BENCHMARK_SIZE = 256 * 1024 * 1024
+        private const val BUFFER_SIZE = 4096
+        private const val SEED = 42L
+        private const val NANOS_PER_SECOND = 1_000_000_000.0
+    }
+}
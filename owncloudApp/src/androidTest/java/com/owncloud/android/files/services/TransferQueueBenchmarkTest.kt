@@ -0,0 +1,84 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import com.owncloud.android.files.services.TransferQueue.Priority
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import timber.log.Timber
+import java.util.ArrayDeque
+
+/**
+ * Time an interactive download waits to start when requested behind 500 available offline downloads, with the
+ * previous first in, first out queue and with the priority queue.
+ */
+@LargeTest
+class TransferQueueBenchmarkTest {
+
+    @Test
+    fun interactiveDownloadUnderSaturatedQueue() {
+        val fifo = ArrayDeque<String>()
+        val fifoLatency = interactiveLatency({ key, _ -> fifo.add(key) }, { fifo.poll() })
+
+        val queue = TransferQueue<String>()
+        val priorityLatency = interactiveLatency(queue::add, queue::poll)
+
+        Timber.i(
+            "Interactive download requested behind %d downloads started after %d ms first in, first out, " +
+                    "%d ms by priority",
+            QUEUED_DOWNLOADS, fifoLatency, priorityLatency
+        )
+        assertTrue(priorityLatency < fifoLatency)
+    }
+
+    /**
+     * Performs the queued downloads one by one, as the download service does, and requests an interactive one
+     * after some of them.
+     *
+     * @return Milliseconds the interactive download waited to start.
+     */
+    private fun interactiveLatency(add: (String, Priority) -> Unit, poll: () -> String?): Long {
+        repeat(QUEUED_DOWNLOADS) { add("offline $it", Priority.AVAILABLE_OFFLINE) }
+
+        var requested = 0L
+        var performed = 0
+        var next = poll()
+        while (next != null) {
+            if (next == INTERACTIVE) {
+                return SystemClock.elapsedRealtime() - requested
+            }
+            SystemClock.sleep(DOWNLOAD_MILLIS)
+            if (++performed == DOWNLOADS_BEFORE_REQUEST) {
+                requested = SystemClock.elapsedRealtime()
+                add(INTERACTIVE, Priority.USER)
+            }
+            next = poll()
+        }
+        throw AssertionError("Interactive download not performed")
+    }
+
+    companion object {
+        private const val INTERACTIVE = "interactive"
+        private const val QUEUED_DOWNLOADS = 500
+        private const val DOWNLOADS_BEFORE_REQUEST = 10
+        private const val DOWNLOAD_MILLIS = 2L
+    }
+}
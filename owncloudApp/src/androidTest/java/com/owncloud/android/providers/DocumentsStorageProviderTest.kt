@@ -0,0 +1,105 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.content.Context
+import android.os.SystemClock
+import android.provider.DocumentsContract
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.MainApp
+import com.owncloud.android.R
+import com.owncloud.android.datamodel.FileDataStorageManager
+import com.owncloud.android.datamodel.OCFile
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+
+/**
+ * Benchmark: throughput of queryDocument for the files of a big folder, as a file picker rendering it does.
+ */
+@LargeTest
+class DocumentsStorageProviderTest {
+
+    private lateinit var context: Context
+    private lateinit var account: Account
+    private lateinit var storageManager: FileDataStorageManager
+    private lateinit var fileIds: List<Long>
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        account = Account(ACCOUNT_NAME, MainApp.accountType)
+        AccountManager.get(context).addAccountExplicitly(account, null, null)
+
+        storageManager = FileDataStorageManager(context, account, context.contentResolver)
+        val root = storageManager.getFileByPath(OCFile.ROOT_PATH)!!
+        fileIds = (0 until FILES).map { i ->
+            OCFile("${OCFile.ROOT_PATH}file_$i.txt").apply {
+                parentId = root.fileId
+                mimetype = "text/plain"
+                fileLength = i.toLong()
+                storageManager.saveFile(this)
+            }.fileId
+        }
+    }
+
+    @After
+    fun tearDown() {
+        storageManager.removeFolder(storageManager.getFileByPath(OCFile.ROOT_PATH), true, false)
+        @Suppress("DEPRECATION")
+        AccountManager.get(context).removeAccount(account, null, null)
+    }
+
+    @Test
+    fun queryDocumentThroughput() {
+        val firstPass = queryAll()
+        val secondPass = queryAll()
+
+        Timber.i(
+            "queryDocument of %d files: %d queries/s the first time, %d queries/s once resolved",
+            FILES, FILES * 1000L / maxOf(firstPass, 1), FILES * 1000L / maxOf(secondPass, 1)
+        )
+    }
+
+    /**
+     * @return Time to query every file, in milliseconds.
+     */
+    private fun queryAll(): Long {
+        val authority = context.getString(R.string.document_provider_authority)
+        val start = SystemClock.elapsedRealtime()
+        fileIds.forEach { id ->
+            context.contentResolver.query(
+                DocumentsContract.buildDocumentUri(authority, id.toString()), null, null, null, null
+            )!!.use { cursor ->
+                assertEquals(1, cursor.count)
+            }
+        }
+        return SystemClock.elapsedRealtime() - start
+    }
+
+    companion object {
+        private const val ACCOUNT_NAME = "benchmark@localhost"
+        private const val FILES = 2000
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers
+
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmark: time to the first byte of a 500 MB file opened while it is downloaded, simulated by a thread that
+ * writes the temporary file in chunks.
+ */
+@LargeTest
+class DownloadPipeTest {
+
+    private lateinit var downloadingFile: File
+    private lateinit var downloadedFile: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        downloadingFile = File(context.cacheDir, "download_pipe_test.tmp")
+        downloadedFile = File(context.cacheDir, "download_pipe_test.bin")
+        downloadingFile.delete()
+        downloadedFile.delete()
+    }
+
+    @After
+    fun tearDown() {
+        downloadingFile.delete()
+        downloadedFile.delete()
+    }
+
+    @Test
+    fun stream500MegabytesFile() {
+        val closed = CountDownLatch(1)
+        val downloadPipe = DownloadPipe(downloadingFile, onCancel = {}, onClose = { closed.countDown() })
+
+        val start = SystemClock.elapsedRealtime()
+        val download = startDownload(downloadPipe, FILE_SIZE)
+        val readSide = downloadPipe.open(null)
+
+        var timeToFirstByte = -1L
+        var read = 0L
+        ParcelFileDescriptor.AutoCloseInputStream(readSide).use { input ->
+            val buffer = ByteArray(BUFFER_SIZE)
+            var count = input.read(buffer)
+            while (count != -1) {
+                if (timeToFirstByte < 0) {
+                    timeToFirstByte = SystemClock.elapsedRealtime() - start
+                }
+                read += count
+                count = input.read(buffer)
+            }
+        }
+        val timeToLastByte = SystemClock.elapsedRealtime() - start
+        download.join()
+
+        Timber.i(
+            "500 MB file streamed while downloaded: first byte in %d ms, last byte in %d ms",
+            timeToFirstByte, timeToLastByte
+        )
+
+        assertEquals(FILE_SIZE, read)
+        assertTrue(timeToFirstByte < timeToLastByte / 10)
+        assertTrue(closed.await(CLOSE_TIMEOUT_S, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun failedDownloadIsReportedToReader() {
+        val downloadPipe = DownloadPipe(downloadingFile, onCancel = {}, onClose = {})
+        downloadingFile.writeBytes(ByteArray(CHUNK_SIZE))
+        val readSide = downloadPipe.open(null)
+        downloadPipe.finish(false, null)
+
+        var failed = false
+        ParcelFileDescriptor.AutoCloseInputStream(readSide).use { input ->
+            try {
+                while (input.read(ByteArray(BUFFER_SIZE)) != -1) {
+                    // read until the error
+                }
+            } catch (e: IOException) {
+                failed = true
+            }
+        }
+        assertTrue(failed)
+    }
+
+    @Test
+    fun cancellationReachesDownload() {
+        val cancelled = CountDownLatch(1)
+        val downloadPipe = DownloadPipe(downloadingFile, onCancel = { cancelled.countDown() }, onClose = {})
+        val signal = CancellationSignal()
+        val readSide = downloadPipe.open(signal)
+
+        signal.cancel()
+
+        assertTrue(cancelled.await(CLOSE_TIMEOUT_S, TimeUnit.SECONDS))
+        readSide.close()
+    }
+
+    /**
+     * Writes the temporary file in chunks, as the download would do, and moves it to its final location.
+     */
+    private fun startDownload(downloadPipe: DownloadPipe, size: Long): Thread =
+        Thread {
+            val chunk = ByteArray(CHUNK_SIZE) { it.toByte() }
+            downloadingFile.outputStream().use { output ->
+                var written = 0L
+                while (written < size) {
+                    output.write(chunk)
+                    written += chunk.size
+                }
+            }
+            downloadingFile.renameTo(downloadedFile)
+            downloadPipe.finish(true, downloadedFile)
+        }.apply { start() }
+
+    companion object {
+        private const val FILE_SIZE = 500L * 1024 * 1024
+        private const val CHUNK_SIZE = 64 * 1024
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val CLOSE_TIMEOUT_S = 10L
+    }
+}
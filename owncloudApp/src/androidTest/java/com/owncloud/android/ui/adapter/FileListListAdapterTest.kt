@@ -0,0 +1,247 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.adapter
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.database.DataSetObserver
+import android.os.SystemClock
+import android.view.Choreographer
+import android.widget.ListView
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import androidx.test.rule.ActivityTestRule
+import com.owncloud.android.MainApp
+import com.owncloud.android.datamodel.FileDataStorageManager
+import com.owncloud.android.datamodel.OCFile
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import timber.log.Timber
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Jank benchmarks: frame times while a folder of 10k files is entered, and while it is refreshed after a sync
+ * changed a few of them; latency of every keystroke while searching in a folder of 20k files.
+ */
+@LargeTest
+class FileListListAdapterTest {
+
+    @Rule
+    @JvmField
+    val activityRule = ActivityTestRule(TestFileListActivity::class.java, true, true)
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+
+    private lateinit var account: Account
+    private lateinit var storageManager: FileDataStorageManager
+    private lateinit var folder: OCFile
+    private lateinit var files: List<OCFile>
+
+    @Before
+    fun setUp() {
+        val context = instrumentation.targetContext
+        account = Account(ACCOUNT_NAME, MainApp.accountType)
+        AccountManager.get(context).addAccountExplicitly(account, null, null)
+
+        storageManager = FileDataStorageManager(context, account, context.contentResolver)
+        val root = storageManager.getFileByPath(OCFile.ROOT_PATH)!!
+        folder = OCFile(FOLDER_PATH).apply {
+            parentId = root.fileId
+            mimetype = "DIR"
+            storageManager.saveFile(this)
+        }
+    }
+
+    private fun createFiles(count: Int) {
+        files = (0 until count).map { i ->
+            OCFile("${FOLDER_PATH}file_$i.txt").apply {
+                mimetype = "text/plain"
+                fileLength = i.toLong()
+                etag = "etag"
+            }
+        }
+        storageManager.saveFolder(folder, files, emptyList())
+    }
+
+    @After
+    fun tearDown() {
+        storageManager.removeFolder(storageManager.getFileByPath(OCFile.ROOT_PATH), true, false)
+        @Suppress("DEPRECATION")
+        AccountManager.get(instrumentation.targetContext).removeAccount(account, null, null)
+    }
+
+    @Test
+    fun enterAndRefresh10kFolder() {
+        createFiles(FILES)
+        val (adapter, listView) = showList()
+
+        val enterFrames = measureFrames { onLoaded ->
+            adapter.swapDirectory(folder, storageManager) { onLoaded(it) }
+        }
+        assertEquals(FILES, adapter.count)
+
+        // a sync changes a few files
+        files.take(CHANGED_FILES).forEach { it.etag = "changed" }
+        storageManager.saveFolder(folder, files.take(CHANGED_FILES), emptyList())
+
+        var changedPositions: IntArray? = null
+        val refreshFrames = measureFrames { onLoaded ->
+            adapter.swapDirectory(folder, storageManager) { positions ->
+                changedPositions = positions
+                positions?.let { adapter.rebindVisibleViews(listView, it) }
+                onLoaded(positions)
+            }
+        }
+
+        logFrames("Entering", FILES, enterFrames)
+        logFrames("Refreshing", FILES, refreshFrames)
+
+        assertNotNull(changedPositions)
+        assertEquals(CHANGED_FILES, changedPositions!!.size)
+    }
+
+    @Test
+    fun search20kFolder() {
+        createFiles(SEARCH_FILES)
+        val (adapter, _) = showList()
+        val loaded = CountDownLatch(1)
+        instrumentation.runOnMainSync { adapter.swapDirectory(folder, storageManager) { loaded.countDown() } }
+        assertTrue(loaded.await(LOAD_TIMEOUT_S, TimeUnit.SECONDS))
+
+        // every keystroke waits for its results, as typing slowly
+        val latencies = SEARCH_QUERY.indices.map { i ->
+            measureSearch(adapter, listOf(SEARCH_QUERY.substring(0, i + 1)))
+        }
+        latencies.forEachIndexed { i, latency ->
+            Timber.i("Searching '%s' in %d files: %.1f ms", SEARCH_QUERY.substring(0, i + 1), SEARCH_FILES, latency)
+        }
+        val expectedMatches = files.count { it.fileName.contains(SEARCH_QUERY) }
+        assertEquals(expectedMatches, adapter.count)
+
+        // a burst of keystrokes only publishes the last results
+        instrumentation.runOnMainSync { adapter.clearFilterBySearch() }
+        val burstLatency = measureSearch(adapter, SEARCH_QUERY.indices.map { SEARCH_QUERY.substring(0, it + 1) })
+        Timber.i("Searching '%s' in %d files typed in a burst: %.1f ms", SEARCH_QUERY, SEARCH_FILES, burstLatency)
+        assertEquals(expectedMatches, adapter.count)
+    }
+
+    private fun showList(): Pair<FileListListAdapter, ListView> {
+        val activity = activityRule.activity
+        lateinit var adapter: FileListListAdapter
+        lateinit var listView: ListView
+        instrumentation.runOnMainSync {
+            adapter = FileListListAdapter(false, false, false, false, activity, activity)
+            listView = ListView(activity).apply { this.adapter = adapter }
+            activity.setContentView(listView)
+        }
+        return Pair(adapter, listView)
+    }
+
+    /**
+     * Types the given queries in a row, and measures the time until the list shows the results of the last one.
+     *
+     * @return Time from the first keystroke to the results of the last one, in milliseconds.
+     */
+    private fun measureSearch(adapter: FileListListAdapter, queries: List<String>): Double {
+        val published = CountDownLatch(1)
+        val observer = object : DataSetObserver() {
+            override fun onChanged() {
+                published.countDown()
+            }
+        }
+        var start = 0L
+        instrumentation.runOnMainSync {
+            adapter.registerDataSetObserver(observer)
+            start = SystemClock.elapsedRealtimeNanos()
+            queries.forEach { adapter.filterBySearch(it) }
+        }
+        // the results of a longer query may be the ones already shown, and then nothing is published
+        published.await(SEARCH_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        val latency = (SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_MILLI
+        instrumentation.runOnMainSync { adapter.unregisterDataSetObserver(observer) }
+        return latency
+    }
+
+    /**
+     * Records the duration of every frame from the start of the action until a while after the folder is shown.
+     *
+     * @param action Action that lists the folder, and calls the given callback once it is shown.
+     * @return Frame times in milliseconds, sorted.
+     */
+    private fun measureFrames(action: ((IntArray?) -> Unit) -> Unit): DoubleArray {
+        val frameTimes = ArrayList<Long>()
+        val loaded = CountDownLatch(1)
+        var recording = true
+        var lastFrameTime = 0L
+
+        val frameCallback = object : Choreographer.FrameCallback {
+            override fun doFrame(frameTimeNanos: Long) {
+                if (lastFrameTime != 0L) {
+                    frameTimes.add(frameTimeNanos - lastFrameTime)
+                }
+                lastFrameTime = frameTimeNanos
+                if (recording) {
+                    Choreographer.getInstance().postFrameCallback(this)
+                }
+            }
+        }
+
+        instrumentation.runOnMainSync {
+            Choreographer.getInstance().postFrameCallback(frameCallback)
+            action { loaded.countDown() }
+        }
+        assertTrue(loaded.await(LOAD_TIMEOUT_S, TimeUnit.SECONDS))
+        SystemClock.sleep(SETTLE_TIME_MS)
+        instrumentation.runOnMainSync { recording = false }
+
+        return frameTimes.map { it / NANOS_PER_MILLI }.sorted().toDoubleArray()
+    }
+
+    private fun logFrames(phase: String, files: Int, frameTimes: DoubleArray) {
+        Timber.i(
+            "%s a folder of %d files: %d frames, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+            phase, files, frameTimes.size,
+            percentile(frameTimes, 50), percentile(frameTimes, 90), percentile(frameTimes, 99),
+            frameTimes.lastOrNull() ?: 0.0
+        )
+    }
+
+    private fun percentile(sortedValues: DoubleArray, percentile: Int): Double =
+        if (sortedValues.isEmpty()) 0.0
+        else sortedValues[((sortedValues.size - 1) * percentile) / 100]
+
+    companion object {
+        private const val ACCOUNT_NAME = "benchmark@localhost"
+        private const val FOLDER_PATH = "/benchmark/"
+        private const val FILES = 10000
+        private const val CHANGED_FILES = 5
+        private const val SEARCH_FILES = 20000
+        private const val SEARCH_QUERY = "1234"
+        private const val SEARCH_TIMEOUT_MS = 1000L
+        private const val LOAD_TIMEOUT_S = 30L
+        private const val SETTLE_TIME_MS = 500L
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+}
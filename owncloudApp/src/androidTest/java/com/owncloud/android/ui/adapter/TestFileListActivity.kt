@@ -0,0 +1,42 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.adapter
+
+import com.owncloud.android.datamodel.FileDataStorageManager
+import com.owncloud.android.files.services.FileDownloader
+import com.owncloud.android.files.services.FileUploader
+import com.owncloud.android.services.OperationsService
+import com.owncloud.android.testing.SingleFragmentActivity
+import com.owncloud.android.ui.activity.ComponentsGetter
+import com.owncloud.android.ui.helpers.FileOperationsHelper
+
+/**
+ * Hosts a file list without transfer services.
+ */
+class TestFileListActivity : SingleFragmentActivity(), ComponentsGetter {
+    override fun getFileDownloaderBinder(): FileDownloader.FileDownloaderBinder? = null
+
+    override fun getFileUploaderBinder(): FileUploader.FileUploaderBinder? = null
+
+    override fun getOperationsServiceBinder(): OperationsService.OperationsServiceBinder? = null
+
+    override fun getStorageManager(): FileDataStorageManager? = null
+
+    override fun getFileOperationsHelper(): FileOperationsHelper? = null
+}
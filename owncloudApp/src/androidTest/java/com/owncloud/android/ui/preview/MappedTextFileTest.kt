@@ -0,0 +1,173 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.preview
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.nio.charset.StandardCharsets
+
+@LargeTest
+class MappedTextFileTest {
+
+    private lateinit var textFile: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        textFile = File(context.cacheDir, "mapped_text_file_test.txt")
+    }
+
+    @After
+    fun tearDown() {
+        textFile.delete()
+    }
+
+    @Test
+    fun linesAreSplitAndDecoded() {
+        textFile.writeBytes(byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte()) +
+                "first\r\nsegundo ñ\n\nlast".toByteArray(StandardCharsets.UTF_8))
+
+        val mapped = MappedTextFile.open(textFile.absolutePath)
+        mapped.buildIndex(null)
+
+        assertEquals(StandardCharsets.UTF_8, mapped.charset)
+        assertEquals(4, mapped.lineCount)
+        assertEquals("first", mapped.getLine(0))
+        assertEquals("segundo ñ", mapped.getLine(1))
+        assertEquals("", mapped.getLine(2))
+        assertEquals("last", mapped.getLine(3))
+        assertEquals(3, mapped.find("LAST", 0, null))
+        assertEquals(0, mapped.find("first", 3, null))
+        assertEquals(-1, mapped.find("missing", -1, null))
+    }
+
+    @Test
+    fun utf16FileIsDetected() {
+        textFile.writeBytes(byteArrayOf(0xFF.toByte(), 0xFE.toByte()) +
+                "one\ntwo".toByteArray(StandardCharsets.UTF_16LE))
+
+        val mapped = MappedTextFile.open(textFile.absolutePath)
+        mapped.buildIndex(null)
+
+        assertEquals(StandardCharsets.UTF_16LE, mapped.charset)
+        assertEquals(2, mapped.lineCount)
+        assertEquals("two", mapped.getLine(1))
+        assertEquals(1, mapped.find("tw", -1, null))
+    }
+
+    @Test
+    fun searchIgnoresCaseOfEveryCharacter() {
+        // the high byte of U+4100 is an 'A', it must not be lowered to match U+6100
+        textFile.writeBytes(byteArrayOf(0xFE.toByte(), 0xFF.toByte()) +
+                "\u4100\nÑANDÚ".toByteArray(StandardCharsets.UTF_16BE))
+
+        val mapped = MappedTextFile.open(textFile.absolutePath)
+        mapped.buildIndex(null)
+
+        assertEquals(-1, mapped.find("\u6100", -1, null))
+        assertEquals(1, mapped.find("ñandú", -1, null))
+    }
+
+    /**
+     * Benchmarks: time to show the first page of lines, to index the whole file and to search its last line.
+     */
+    @Test
+    fun open1MegabyteFile() {
+        openBigFile(1)
+    }
+
+    @Test
+    fun open50MegabytesFile() {
+        openBigFile(50)
+    }
+
+    @Test
+    fun open500MegabytesFile() {
+        openBigFile(500)
+    }
+
+    private fun openBigFile(megabytes: Int) {
+        val lines = writeLines(megabytes * 1024L * 1024L)
+        val heapBefore = usedMemory()
+
+        val start = SystemClock.elapsedRealtime()
+        val mapped = MappedTextFile.open(textFile.absolutePath)
+        var timeToFirstPage = -1L
+        mapped.buildIndex {
+            if (timeToFirstPage < 0) {
+                (0 until FIRST_PAGE_LINES).forEach { mapped.getLine(it) }
+                timeToFirstPage = SystemClock.elapsedRealtime() - start
+            }
+        }
+        val timeToIndex = SystemClock.elapsedRealtime() - start
+        val heapUsed = usedMemory() - heapBefore
+
+        val searchStart = SystemClock.elapsedRealtime()
+        val found = mapped.find(LAST_LINE, -1, null)
+        val timeToSearch = SystemClock.elapsedRealtime() - searchStart
+
+        Timber.i(
+            "%d MB text file: first page in %d ms, %d lines indexed in %d ms with %d bytes of heap, " +
+                    "full search in %d ms",
+            megabytes, timeToFirstPage, mapped.lineCount, timeToIndex, heapUsed, timeToSearch
+        )
+
+        assertEquals(lines, mapped.lineCount)
+        assertEquals(lines - 1, found)
+        assertTrue(heapUsed < megabytes * 1024L * 1024L / 4 + MAX_FIXED_HEAP)
+    }
+
+    /**
+     * @return Number of lines written.
+     */
+    private fun writeLines(size: Long): Int {
+        var written = 0L
+        var lines = 0
+        textFile.bufferedWriter().use { writer ->
+            while (written < size) {
+                val line = "Line $lines of a big log file, with some text to make it look like a real one\n"
+                writer.write(line)
+                written += line.length
+                lines++
+            }
+            writer.write(LAST_LINE)
+            lines++
+        }
+        return lines
+    }
+
+    private fun usedMemory(): Long {
+        Runtime.getRuntime().gc()
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()
+    }
+
+    companion object {
+        private const val FIRST_PAGE_LINES = 50
+        private const val LAST_LINE = "The end"
+        private const val MAX_FIXED_HEAP = 4L * 1024 * 1024
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.preview
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.RectF
+import android.os.Debug
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.util.zip.CRC32
+import java.util.zip.DeflaterOutputStream
+
+/**
+ * Memory benchmark: opens a 200 MP image, that would need 800 MB as a single ARGB bitmap.
+ */
+@LargeTest
+class TiledImageDrawableTest {
+
+    private lateinit var imageFile: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        imageFile = File(context.cacheDir, "tiled_image_test.png")
+        writeGrayPng(imageFile, IMAGE_WIDTH, IMAGE_HEIGHT)
+    }
+
+    @After
+    fun tearDown() {
+        imageFile.delete()
+    }
+
+    @Test
+    fun open200MegapixelImage() {
+        assertTrue(TiledImageDrawable.shouldUseTiles(imageFile.absolutePath))
+
+        val heapBefore = usedMemory()
+        val start = SystemClock.elapsedRealtime()
+
+        val drawable = TiledImageDrawable.create(imageFile.absolutePath)
+        assertNotNull(drawable)
+        val timeToBase = SystemClock.elapsedRealtime() - start
+
+        // zoom into the center of the image at full resolution
+        drawable!!.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT)
+        val left = -(IMAGE_WIDTH / 2f - VIEW_WIDTH / 2f)
+        val top = -(IMAGE_HEIGHT / 2f - VIEW_HEIGHT / 2f)
+        drawable.updateViewport(RectF(left, top, left + IMAGE_WIDTH, top + IMAGE_HEIGHT), VIEW_WIDTH, VIEW_HEIGHT)
+
+        val canvas = Canvas(Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888))
+        canvas.translate(left, top)
+        drawable.draw(canvas)
+        while (drawable.isDecodingTiles) {
+            SystemClock.sleep(WAIT_STEP_MS)
+        }
+        val timeToTiles = SystemClock.elapsedRealtime() - start
+
+        val heapUsed = usedMemory() - heapBefore
+        Timber.i(
+            "200 MP image: downsampled in %d ms, visible tiles in %d ms, %d bytes of memory used",
+            timeToBase, timeToTiles, heapUsed
+        )
+        drawable.recycle()
+
+        assertFalse(drawable.isDecodingTiles)
+        assertTrue(heapUsed < MAX_MEMORY_USED)
+    }
+
+    private fun usedMemory(): Long {
+        Runtime.getRuntime().gc()
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() +
+                Debug.getNativeHeapAllocatedSize()
+    }
+
+    /**
+     * Writes a grayscale PNG row by row, so that the image never needs to be in memory.
+     */
+    private fun writeGrayPng(file: File, width: Int, height: Int) {
+        DataOutputStream(FileOutputStream(file).buffered()).use { out ->
+            out.write(byteArrayOf(0x89.toByte(), 'P'.toByte(), 'N'.toByte(), 'G'.toByte(), 13, 10, 26, 10))
+
+            val header = java.io.ByteArrayOutputStream()
+            DataOutputStream(header).apply {
+                writeInt(width)
+                writeInt(height)
+                writeByte(8)    // bit depth
+                writeByte(0)    // grayscale
+                writeByte(0)    // compression
+                writeByte(0)    // filter
+                writeByte(0)    // no interlace
+            }
+            writeChunk(out, "IHDR", header.toByteArray())
+
+            val data = java.io.ByteArrayOutputStream()
+            DeflaterOutputStream(data).use { deflater ->
+                val row = ByteArray(width + 1) { if (it == 0) 0 else (it % 256).toByte() }
+                repeat(height) { deflater.write(row) }
+            }
+            writeChunk(out, "IDAT", data.toByteArray())
+            writeChunk(out, "IEND", ByteArray(0))
+        }
+    }
+
+    private fun writeChunk(out: DataOutputStream, type: String, data: ByteArray) {
+        val typeBytes = type.toByteArray(Charsets.US_ASCII)
+        out.writeInt(data.size)
+        out.write(typeBytes)
+        out.write(data)
+        out.writeInt(CRC32().apply { update(typeBytes); update(data) }.value.toInt())
+    }
+
+    companion object {
+        private const val IMAGE_WIDTH = 16384
+        private const val IMAGE_HEIGHT = 12288
+        private const val VIEW_WIDTH = 1080
+        private const val VIEW_HEIGHT = 1920
+        private const val WAIT_STEP_MS = 50L
+        private const val MAX_MEMORY_USED = 64L * 1024 * 1024
+    }
+}
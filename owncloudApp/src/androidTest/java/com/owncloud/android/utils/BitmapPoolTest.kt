@@ -0,0 +1,149 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils
+
+import android.graphics.Bitmap
+import android.media.ExifInterface
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.io.FileOutputStream
+
+@LargeTest
+class BitmapPoolTest {
+
+    private lateinit var imageFile: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        imageFile = File(context.cacheDir, "bitmap_pool_test.jpg")
+        val source = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888).apply {
+            eraseColor(0xFF336699.toInt())
+        }
+        FileOutputStream(imageFile).use { source.compress(Bitmap.CompressFormat.JPEG, 90, it) }
+        source.recycle()
+    }
+
+    @After
+    fun tearDown() {
+        imageFile.delete()
+    }
+
+    @Test
+    fun reusedBitmapIsReturnedForSameSize() {
+        val pool = BitmapPool(POOL_SIZE)
+        val bitmap = pool.get(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888)
+        pool.put(bitmap)
+
+        assertSame(bitmap, pool.get(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888))
+        assertEquals(1, pool.hits)
+        assertEquals(1, pool.misses)
+    }
+
+    @Test
+    fun poolDoesNotGrowOverMaxSize() {
+        val pool = BitmapPool(THUMBNAIL_SIZE * THUMBNAIL_SIZE * 4L)
+        pool.put(Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888))
+        pool.put(Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888))
+
+        assertEquals(1, pool.evictions)
+        assertTrue(pool.currentSizeInBytes <= THUMBNAIL_SIZE * THUMBNAIL_SIZE * 4L)
+    }
+
+    @Test
+    fun bitmapReplacedByRotationIsGivenBackToPool() {
+        ExifInterface(imageFile.absolutePath).apply {
+            setAttribute(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_ROTATE_90.toString())
+            saveAttributes()
+        }
+        val pool = BitmapPool(POOL_SIZE)
+        val scaled = pool.get(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888)
+
+        val rotated = BitmapUtils.rotateImage(scaled, imageFile.absolutePath, pool)
+
+        assertNotSame(scaled, rotated)
+        assertSame(scaled, pool.get(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888))
+    }
+
+    @Test
+    fun bitmapInNormalOrientationIsNotCopied() {
+        val pool = BitmapPool(POOL_SIZE)
+        val scaled = pool.get(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888)
+
+        assertSame(scaled, BitmapUtils.rotateImage(scaled, imageFile.absolutePath, pool))
+    }
+
+    /**
+     * Benchmark: allocations done to decode, scale and rotate 1000 thumbnails as the thumbnails cache does, with and
+     * without pool.
+     */
+    @Test
+    fun decodeThumbnailsAllocations() {
+        val withoutPool = BitmapPool(0)
+        val startWithoutPool = SystemClock.elapsedRealtime()
+        repeat(DECODED_THUMBNAILS) {
+            decodeThumbnail(withoutPool)
+        }
+        val elapsedWithoutPool = SystemClock.elapsedRealtime() - startWithoutPool
+
+        val pool = BitmapPool(POOL_SIZE)
+        val startWithPool = SystemClock.elapsedRealtime()
+        repeat(DECODED_THUMBNAILS) {
+            decodeThumbnail(pool)
+        }
+        val elapsedWithPool = SystemClock.elapsedRealtime() - startWithPool
+
+        Timber.i(
+            "Decoded %d thumbnails; without pool: %d allocations in %d ms; with pool: %d allocations in %d ms, hit rate %.2f",
+            DECODED_THUMBNAILS,
+            withoutPool.misses, elapsedWithoutPool,
+            pool.misses, elapsedWithPool, pool.hitRate
+        )
+
+        // Only the first decoding and scaling should allocate new bitmaps
+        assertTrue(pool.misses <= 2)
+        assertTrue(pool.hitRate > 0.99f)
+    }
+
+    private fun decodeThumbnail(pool: BitmapPool) {
+        val decoded = BitmapUtils.decodeSampledBitmapFromFile(
+            imageFile.absolutePath, THUMBNAIL_SIZE, THUMBNAIL_SIZE, pool
+        )
+        val thumbnail = BitmapUtils.createThumbnail(decoded, imageFile.absolutePath, THUMBNAIL_SIZE, pool)
+        pool.put(thumbnail)
+    }
+
+    companion object {
+        private const val IMAGE_WIDTH = 1600
+        private const val IMAGE_HEIGHT = 1200
+        private const val THUMBNAIL_SIZE = 256
+        private const val POOL_SIZE = 8L * 1024 * 1024
+        private const val DECODED_THUMBNAILS = 1000
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import timber.log.Timber
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.security.MessageDigest
+import java.util.Random
+
+/**
+ * Throughput of copying a file to the temporal folder before uploading it, with the previous copy loop, with a
+ * channel transfer, and with the single pass copy computing the checksum.
+ */
+@LargeTest
+class FileStorageUtilsCopyBenchmarkTest {
+
+    private lateinit var source: File
+    private lateinit var target: File
+
+    @Before
+    fun setUp() {
+        val cacheDir = InstrumentationRegistry.getInstrumentation().targetContext.cacheDir
+        source = File.createTempFile("copy_source", ".bin", cacheDir)
+        target = File.createTempFile("copy_target", ".bin", cacheDir)
+    }
+
+    @After
+    fun tearDown() {
+        source.delete()
+        target.delete()
+    }
+
+    @Test
+    fun copy64MegabytesFile() {
+        val contents = ByteArray(BENCHMARK_SIZE).also { Random(SEED).nextBytes(it) }
+        FileOutputStream(source).use { it.write(contents) }
+
+        val loop = measure {
+            FileInputStream(source).use { input ->
+                FileOutputStream(target).use { output ->
+                    val buffer = ByteArray(PREVIOUS_BUFFER_SIZE)
+                    var read = input.read(buffer)
+                    while (read > -1) {
+                        output.write(buffer, 0, read)
+                        read = input.read(buffer)
+                    }
+                }
+            }
+        }
+        val transfer = measure {
+            FileInputStream(source).channel.use { input ->
+                FileOutputStream(target).channel.use { output ->
+                    var position = 0L
+                    while (position < input.size()) {
+                        position += input.transferTo(position, input.size() - position, output)
+                    }
+                }
+            }
+        }
+        val copy = measure { copy(null) }
+        val copyAndSha1 = measure { copy(MessageDigest.getInstance("SHA-1")) }
+        val copyAndMd5 = measure { copy(MessageDigest.getInstance("MD5")) }
+
+        Timber.i(
+            "Copying %d bytes: 4 KB loop %.0f MB/s, transferTo %.0f MB/s, copyStream %.0f MB/s, " +
+                    "copyStream + SHA-1 %.0f MB/s, copyStream + MD5 %.0f MB/s",
+            BENCHMARK_SIZE, loop, transfer, copy, copyAndSha1, copyAndMd5
+        )
+        assertEquals(source.length(), target.length())
+    }
+
+    private fun copy(digest: MessageDigest?) {
+        FileInputStream(source).use { input ->
+            FileOutputStream(target).use { output ->
+                FileStorageUtils.copyStream(input, output, digest, null)
+            }
+        }
+    }
+
+    /**
+     * @return Median throughput of the copy, in MB/s.
+     */
+    private fun measure(copy: () -> Unit): Double {
+        repeat(WARM_UP_RUNS) { copy() }
+        val throughputs = (0 until RUNS).map {
+            val start = SystemClock.elapsedRealtimeNanos()
+            copy()
+            BENCHMARK_SIZE / BYTES_PER_MB / ((SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_SECOND)
+        }
+        return throughputs.sorted()[RUNS / 2]
+    }
+
+    companion object {
+        private const val BENCHMARK_SIZE = 64 * 1024 * 1024
+        private const val PREVIOUS_BUFFER_SIZE = 4096
+        private const val SEED = 42L
+        private const val WARM_UP_RUNS = 2
+        private const val RUNS = 5
+        private const val BYTES_PER_MB = 1024.0 * 1024.0
+        private const val NANOS_PER_SECOND = 1_000_000_000.0
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.owncloud.android.utils
+
+import android.os.SystemClock
+import androidx.test.filters.LargeTest
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import timber.log.Timber
+import java.util.Collections
+import java.util.Random
+import java.util.Vector
+
+/**
+ * Time to sort a folder of 100k files by name, size and date. Sorting by name is compared with the previous
+ * comparator, that lower cased both names on every comparison.
+ */
+@LargeTest
+class FileStorageUtilsSortBenchmarkTest {
+
+    @Test
+    fun sort100000Files() {
+        val random = Random(SEED)
+        val original = (0 until FILES).map { i ->
+            val name = "${NAME_PREFIXES[random.nextInt(NAME_PREFIXES.size)]}_${random.nextInt(FILES)}_$i"
+            if (i % FOLDER_EVERY == 0) folder("/$name/") else file("/$name.txt").apply {
+                fileLength = random.nextInt(FILES).toLong()
+                modificationTimestamp = random.nextInt(FILES).toLong() + 1
+            }
+        }
+
+        val byName = medianMillis(original) { FileStorageUtils.sortFolder(it, FileStorageUtils.SORT_NAME, true) }
+        val byNameBefore = medianMillis(original) { Collections.sort(it, LOWER_CASE_NAME_COMPARATOR) }
+        val bySize = medianMillis(original) { FileStorageUtils.sortFolder(it, FileStorageUtils.SORT_SIZE, true) }
+        val byDate = medianMillis(original) { FileStorageUtils.sortFolder(it, FileStorageUtils.SORT_DATE, true) }
+
+        Timber.i(
+            "Sorting %d files: by name %.1f ms (lower casing on every comparison %.1f ms), by size %.1f ms, " +
+                    "by date %.1f ms",
+            FILES, byName, byNameBefore, bySize, byDate
+        )
+
+        val sorted = Vector(original)
+        FileStorageUtils.sortFolder(sorted, FileStorageUtils.SORT_NAME, true)
+        val firstFile = sorted.indexOfFirst { !it.isFolder }
+        assertTrue(sorted.subList(0, firstFile).all { it.isFolder })
+        assertTrue(sorted.subList(firstFile, sorted.size).none { it.isFolder })
+    }
+
+    /**
+     * @return Median of the milliseconds taken to sort a copy of the files.
+     */
+    private fun medianMillis(files: List<OCFile>, sort: (Vector<OCFile>) -> Unit): Double {
+        repeat(WARM_UP_RUNS) { sort(Vector(files)) }
+        val times = (0 until RUNS).map {
+            val copy = Vector(files)
+            val start = SystemClock.elapsedRealtimeNanos()
+            sort(copy)
+            (SystemClock.elapsedRealtimeNanos() - start) / NANOS_PER_MILLI
+        }
+        return times.sorted()[RUNS / 2]
+    }
+
+    private fun file(path: String) = OCFile(path).apply { mimetype = "text/plain" }
+
+    private fun folder(path: String) = OCFile(path).apply { mimetype = "DIR" }
+
+    companion object {
+        private const val FILES = 100_000
+        private const val FOLDER_EVERY = 20
+        private const val SEED = 42L
+        private const val WARM_UP_RUNS = 3
+        private const val RUNS = 5
+        private const val NANOS_PER_MILLI = 1_000_000.0
+        private val NAME_PREFIXES = arrayOf("IMG", "img", "Document", "report", "Résumé", "zeta", "Árbol", "notes")
+
+        private val LOWER_CASE_NAME_COMPARATOR = Comparator<OCFile> { file1, file2 ->
+            when {
+                file1.isFolder && !file2.isFolder -> -1
+                !file1.isFolder && file2.isFolder -> 1
+                else -> file1.fileName.toLowerCase().compareTo(file2.fileName.toLowerCase())
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package com.owncloud.android
 
 import android.app.Activity
+import android.content.ComponentCallbacks2
 import android.content.Context
 import android.content.pm.PackageInfo
 import android.content.pm.PackageManager
@@ -34,6 +35,7 @@ import androidx.multidex.MultiDexApplication
 import com.owncloud.android.authentication.BiometricManager
 import com.owncloud.android.authentication.PassCodeManager
 import com.owncloud.android.authentication.PatternManager
+import com.owncloud.android.datamodel.AvatarCache
 import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.db.PreferenceManager
 import com.owncloud.android.dependecyinjection.commonModule
@@ -149,6 +151,14 @@ class MainApp : MultiDexApplication() {
         initDependencyInjection()
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            ThumbnailsCacheManager.trimBitmapPool()
+            AvatarCache.getInstance().trimMemory()
+        }
+    }
+
     override fun attachBaseContext(base: Context?) {
         super.attachBaseContext(base)
         MultiDex.install(this)
@@ -0,0 +1,321 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import android.accounts.Account;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import com.jakewharton.disklrucache.DiskLruCache;
+import com.owncloud.android.MainApp;
+import com.owncloud.android.lib.common.OwnCloudAccount;
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.SingleSessionManager;
+import com.owncloud.android.lib.common.http.HttpConstants;
+import com.owncloud.android.lib.common.http.methods.nonwebdav.GetMethod;
+import timber.log.Timber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+/**
+ * Two-level cache (memory + disk) for user avatars, keyed by account and user id.
+ * <p>
+ * Cached avatars are considered fresh during {@link #TTL_MS}; after that, they are revalidated against
+ * the server with a conditional request using the ETag received with them, so unchanged avatars are not
+ * downloaded again.
+ */
+public class AvatarCache {
+
+    private static final String CACHE_FOLDER = "avatarCache";
+    private static final int CACHE_VERSION = 2;
+    private static final int DISK_CACHE_SIZE = 1024 * 1024 * 2; // 2MB
+    private static final int MEMORY_CACHE_SIZE = 1024 * 1024 * 2; // 2MB
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
+
+    // one value for the image, one for its metadata
+    private static final int VALUE_COUNT = 2;
+    private static final int VALUE_IMAGE = 0;
+    private static final int VALUE_METADATA = 1;
+    private static final String METADATA_SEPARATOR = "\n";
+
+    private static final long TTL_MS = 24 * 60 * 60 * 1000; // 1 day
+
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+
+    private static AvatarCache sInstance;
+
+    private final LruCache<String, CachedAvatar> mMemoryCache =
+            new LruCache<String, CachedAvatar>(MEMORY_CACHE_SIZE) {
+                @Override
+                protected int sizeOf(String key, CachedAvatar value) {
+                    return value.getBitmap().getByteCount();
+                }
+            };
+
+    private final DiskCache mDiskCache = new DiskCache(CACHE_FOLDER, CACHE_VERSION, VALUE_COUNT, DISK_CACHE_SIZE);
+
+    private AvatarCache() {
+    }
+
+    public static synchronized AvatarCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new AvatarCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Avatar stored in the cache, with the data needed to revalidate it.
+     */
+    public static class CachedAvatar {
+
+        private final Bitmap mBitmap;
+        private final String mEtag;
+        private final String mMimeType;
+        private final long mValidatedAt;
+
+        CachedAvatar(Bitmap bitmap, String etag, String mimeType, long validatedAt) {
+            mBitmap = bitmap;
+            mEtag = etag;
+            mMimeType = mimeType;
+            mValidatedAt = validatedAt;
+        }
+
+        public Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        public String getEtag() {
+            return mEtag;
+        }
+
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - mValidatedAt < TTL_MS;
+        }
+
+        CachedAvatar revalidated() {
+            return new CachedAvatar(mBitmap, mEtag, mMimeType, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Avatar got by {@link #fetchAvatar(Account, String, int)}, telling apart a user without avatar from an
+     * avatar that could not be got.
+     */
+    public static class AvatarResult {
+
+        private final CachedAvatar mAvatar;
+        private final boolean mNotFound;
+
+        AvatarResult(@Nullable CachedAvatar avatar, boolean notFound) {
+            mAvatar = avatar;
+            mNotFound = notFound;
+        }
+
+        /**
+         * @return Avatar, or null if there is none available.
+         */
+        @Nullable
+        public CachedAvatar getAvatar() {
+            return mAvatar;
+        }
+
+        /**
+         * @return 'True' if the server answered that the user has no avatar.
+         */
+        public boolean isNotFound() {
+            return mNotFound;
+        }
+    }
+
+    /**
+     * Gets an avatar from the cache, without accessing the server. Must not be called from the main thread.
+     *
+     * @param account OC account the avatar is requested from.
+     * @param userId  Id of the user owning the avatar.
+     * @return Cached avatar, fresh or not, or null if there is none.
+     */
+    @Nullable
+    public CachedAvatar getCachedAvatar(Account account, String userId) {
+        final String key = buildKey(account, userId);
+        CachedAvatar avatar = mMemoryCache.get(key);
+        if (avatar == null) {
+            avatar = readFromDisk(key);
+            if (avatar != null) {
+                mMemoryCache.put(key, avatar);
+            }
+        }
+        return avatar;
+    }
+
+    /**
+     * Gets an avatar, revalidating it with the server if the cached copy expired. Must not be called from
+     * the main thread.
+     *
+     * @param account    OC account the avatar is requested from.
+     * @param userId     Id of the user owning the avatar.
+     * @param dimension  Size of the avatar, in pixels.
+     * @return Fresh avatar; the stale cached copy if the server could not be reached; or null if the user has
+     *                   no avatar.
+     */
+    @Nullable
+    public CachedAvatar getAvatar(Account account, String userId, int dimension) {
+        return fetchAvatar(account, userId, dimension).getAvatar();
+    }
+
+    /**
+     * Same as {@link #getAvatar(Account, String, int)}, also telling if the server answered that the user has no
+     * avatar, so that a failure getting it is not taken as a removed avatar.
+     */
+    public AvatarResult fetchAvatar(Account account, String userId, int dimension) {
+        final CachedAvatar cached = getCachedAvatar(account, userId);
+        if (cached != null && cached.isFresh()) {
+            return new AvatarResult(cached, false);
+        }
+
+        GetMethod get;
+        try {
+            OwnCloudAccount ocAccount = new OwnCloudAccount(account, MainApp.Companion.getAppContext());
+            OwnCloudClient client = SingleSessionManager.getDefaultSingleton().
+                    getClientFor(ocAccount, MainApp.Companion.getAppContext());
+
+            String uri = client.getBaseUri() + "" +
+                    "/index.php/avatar/" + userId + "/" + dimension;
+            Timber.d("URI: %s", uri);
+            get = new GetMethod(new URL(uri));
+            if (cached != null && cached.getEtag() != null) {
+                get.setRequestHeader(IF_NONE_MATCH_HEADER, cached.getEtag());
+            }
+            int status = client.executeHttpMethod(get);
+
+            if (status == HttpConstants.HTTP_OK) {
+                InputStream inputStream = get.getResponseBodyAsStream();
+                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+                bitmap = ThumbnailUtils.extractThumbnail(bitmap, dimension, dimension);
+                if (bitmap != null) {
+                    CachedAvatar avatar = new CachedAvatar(
+                            bitmap,
+                            get.getResponseHeader(ETAG_HEADER),
+                            get.getResponseHeader(CONTENT_TYPE_HEADER),
+                            System.currentTimeMillis()
+                    );
+                    put(account, userId, avatar, true);
+                    return new AvatarResult(avatar, false);
+                }
+
+            } else if (status == HttpConstants.HTTP_NOT_MODIFIED && cached != null) {
+                Timber.d("Avatar of %s not modified", userId);
+                CachedAvatar avatar = cached.revalidated();
+                put(account, userId, avatar, false);
+                return new AvatarResult(avatar, false);
+
+            } else {
+                client.exhaustResponse(get.getResponseBodyAsStream());
+                if (status == HttpConstants.HTTP_NOT_FOUND) {
+                    Timber.i("No avatar available for %s, removing cached copy", userId);
+                    remove(account, userId);
+                    return new AvatarResult(null, true);
+                }
+            }
+        } catch (Exception e) {
+            Timber.e(e, "Error revalidating avatar of %s", userId);
+        }
+        return new AvatarResult(cached, false);
+    }
+
+    public void remove(Account account, String userId) {
+        final String key = buildKey(account, userId);
+        mMemoryCache.remove(key);
+        mDiskCache.remove(key);
+    }
+
+    /**
+     * Releases the avatars kept in memory.
+     */
+    public void trimMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    private void put(Account account, String userId, CachedAvatar avatar, boolean imageChanged) {
+        final String key = buildKey(account, userId);
+        mMemoryCache.put(key, avatar);
+        mDiskCache.put(key, editor -> {
+            // if the image was not written, DiskLruCache keeps the previous one
+            if (imageChanged) {
+                try (OutputStream out = new BufferedOutputStream(
+                        editor.newOutputStream(VALUE_IMAGE), IO_BUFFER_SIZE)) {
+                    avatar.getBitmap().compress(Bitmap.CompressFormat.PNG, 100, out);
+                }
+            }
+            editor.set(VALUE_METADATA, avatar.getEtag() + METADATA_SEPARATOR +
+                    avatar.getMimeType() + METADATA_SEPARATOR + avatar.mValidatedAt);
+        });
+    }
+
+    private CachedAvatar readFromDisk(String key) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = mDiskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            String[] metadata = snapshot.getString(VALUE_METADATA).split(METADATA_SEPARATOR);
+            Bitmap bitmap = BitmapFactory.decodeStream(
+                    new BufferedInputStream(snapshot.getInputStream(VALUE_IMAGE), IO_BUFFER_SIZE)
+            );
+            if (bitmap == null || metadata.length < 3) {
+                return null;
+            }
+            return new CachedAvatar(
+                    bitmap,
+                    "null".equals(metadata[0]) ? null : metadata[0],
+                    "null".equals(metadata[1]) ? null : metadata[1],
+                    Long.parseLong(metadata[2])
+            );
+        } catch (IOException | NumberFormatException e) {
+            Timber.e(e, "Avatar could not be read from disk cache");
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * Builds a key valid for {@link DiskLruCache} from the account and the user id, different for every account.
+     */
+    public static String buildKey(Account account, String userId) {
+        return DiskCache.buildKey(account.name, userId);
+    }
+}
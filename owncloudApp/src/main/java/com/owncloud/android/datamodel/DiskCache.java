@@ -0,0 +1,152 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import com.jakewharton.disklrucache.DiskLruCache;
+import com.owncloud.android.MainApp;
+import com.owncloud.android.utils.SecurityUtils;
+import timber.log.Timber;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link DiskLruCache} in a folder of the app cache, opened the first time it is used.
+ * <p>
+ * {@link DiskLruCache} is safe for concurrent use, so entries are read without any lock. Edits are serialized,
+ * so that an entry written by several threads at once is not lost; they should only copy data already at hand,
+ * never wait for the network.
+ */
+class DiskCache {
+
+    /**
+     * Writes the values of an entry of the cache.
+     */
+    interface EntryWriter {
+        void write(DiskLruCache.Editor editor) throws IOException;
+    }
+
+    private final String mFolder;
+    private final int mVersion;
+    private final int mValueCount;
+    private final long mMaxSize;
+
+    private final Object mEditLock = new Object();
+    private DiskLruCache mDiskCache;
+
+    /**
+     * @param folder     Folder of the cache, inside the cache folder of the app.
+     * @param version    Version of the format of the entries; entries of other versions are discarded.
+     * @param valueCount Number of values of every entry.
+     * @param maxSize    Maximum size of the cache, in bytes.
+     */
+    DiskCache(String folder, int version, int valueCount, long maxSize) {
+        mFolder = folder;
+        mVersion = version;
+        mValueCount = valueCount;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return Snapshot of the entry, to be closed by the caller, or null if it is not in the cache.
+     */
+    @Nullable
+    DiskLruCache.Snapshot get(String key) throws IOException {
+        DiskLruCache diskCache = getDiskCache();
+        return diskCache != null ? diskCache.get(key) : null;
+    }
+
+    /**
+     * Creates or replaces an entry. Values not written by the writer keep their previous content.
+     *
+     * @return 'True' if the entry was committed.
+     */
+    boolean put(String key, EntryWriter writer) {
+        synchronized (mEditLock) {
+            DiskLruCache diskCache = getDiskCache();
+            if (diskCache == null) {
+                return false;
+            }
+            DiskLruCache.Editor editor = null;
+            try {
+                editor = diskCache.edit(key);
+                if (editor == null) {
+                    return false;
+                }
+                writer.write(editor);
+                editor.commit();
+                diskCache.flush();
+                return true;
+
+            } catch (IOException | IllegalStateException e) {
+                Timber.e(e, "Entry could not be written in %s", mFolder);
+                try {
+                    if (editor != null) {
+                        editor.abort();
+                    }
+                } catch (IOException ignored) {
+                }
+                return false;
+            }
+        }
+    }
+
+    void remove(String key) {
+        synchronized (mEditLock) {
+            DiskLruCache diskCache = getDiskCache();
+            if (diskCache != null) {
+                try {
+                    diskCache.remove(key);
+                } catch (IOException e) {
+                    Timber.e(e, "Entry could not be removed from %s", mFolder);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Temporary file in the cache folder of the app, to receive data before it is put in the cache.
+     */
+    File createTempFile() throws IOException {
+        return File.createTempFile(mFolder, null, MainApp.Companion.getAppContext().getCacheDir());
+    }
+
+    /**
+     * Builds a key valid for {@link DiskLruCache}, that only accepts [a-z0-9_-]{1,64}, from a digest of the
+     * given parts, so that different parts never share a key.
+     */
+    static String buildKey(String... parts) {
+        return SecurityUtils.stringToSHA256Hash(TextUtils.join("/", parts));
+    }
+
+    private synchronized DiskLruCache getDiskCache() {
+        if (mDiskCache == null) {
+            try {
+                final File diskCacheDir = new File(MainApp.Companion.getAppContext().getCacheDir(), mFolder);
+                mDiskCache = DiskLruCache.open(diskCacheDir, mVersion, mValueCount, mMaxSize);
+            } catch (IOException e) {
+                Timber.e(e, "Cache %s could not be opened", mFolder);
+            }
+        }
+        return mDiskCache;
+    }
+}
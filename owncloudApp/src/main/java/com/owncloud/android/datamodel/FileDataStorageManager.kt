@@ -108,10 +108,11 @@ class FileDataStorageManager {
             )
 
             if (cursorOnKeptInSync != null && cursorOnKeptInSync.moveToFirst()) {
+                val columns = FileColumns(cursorOnKeptInSync)
                 var file: OCFile?
                 var accountName: String
                 do {
-                    file = createFileInstance(cursorOnKeptInSync)
+                    file = createFileInstance(cursorOnKeptInSync, columns)
                     accountName =
                         cursorOnKeptInSync.getString(cursorOnKeptInSync.getColumnIndex(FILE_ACCOUNT_OWNER))
                     if (!file!!.isFolder && AccountUtils.exists(accountName, mContext)) {
@@ -158,9 +159,10 @@ class FileDataStorageManager {
                 )
 
                 if (cursorOnKeptInSync != null && cursorOnKeptInSync.moveToFirst()) {
+                    val columns = FileColumns(cursorOnKeptInSync)
                     var file: OCFile?
                     do {
-                        file = createFileInstance(cursorOnKeptInSync)
+                        file = createFileInstance(cursorOnKeptInSync, columns)
                         result.add(file)
                     } while (cursorOnKeptInSync.moveToNext())
                 } else {
@@ -191,9 +193,10 @@ class FileDataStorageManager {
                     null
                 )
                 if (cursorOnShared != null && cursorOnShared.moveToFirst()) {
+                    val columns = FileColumns(cursorOnShared)
                     var file: OCFile?
                     do {
-                        file = createFileInstance(cursorOnShared)
+                        file = createFileInstance(cursorOnShared, columns)
                         allSharedFiles.add(file)
                     } while (cursorOnShared.moveToNext())
                 }
@@ -243,6 +246,30 @@ class FileDataStorageManager {
         return file
     }
 
+    /**
+     * Finds the account owning a file, whatever the account of this storage manager is.
+     *
+     * @param id Id of the file in the local database.
+     * @return Name of the account owning the file, or null if there is no file with that id.
+     */
+    fun getAccountNameOfFile(id: Long): String? {
+        val c: Cursor? = try {
+            performQuery(
+                uri = CONTENT_URI,
+                projection = arrayOf(FILE_ACCOUNT_OWNER),
+                selection = "$_ID=?",
+                selectionArgs = arrayOf(id.toString()),
+                sortOrder = null
+            )
+        } catch (e: RemoteException) {
+            Timber.e(e, "Could not get owner of file $id")
+            null
+        }
+        return c?.use {
+            if (it.moveToFirst()) it.getString(0) else null
+        }
+    }
+
     /**
      * This will return a OCFile by its given FileId here refered as the remoteId.
      * Its the fileId ownCloud Core uses to identify a file even if its name has changed.
@@ -284,15 +311,66 @@ class FileDataStorageManager {
         }
     }
 
-    fun getFolderImages(folder: OCFile?): Vector<OCFile> =
-        folder?.let {
-            // TODO better implementation, filtering in the access to database instead of here
-            val folderImages = Vector<OCFile>()
-            for (file in getFolderContent(it)) {
-                if (file.isImage) folderImages.add(file)
+    /**
+     * Gets the ids of the images in a folder, sorted by the database and reading only the columns needed to
+     * tell images apart, so that no [OCFile] needs to be created for them; they can be loaded one by one with
+     * [getFileById] when needed.
+     *
+     * Images are told apart as [OCFileRow.isImage] does, also by extension, and sorted with the collation of
+     * the current locale, as [FileStorageUtils.sortFolder] sorts the file list.
+     *
+     * @param folder      Folder where images will be searched for.
+     * @param sortOrder   One of [FileStorageUtils.SORT_NAME], [FileStorageUtils.SORT_DATE] or
+     *                    [FileStorageUtils.SORT_SIZE].
+     * @param isAscending 'True' to sort in ascending order.
+     * @return Ids of the images in the folder, in the requested order.
+     */
+    fun getFolderImageIds(folder: OCFile?, sortOrder: Int, isAscending: Boolean): LongArray {
+        if (folder == null || !folder.isFolder || folder.fileId == -1L) {
+            return LongArray(0)
+        }
+
+        val c: Cursor? = try {
+            performQuery(
+                uri = Uri.withAppendedPath(CONTENT_URI_DIR, folder.fileId.toString()),
+                projection = arrayOf(_ID, FILE_PATH, FILE_CONTENT_TYPE),
+                selection = "$FILE_PARENT=? AND $FILE_CONTENT_TYPE NOT IN (?, ?)",
+                selectionArgs = arrayOf(folder.fileId.toString(), mimeTypeDir, mimeTypeDirUnix),
+                sortOrder = getSqlSortOrder(sortOrder, isAscending)
+            )
+        } catch (e: RemoteException) {
+            Timber.e(e)
+            return LongArray(0)
+        }
+
+        return c?.use {
+            val ids = LongArray(it.count)
+            var count = 0
+            val idIndex = it.getColumnIndex(_ID)
+            val pathIndex = it.getColumnIndex(FILE_PATH)
+            val mimeTypeIndex = it.getColumnIndex(FILE_CONTENT_TYPE)
+            while (it.moveToNext()) {
+                if (OCFileRow.isImage(it.getString(mimeTypeIndex), it.getString(pathIndex))) {
+                    ids[count++] = it.getLong(idIndex)
+                }
             }
-            folderImages
-        } ?: Vector()
+            ids.copyOf(count)
+        } ?: LongArray(0)
+    }
+
+    /**
+     * @return Order of [FileStorageUtils.sortFolder] for the files of a folder; ties are left in the initial
+     * order of the file list.
+     */
+    private fun getSqlSortOrder(sortOrder: Int, isAscending: Boolean): String {
+        val direction = if (isAscending) "ASC" else "DESC"
+        val order = when (sortOrder) {
+            FileStorageUtils.SORT_DATE -> "$FILE_MODIFIED $direction"
+            FileStorageUtils.SORT_SIZE -> "$FILE_CONTENT_LENGTH $direction"
+            else -> "$FILE_NAME COLLATE LOCALIZED $direction"
+        }
+        return "$order, $FILE_PATH COLLATE NOCASE ASC"
+    }
 
     fun saveFile(file: OCFile): Boolean {
         var overriden = false
@@ -753,9 +831,10 @@ class FileDataStorageManager {
                 if (c.moveToFirst()) {
                     val lengthOfOldPath = file.remotePath.length
                     val lengthOfOldStoragePath = defaultSavePath.length + lengthOfOldPath
+                    val columns = FileColumns(c)
                     do {
                         val cv = ContentValues() // keep construction in the loop
-                        val child = createFileInstance(c)
+                        val child = createFileInstance(c, columns)
                         cv.put(FILE_PATH, targetPath + child!!.remotePath.substring(lengthOfOldPath))
                         if (child.storagePath != null && child.storagePath.startsWith(defaultSavePath)) {
                             // update link to downloaded content - but local move is not done here!
@@ -906,18 +985,38 @@ class FileDataStorageManager {
         return ret
     }
 
-    fun getFolderContent(parentId: Long): Vector<OCFile> {
+    fun getFolderContent(parentId: Long): Vector<OCFile> = getFolderContent(parentId, false)
+
+    /**
+     * Gets the folders inside a folder, without reading the rest of its files.
+     */
+    fun getSubfolders(f: OCFile?): Vector<OCFile> {
+        return if (f != null && f.isFolder && f.fileId != -1L) {
+            getFolderContent(f.fileId, true)
+        } else {
+            Vector()
+        }
+    }
+
+    private fun getFolderContent(parentId: Long, onlyFolders: Boolean): Vector<OCFile> {
         val ret = Vector<OCFile>()
 
         val reqUri = Uri.withAppendedPath(CONTENT_URI_DIR, parentId.toString())
 
-        val selection = "$FILE_PARENT=?"
-        val selectionArgs: Array<String> = arrayOf(parentId.toString())
+        val selection: String
+        val selectionArgs: Array<String>
+        if (onlyFolders) {
+            selection = "$FILE_PARENT=? AND $FILE_CONTENT_TYPE IN (?, ?)"
+            selectionArgs = arrayOf(parentId.toString(), mimeTypeDir, mimeTypeDirUnix)
+        } else {
+            selection = "$FILE_PARENT=?"
+            selectionArgs = arrayOf(parentId.toString())
+        }
 
         val c: Cursor? = try {
             performQuery(
                 uri = reqUri,
-                projection = null,
+                projection = FILE_INSTANCE_PROJECTION,
                 selection = selection,
                 selectionArgs = selectionArgs,
                 sortOrder = null
@@ -929,8 +1028,9 @@ class FileDataStorageManager {
 
         c?.let {
             if (it.moveToFirst()) {
+                val columns = FileColumns(it)
                 do {
-                    val child = createFileInstance(it)
+                    val child = createFileInstance(it, columns)
                     ret.add(child)
                 } while (it.moveToNext())
             }
@@ -940,6 +1040,48 @@ class FileDataStorageManager {
         return ret.apply { sort() }
     }
 
+    /**
+     * Gets the files in a folder as [OCFileRow]s, reading from the database only the columns needed to list them.
+     *
+     * @param parentId Id of the folder.
+     * @return Files in the folder, not sorted.
+     */
+    fun getFolderRows(parentId: Long): List<OCFileRow> {
+        val c: Cursor? = try {
+            performQuery(
+                uri = Uri.withAppendedPath(CONTENT_URI_DIR, parentId.toString()),
+                projection = FILE_ROW_PROJECTION,
+                selection = "$FILE_PARENT=?",
+                selectionArgs = arrayOf(parentId.toString()),
+                sortOrder = null
+            )
+        } catch (e: RemoteException) {
+            Timber.e(e)
+            return emptyList()
+        }
+
+        return c?.use {
+            val rows = ArrayList<OCFileRow>(it.count)
+            val idIndex = it.getColumnIndex(_ID)
+            val pathIndex = it.getColumnIndex(FILE_PATH)
+            val mimeTypeIndex = it.getColumnIndex(FILE_CONTENT_TYPE)
+            val lengthIndex = it.getColumnIndex(FILE_CONTENT_LENGTH)
+            val modifiedIndex = it.getColumnIndex(FILE_MODIFIED)
+            while (it.moveToNext()) {
+                rows.add(
+                    OCFileRow(
+                        fileId = it.getLong(idIndex),
+                        remotePath = it.getString(pathIndex),
+                        mimeType = it.getString(mimeTypeIndex),
+                        fileLength = it.getLong(lengthIndex),
+                        modificationTimestamp = it.getLong(modifiedIndex)
+                    )
+                )
+            }
+            rows
+        } ?: emptyList()
+    }
+
     /**
      * Checks if it is favorite or it is inside a favorite folder
      *
@@ -1010,13 +1152,42 @@ class FileDataStorageManager {
             null
         }
 
-    private fun createFileInstance(c: Cursor?): OCFile? = c?.let {
-        OCFile(it.getString(it.getColumnIndex(FILE_PATH))).apply {
-            fileId = it.getLong(it.getColumnIndex(_ID))
-            parentId = it.getLong(it.getColumnIndex(FILE_PARENT))
-            mimetype = it.getString(it.getColumnIndex(FILE_CONTENT_TYPE))
+    /**
+     * Indices of the columns read by [createFileInstance], resolved once per cursor instead of once per row.
+     */
+    private class FileColumns(c: Cursor) {
+        val id = c.getColumnIndex(_ID)
+        val parent = c.getColumnIndex(FILE_PARENT)
+        val path = c.getColumnIndex(FILE_PATH)
+        val contentType = c.getColumnIndex(FILE_CONTENT_TYPE)
+        val storagePath = c.getColumnIndex(FILE_STORAGE_PATH)
+        val contentLength = c.getColumnIndex(FILE_CONTENT_LENGTH)
+        val creation = c.getColumnIndex(FILE_CREATION)
+        val modified = c.getColumnIndex(FILE_MODIFIED)
+        val modifiedAtLastSyncForData = c.getColumnIndex(FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA)
+        val lastSyncDate = c.getColumnIndex(FILE_LAST_SYNC_DATE)
+        val lastSyncDateForData = c.getColumnIndex(FILE_LAST_SYNC_DATE_FOR_DATA)
+        val keepInSync = c.getColumnIndex(FILE_KEEP_IN_SYNC)
+        val etag = c.getColumnIndex(FILE_ETAG)
+        val treeEtag = c.getColumnIndex(FILE_TREE_ETAG)
+        val sharedViaLink = c.getColumnIndex(FILE_SHARED_VIA_LINK)
+        val sharedWithSharee = c.getColumnIndex(FILE_SHARED_WITH_SHAREE)
+        val permissions = c.getColumnIndex(FILE_PERMISSIONS)
+        val remoteId = c.getColumnIndex(FILE_REMOTE_ID)
+        val updateThumbnail = c.getColumnIndex(FILE_UPDATE_THUMBNAIL)
+        val isDownloading = c.getColumnIndex(FILE_IS_DOWNLOADING)
+        val etagInConflict = c.getColumnIndex(FILE_ETAG_IN_CONFLICT)
+        val privateLink = c.getColumnIndex(FILE_PRIVATE_LINK)
+    }
+
+    private fun createFileInstance(c: Cursor?, columns: FileColumns? = null): OCFile? = c?.let {
+        val col = columns ?: FileColumns(it)
+        OCFile(it.getString(col.path)).apply {
+            fileId = it.getLong(col.id)
+            parentId = it.getLong(col.parent)
+            mimetype = it.getString(col.contentType)
             if (!isFolder) {
-                storagePath = it.getString(it.getColumnIndex(FILE_STORAGE_PATH))
+                storagePath = it.getString(col.storagePath)
                 if (storagePath == null) {
                     // try to find existing file and bind it with current account;
                     // with the current update of SynchronizeFolderOperation, this won't be
@@ -1028,23 +1199,23 @@ class FileDataStorageManager {
                     }
                 }
             }
-            fileLength = it.getLong(it.getColumnIndex(FILE_CONTENT_LENGTH))
-            creationTimestamp = it.getLong(it.getColumnIndex(FILE_CREATION))
-            modificationTimestamp = it.getLong(it.getColumnIndex(FILE_MODIFIED))
-            modificationTimestampAtLastSyncForData = it.getLong(it.getColumnIndex(FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA))
-            lastSyncDateForProperties = it.getLong(it.getColumnIndex(FILE_LAST_SYNC_DATE))
-            lastSyncDateForData = it.getLong(it.getColumnIndex(FILE_LAST_SYNC_DATE_FOR_DATA))
-            availableOfflineStatus = fromValue(it.getInt(it.getColumnIndex(FILE_KEEP_IN_SYNC)))
-            etag = it.getString(it.getColumnIndex(FILE_ETAG))
-            treeEtag = it.getString(it.getColumnIndex(FILE_TREE_ETAG))
-            isSharedViaLink = it.getInt(it.getColumnIndex(FILE_SHARED_VIA_LINK)) == 1
-            isSharedWithSharee = it.getInt(it.getColumnIndex(FILE_SHARED_WITH_SHAREE)) == 1
-            permissions = it.getString(it.getColumnIndex(FILE_PERMISSIONS))
-            remoteId = it.getString(it.getColumnIndex(FILE_REMOTE_ID))
-            setNeedsUpdateThumbnail(it.getInt(it.getColumnIndex(FILE_UPDATE_THUMBNAIL)) == 1)
-            isDownloading = it.getInt(it.getColumnIndex(FILE_IS_DOWNLOADING)) == 1
-            etagInConflict = it.getString(it.getColumnIndex(FILE_ETAG_IN_CONFLICT))
-            privateLink = it.getString(it.getColumnIndex(FILE_PRIVATE_LINK))
+            fileLength = it.getLong(col.contentLength)
+            creationTimestamp = it.getLong(col.creation)
+            modificationTimestamp = it.getLong(col.modified)
+            modificationTimestampAtLastSyncForData = it.getLong(col.modifiedAtLastSyncForData)
+            lastSyncDateForProperties = it.getLong(col.lastSyncDate)
+            lastSyncDateForData = it.getLong(col.lastSyncDateForData)
+            availableOfflineStatus = fromValue(it.getInt(col.keepInSync))
+            etag = it.getString(col.etag)
+            treeEtag = it.getString(col.treeEtag)
+            isSharedViaLink = it.getInt(col.sharedViaLink) == 1
+            isSharedWithSharee = it.getInt(col.sharedWithSharee) == 1
+            permissions = it.getString(col.permissions)
+            remoteId = it.getString(col.remoteId)
+            setNeedsUpdateThumbnail(it.getInt(col.updateThumbnail) == 1)
+            isDownloading = it.getInt(col.isDownloading) == 1
+            etagInConflict = it.getString(col.etagInConflict)
+            privateLink = it.getString(col.privateLink)
         }
     }
 
@@ -1530,5 +1701,24 @@ class FileDataStorageManager {
         private const val pathVideo = "video/"
         private const val pathImage = "image/"
         private const val mimeTypeDir = "DIR"
+        private const val mimeTypeDirUnix = "httpd/unix-directory"
+
+        /**
+         * Columns read by [createFileInstance], to not read the rest from the database.
+         */
+        private val FILE_INSTANCE_PROJECTION = arrayOf(
+            _ID, FILE_PARENT, FILE_PATH, FILE_CONTENT_TYPE, FILE_STORAGE_PATH, FILE_CONTENT_LENGTH, FILE_CREATION,
+            FILE_MODIFIED, FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA, FILE_LAST_SYNC_DATE, FILE_LAST_SYNC_DATE_FOR_DATA,
+            FILE_KEEP_IN_SYNC, FILE_ETAG, FILE_TREE_ETAG, FILE_SHARED_VIA_LINK, FILE_SHARED_WITH_SHAREE,
+            FILE_PERMISSIONS, FILE_REMOTE_ID, FILE_UPDATE_THUMBNAIL, FILE_IS_DOWNLOADING, FILE_ETAG_IN_CONFLICT,
+            FILE_PRIVATE_LINK
+        )
+
+        /**
+         * Columns read to build [OCFileRow]s.
+         */
+        private val FILE_ROW_PROJECTION = arrayOf(
+            _ID, FILE_PATH, FILE_CONTENT_TYPE, FILE_CONTENT_LENGTH, FILE_MODIFIED
+        )
     }
 }
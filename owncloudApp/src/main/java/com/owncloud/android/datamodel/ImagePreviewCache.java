@@ -0,0 +1,219 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel;
+
+import android.accounts.Account;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import androidx.annotation.Nullable;
+import com.jakewharton.disklrucache.DiskLruCache;
+import com.owncloud.android.MainApp;
+import com.owncloud.android.lib.common.OwnCloudAccount;
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.SingleSessionManager;
+import com.owncloud.android.lib.common.http.HttpConstants;
+import com.owncloud.android.lib.common.http.methods.nonwebdav.GetMethod;
+import timber.log.Timber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+/**
+ * Disk cache for screen-sized previews of images rendered by the server, so that an image can be shown
+ * without downloading the original file.
+ * <p>
+ * Previews are stored as received from the server, keyed by file, ETag and size; a new version of the file
+ * gets a new key, and the old previews are eventually evicted. The cache is separate from the one of the
+ * thumbnails, so that big previews do not push the thumbnails of the file list out of it.
+ * <p>
+ * Previews are downloaded to a temporary file first, so that a slow download does not keep other previews from
+ * being read or written.
+ */
+public class ImagePreviewCache {
+
+    private static final String CACHE_FOLDER = "previewCache";
+    private static final int CACHE_VERSION = 2;
+    private static final int DISK_CACHE_SIZE = 1024 * 1024 * 50; // 50MB
+    private static final int VALUE_COUNT = 1;
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
+
+    private static ImagePreviewCache sInstance;
+
+    private final DiskCache mDiskCache = new DiskCache(CACHE_FOLDER, CACHE_VERSION, VALUE_COUNT, DISK_CACHE_SIZE);
+
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    private ImagePreviewCache() {
+    }
+
+    public static synchronized ImagePreviewCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new ImagePreviewCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets a preview of an image, from the cache or from the server. Must not be called from the main thread.
+     *
+     * @param file    Image file.
+     * @param account OC account owning the file.
+     * @param px      Maximum width and height of the preview, in pixels.
+     * @param signal  Signal to cancel the download, may be null.
+     * @return Preview fitting in px x px, or null if the server could not provide it.
+     */
+    @Nullable
+    public Bitmap getPreview(OCFile file, Account account, int px, @Nullable CancellationSignal signal) {
+        final String key = buildKey(account, file, px);
+        Bitmap preview = readFromDisk(key, px);
+        synchronized (this) {
+            if (preview != null) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        if (preview == null && downloadPreview(key, file, account, px, signal)) {
+            preview = readFromDisk(key, px);
+        }
+        return preview;
+    }
+
+    /**
+     * @return Ratio of previews served from the cache, 0 if there were no requests yet.
+     */
+    public synchronized float getHitRate() {
+        final long requests = mHits + mMisses;
+        return requests == 0 ? 0f : (float) mHits / requests;
+    }
+
+    private boolean downloadPreview(String key, OCFile file, Account account, int px, CancellationSignal signal) {
+        GetMethod get = null;
+        try {
+            OwnCloudAccount ocAccount = new OwnCloudAccount(account, MainApp.Companion.getAppContext());
+            OwnCloudClient client = SingleSessionManager.getDefaultSingleton().
+                    getClientFor(ocAccount, MainApp.Companion.getAppContext());
+
+            String uri = client.getBaseUri() + "" +
+                    "/index.php/apps/files/api/v1/thumbnail/" +
+                    px + "/" + px + Uri.encode(file.getRemotePath(), "/");
+            Timber.d("URI: %s", uri);
+            get = new GetMethod(new URL(uri));
+            if (signal != null) {
+                signal.setOnCancelListener(get::abort);
+            }
+            int status = client.executeHttpMethod(get);
+            if (status != HttpConstants.HTTP_OK) {
+                client.exhaustResponse(get.getResponseBodyAsStream());
+                Timber.w("Server preview of %s not available, status %d", file.getRemotePath(), status);
+                return false;
+            }
+            return writeToDisk(key, get.getResponseBodyAsStream());
+
+        } catch (Exception e) {
+            Timber.e(e, "Error downloading preview of %s", file.getRemotePath());
+            return false;
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    private boolean writeToDisk(String key, InputStream inputStream) throws IOException {
+        final File tempFile = mDiskCache.createTempFile();
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), IO_BUFFER_SIZE)) {
+                copy(inputStream, out);
+            }
+            return mDiskCache.put(key, editor -> {
+                try (InputStream in = new FileInputStream(tempFile);
+                     OutputStream out = new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE)) {
+                    copy(in, out);
+                }
+            });
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[IO_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private Bitmap readFromDisk(String key, int px) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = mDiskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            // the server may ignore the requested size; never decode more than needed
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = new BufferedInputStream(snapshot.getInputStream(0), IO_BUFFER_SIZE)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            snapshot.close();
+
+            options.inSampleSize = 1;
+            while (Math.max(options.outWidth, options.outHeight) / (options.inSampleSize * 2) >= px) {
+                options.inSampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            snapshot = mDiskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            try (InputStream in = new BufferedInputStream(snapshot.getInputStream(0), IO_BUFFER_SIZE)) {
+                return BitmapFactory.decodeStream(in, null, options);
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Preview could not be read from disk cache");
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * Builds a key valid for {@link DiskLruCache} from a digest of the file, its version and the size.
+     */
+    private static String buildKey(Account account, OCFile file, int px) {
+        final String id = file.getRemoteId() != null ? file.getRemoteId() : file.getRemotePath();
+        return DiskCache.buildKey(account.name, id, file.getEtag(), String.valueOf(px));
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.utils.FileStorageUtils
+
+/**
+ * Compact and immutable description of a file, with just the fields needed to list it.
+ *
+ * Built by [FileDataStorageManager.getFolderRows] from a query of only those columns, much cheaper than a
+ * full [OCFile] for big folders.
+ */
+data class OCFileRow(
+    val fileId: Long,
+    val remotePath: String,
+    val mimeType: String?,
+    val fileLength: Long,
+    val modificationTimestamp: Long
+) {
+    val isFolder: Boolean
+        get() = mimeType == MIME_DIR || mimeType == MIME_DIR_UNIX
+
+    val fileName: String
+        get() {
+            val end = if (remotePath.endsWith(OCFile.PATH_SEPARATOR)) remotePath.length - 1 else remotePath.length
+            val start = remotePath.lastIndexOf(OCFile.PATH_SEPARATOR, end - 1) + 1
+            return if (start >= end) OCFile.ROOT_PATH else remotePath.substring(start, end)
+        }
+
+    /**
+     * Same as [OCFile.isImage], the type is guessed from the extension when the MIME type does not match.
+     */
+    val isImage: Boolean
+        get() = isImage(mimeType, remotePath)
+
+    companion object {
+        /**
+         * Same as [OCFile.isImage], for a file read from a cursor without building any object for it.
+         */
+        fun isImage(mimeType: String?, remotePath: String): Boolean =
+            mimeType?.startsWith(TYPE_IMAGE) == true ||
+                    FileStorageUtils.getMimeTypeFromName(remotePath).startsWith(TYPE_IMAGE)
+
+        private const val MIME_DIR = "DIR"
+        private const val MIME_DIR_UNIX = "httpd/unix-directory"
+        private const val TYPE_IMAGE = "image/"
+    }
+}
@@ -102,6 +102,16 @@ public class OCUpload implements Parcelable {
      */
     private String mTransferId;
 
+    /*
+     * Bytes not uploaded thanks to downscaling the picture
+     */
+    private long mBytesSaved;
+
+    /*
+     * Checksum of the contents uploaded, as "TYPE:hex"; null if not known
+     */
+    private String mChecksum;
+
     /**
      * Main constructor
      *
@@ -151,6 +161,8 @@ public class OCUpload implements Parcelable {
         mLastResult = UploadResult.UNKNOWN;
         mCreatedBy = UploadFileOperation.CREATED_BY_USER;
         mTransferId = "";
+        mBytesSaved = 0;
+        mChecksum = null;
     }
 
     // Getters & Setters
@@ -315,6 +327,22 @@ public class OCUpload implements Parcelable {
         return mTransferId;
     }
 
+    public void setBytesSaved(long bytesSaved) {
+        mBytesSaved = bytesSaved;
+    }
+
+    public long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    public void setChecksum(String checksum) {
+        mChecksum = checksum;
+    }
+
+    public String getChecksum() {
+        return mChecksum;
+    }
+
     /**
      * For debugging purposes only.
      */
@@ -376,6 +404,8 @@ public class OCUpload implements Parcelable {
         }
         mCreatedBy = source.readInt();
         mTransferId = source.readString();
+        mBytesSaved = source.readLong();
+        mChecksum = source.readString();
     }
 
     @Override
@@ -398,6 +428,8 @@ public class OCUpload implements Parcelable {
         dest.writeString(((mLastResult == null) ? "" : mLastResult.name()));
         dest.writeInt(mCreatedBy);
         dest.writeString(mTransferId);
+        dest.writeLong(mBytesSaved);
+        dest.writeString(mChecksum);
     }
 
     enum CanUploadFileNowStatus {NOW, LATER, FILE_GONE, ERROR}
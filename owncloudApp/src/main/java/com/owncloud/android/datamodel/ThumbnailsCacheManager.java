@@ -29,9 +29,9 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.CancellationSignal;
 import android.view.MenuItem;
 import android.widget.ImageView;
 
@@ -47,6 +47,7 @@ import com.owncloud.android.lib.common.http.methods.nonwebdav.GetMethod;
 import com.owncloud.android.lib.resources.status.OwnCloudVersion;
 import com.owncloud.android.ui.DefaultAvatarTextDrawable;
 import com.owncloud.android.ui.adapter.DiskLruImageCache;
+import com.owncloud.android.utils.BitmapPool;
 import com.owncloud.android.utils.BitmapUtils;
 import timber.log.Timber;
 
@@ -71,6 +72,12 @@ public class ThumbnailsCacheManager {
     private static final int mCompressQuality = 70;
     private static OwnCloudClient mClient = null;
 
+    private static final int BITMAP_POOL_SIZE = 1024 * 1024 * 8; // 8MB
+    private static final BitmapPool mBitmapPool = new BitmapPool(BITMAP_POOL_SIZE);
+
+    // sizes of the bigger thumbnails, as multiples of the grid size; bigger requests get the largest
+    private static final int[] THUMBNAIL_SIZE_BUCKETS = {2, 4};
+
     public static Bitmap mDefaultImg =
             BitmapFactory.decodeResource(
                     MainApp.Companion.getAppContext().getResources(),
@@ -119,12 +126,196 @@ public class ThumbnailsCacheManager {
         }
     }
 
-    private static void removeBitmapFromCache(String key) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            if (mThumbnailCache != null) {
-                mThumbnailCache.removeKey(key);
+    /**
+     * @return Pool of bitmaps reused while decoding and scaling thumbnails; exposed for its metrics.
+     */
+    public static BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Releases the bitmaps kept for reuse, to be called when the system is running low on memory.
+     */
+    public static void trimBitmapPool() {
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Add thumbnail to cache
+     *
+     * @param imageKey: thumb key
+     * @param bitmap:   image for extracting thumbnail; given back to the bitmap pool if not used
+     *                  as thumbnail
+     * @param path:     image path
+     * @param px:       thumbnail dp
+     * @return Bitmap
+     */
+    private static Bitmap addThumbnailToCache(String imageKey, Bitmap bitmap, String path, int px) {
+
+        // Scale and rotate image, obeying exif tag
+        Bitmap thumbnail = BitmapUtils.createThumbnail(bitmap, path, px, mBitmapPool);
+
+        // Add thumbnail to cache
+        addBitmapToCache(imageKey, thumbnail);
+
+        return thumbnail;
+    }
+
+    /**
+     * Converts size of file icon from dp to pixel
+     *
+     * @return int
+     */
+    private static int getThumbnailDimension() {
+        // Converts dp to pixel
+        Resources r = MainApp.Companion.getAppContext().getResources();
+        return Math.round(r.getDimension(R.dimen.file_icon_size_grid));
+    }
+
+    private static Bitmap handlePNG(Bitmap bitmap, int px) {
+        Bitmap resultBitmap = mBitmapPool.get(px,
+                px,
+                Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(resultBitmap);
+
+        c.drawColor(ContextCompat.getColor(MainApp.Companion.getAppContext(), R.color.background_color));
+        c.drawBitmap(bitmap, 0, 0, null);
+        mBitmapPool.put(bitmap);
+
+        return resultBitmap;
+    }
+
+    /**
+     * Downloads the thumbnail of a file from the preview endpoint of the server.
+     *
+     * @param client Client to access the server of the account owning the file.
+     * @param file   Remote image file.
+     * @param px     Size of the thumbnail, in pixels.
+     * @param signal Signal to abort the request, may be null.
+     * @return Thumbnail of px x px, or null if the server could not provide it.
+     */
+    private static Bitmap downloadThumbnail(OwnCloudClient client, OCFile file, int px, CancellationSignal signal) {
+        Bitmap thumbnail = null;
+        GetMethod get;
+        try {
+            String uri = client.getBaseUri() + "" +
+                    "/index.php/apps/files/api/v1/thumbnail/" +
+                    px + "/" + px + Uri.encode(file.getRemotePath(), "/");
+            Timber.d("URI: %s", uri);
+            get = new GetMethod(new URL(uri));
+            if (signal != null) {
+                signal.setOnCancelListener(get::abort);
+            }
+            int status = client.executeHttpMethod(get);
+            if (status == HttpConstants.HTTP_OK) {
+                InputStream inputStream = get.getResponseBodyAsStream();
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                // mutable, so that it can be reused once scaled
+                options.inMutable = true;
+                Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+                thumbnail = BitmapUtils.extractThumbnail(bitmap, px, px, mBitmapPool);
+                if (thumbnail != bitmap) {
+                    mBitmapPool.put(bitmap);
+                }
+
+                // Handle PNG
+                if (thumbnail != null && file.getMimetype().equalsIgnoreCase("image/png")) {
+                    thumbnail = handlePNG(thumbnail, px);
+                }
+            } else {
+                client.exhaustResponse(get.getResponseBodyAsStream());
+            }
+        } catch (Exception e) {
+            Timber.e(e);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Gets the thumbnail of an image file synchronously, for clients that can not bind an {@link ImageView},
+     * like the documents provider.
+     * <p>
+     * The thumbnail is read from the disk cache; if not there, it is generated from the local copy of the file
+     * or downloaded from the server, and then added to the cache. Thumbnails no bigger than the ones in the
+     * file list share their cache entry with them; bigger ones are rounded up to a few fixed sizes, so that
+     * every file keeps at most one cache entry per size.
+     *
+     * @param file    Image file.
+     * @param account OC account owning the file.
+     * @param px      Minimum size of the thumbnail, in pixels.
+     * @param signal  Signal to cancel the generation, may be null.
+     * @return Thumbnail of at least px x px, up to the largest fixed size, or null if it could not be obtained.
+     * @throws android.os.OperationCanceledException if signal is cancelled.
+     */
+    public static Bitmap getThumbnail(OCFile file, Account account, int px, CancellationSignal signal) {
+        final int gridPx = getThumbnailDimension();
+        final String imageKey;
+        if (px <= gridPx) {
+            px = gridPx;
+            imageKey = String.valueOf(file.getRemoteId());
+        } else {
+            px = getThumbnailSizeBucket(px, gridPx);
+            imageKey = file.getRemoteId() + "_" + px;
+        }
+
+        Bitmap thumbnail = getBitmapFromDiskCache(imageKey);
+        if (thumbnail != null && !file.needsUpdateThumbnail()) {
+            return thumbnail;
+        }
+
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+
+        if (file.isDown()) {
+            Bitmap bitmap = BitmapUtils.decodeSampledBitmapFromFile(file.getStoragePath(), px, px, mBitmapPool);
+            if (bitmap != null) {
+                if (file.getMimetype().equalsIgnoreCase("image/png")) {
+                    Bitmap scaled = BitmapUtils.extractThumbnail(bitmap, px, px, mBitmapPool);
+                    if (scaled != bitmap) {
+                        mBitmapPool.put(bitmap);
+                    }
+                    bitmap = handlePNG(scaled, px);
+                }
+                thumbnail = addThumbnailToCache(imageKey, bitmap, file.getStoragePath(), px);
+            }
+
+        } else if (account != null && AccountUtils.getServerVersion(account) != null) {
+            try {
+                OwnCloudAccount ocAccount = new OwnCloudAccount(account, MainApp.Companion.getAppContext());
+                OwnCloudClient client = SingleSessionManager.getDefaultSingleton().
+                        getClientFor(ocAccount, MainApp.Companion.getAppContext());
+                thumbnail = downloadThumbnail(client, file, px, signal);
+                if (thumbnail != null) {
+                    addBitmapToCache(imageKey, thumbnail);
+                }
+            } catch (Exception e) {
+                Timber.e(e, "Thumbnail of %s could not be downloaded", file.getRemotePath());
+            }
+        }
+
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * @return Smallest fixed thumbnail size that is at least px, or the largest one if none is.
+     */
+    private static int getThumbnailSizeBucket(int px, int gridPx) {
+        int bucketPx = 0;
+        for (int multiple : THUMBNAIL_SIZE_BUCKETS) {
+            bucketPx = gridPx * multiple;
+            if (px <= bucketPx) {
+                break;
             }
         }
+        return bucketPx;
     }
 
     public static Bitmap getBitmapFromDiskCache(String key) {
@@ -193,10 +384,15 @@ public class ThumbnailsCacheManager {
                 // the app should never break due to a problem with thumbnails
                 Timber.e(t, "Generation of thumbnail for " + mFile + " failed");
                 if (t instanceof OutOfMemoryError) {
+                    mBitmapPool.clear();
                     System.gc();
                 }
             }
 
+            if (MainApp.Companion.isDeveloper()) {
+                mBitmapPool.logStats();
+            }
+
             return thumbnail;
         }
 
@@ -218,39 +414,6 @@ public class ThumbnailsCacheManager {
             }
         }
 
-        /**
-         * Add thumbnail to cache
-         *
-         * @param imageKey: thumb key
-         * @param bitmap:   image for extracting thumbnail
-         * @param path:     image path
-         * @param px:       thumbnail dp
-         * @return Bitmap
-         */
-        private Bitmap addThumbnailToCache(String imageKey, Bitmap bitmap, String path, int px) {
-
-            Bitmap thumbnail = ThumbnailUtils.extractThumbnail(bitmap, px, px);
-
-            // Rotate image, obeying exif tag
-            thumbnail = BitmapUtils.rotateImage(thumbnail, path);
-
-            // Add thumbnail to cache
-            addBitmapToCache(imageKey, thumbnail);
-
-            return thumbnail;
-        }
-
-        /**
-         * Converts size of file icon from dp to pixel
-         *
-         * @return int
-         */
-        private int getThumbnailDimension() {
-            // Converts dp to pixel
-            Resources r = MainApp.Companion.getAppContext().getResources();
-            return Math.round(r.getDimension(R.dimen.file_icon_size_grid));
-        }
-
         private Bitmap doOCFileInBackground() {
             OCFile file = (OCFile) mFile;
 
@@ -266,8 +429,11 @@ public class ThumbnailsCacheManager {
 
                 if (file.isDown()) {
                     Bitmap temp = BitmapUtils.decodeSampledBitmapFromFile(
-                            file.getStoragePath(), px, px);
-                    Bitmap bitmap = ThumbnailUtils.extractThumbnail(temp, px, px);
+                            file.getStoragePath(), px, px, mBitmapPool);
+                    Bitmap bitmap = BitmapUtils.extractThumbnail(temp, px, px, mBitmapPool);
+                    if (bitmap != temp) {
+                        mBitmapPool.put(temp);
+                    }
 
                     if (bitmap != null) {
                         // Handle PNG
@@ -285,33 +451,11 @@ public class ThumbnailsCacheManager {
                     // Download thumbnail from server
                     OwnCloudVersion serverOCVersion = AccountUtils.getServerVersion(mAccount);
                     if (mClient != null && serverOCVersion != null) {
-                        GetMethod get;
-                        try {
-                            String uri = mClient.getBaseUri() + "" +
-                                    "/index.php/apps/files/api/v1/thumbnail/" +
-                                    px + "/" + px + Uri.encode(file.getRemotePath(), "/");
-                            Timber.d("URI: %s", uri);
-                            get = new GetMethod(new URL(uri));
-                            int status = mClient.executeHttpMethod(get);
-                            if (status == HttpConstants.HTTP_OK) {
-                                InputStream inputStream = get.getResponseBodyAsStream();
-                                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                                thumbnail = ThumbnailUtils.extractThumbnail(bitmap, px, px);
-
-                                // Handle PNG
-                                if (file.getMimetype().equalsIgnoreCase("image/png")) {
-                                    thumbnail = handlePNG(thumbnail, px);
-                                }
-
-                                // Add thumbnail to cache
-                                if (thumbnail != null) {
-                                    addBitmapToCache(imageKey, thumbnail);
-                                }
-                            } else {
-                                mClient.exhaustResponse(get.getResponseBodyAsStream());
-                            }
-                        } catch (Exception e) {
-                            Timber.e(e);
+                        thumbnail = downloadThumbnail(mClient, file, px, null);
+
+                        // Add thumbnail to cache
+                        if (thumbnail != null) {
+                            addBitmapToCache(imageKey, thumbnail);
                         }
                     }
                 }
@@ -321,18 +465,6 @@ public class ThumbnailsCacheManager {
 
         }
 
-        private Bitmap handlePNG(Bitmap bitmap, int px) {
-            Bitmap resultBitmap = Bitmap.createBitmap(px,
-                    px,
-                    Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(resultBitmap);
-
-            c.drawColor(ContextCompat.getColor(MainApp.Companion.getAppContext(), R.color.background_color));
-            c.drawBitmap(bitmap, 0, 0, null);
-
-            return resultBitmap;
-        }
-
         private Bitmap doFileInBackground() {
             File file = (File) mFile;
 
@@ -347,7 +479,7 @@ public class ThumbnailsCacheManager {
                 int px = getThumbnailDimension();
 
                 Bitmap bitmap = BitmapUtils.decodeSampledBitmapFromFile(
-                        file.getAbsolutePath(), px, px);
+                        file.getAbsolutePath(), px, px, mBitmapPool);
 
                 if (bitmap != null) {
                     thumbnail = addThumbnailToCache(imageKey, bitmap, file.getPath(), px);
@@ -377,7 +509,6 @@ public class ThumbnailsCacheManager {
         private boolean mFetchFromServer;
 
         private String mUsername;
-        private OwnCloudClient mClient;
 
         /**
          * Builds an instance to show the avatar corresponding to the received account in an {@link ImageView}.
@@ -426,11 +557,6 @@ public class ThumbnailsCacheManager {
             Drawable thumbnail = null;
 
             try {
-                OwnCloudAccount ocAccount = new OwnCloudAccount(mAccount,
-                        MainApp.Companion.getAppContext());
-                mClient = SingleSessionManager.getDefaultSingleton().
-                        getClientFor(ocAccount, MainApp.Companion.getAppContext());
-
                 mUsername = mAccount.name;
                 thumbnail = doAvatarInBackground();
 
@@ -489,64 +615,31 @@ public class ThumbnailsCacheManager {
 
             Drawable avatarDrawable = null;
 
-            final String imageKey = "a_" + mUsername;
+            final String userId = AccountUtils.getUsernameOfAccount(mUsername);
+            final AvatarCache avatarCache = AvatarCache.getInstance();
 
-            // Check disk cache in background thread
-            Bitmap avatarBitmap = getBitmapFromDiskCache(imageKey);
+            // Memory and disk cache are checked first; server is only accessed if the cached copy expired
+            AvatarCache.CachedAvatar avatar;
+            if (mFetchFromServer && AccountUtils.getServerVersion(mAccount) != null) {
+                avatar = avatarCache.getAvatar(mAccount, userId, getAvatarDimension());
+            } else {
+                avatar = avatarCache.getCachedAvatar(mAccount, userId);
+            }
 
-            if (avatarBitmap != null) {
+            if (avatar != null) {
                 avatarDrawable = BitmapUtils.bitmapToCircularBitmapDrawable(
                         MainApp.Companion.getAppContext().getResources(),
-                        avatarBitmap
+                        avatar.getBitmap()
                 );
 
             } else {
-                // Not found in disk cache
-                if (mFetchFromServer) {
-                    int px = getAvatarDimension();
-
-                    // Download avatar from server
-                    OwnCloudVersion serverOCVersion = AccountUtils.getServerVersion(mAccount);
-                    if (mClient != null && serverOCVersion != null) {
-                        GetMethod get;
-                        try {
-                            String uri = mClient.getBaseUri() + "" +
-                                    "/index.php/avatar/" + AccountUtils.getUsernameOfAccount(mUsername) + "/" + px;
-                            Timber.d("URI: %s", uri);
-                            get = new GetMethod(new URL(uri));
-                            int status = mClient.executeHttpMethod(get);
-                            if (status == HttpConstants.HTTP_OK) {
-                                InputStream inputStream = get.getResponseBodyAsStream();
-                                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                                avatarBitmap = ThumbnailUtils.extractThumbnail(bitmap, px, px);
-
-                                // Add avatar to cache
-                                if (avatarBitmap != null) {
-                                    addBitmapToCache(imageKey, avatarBitmap);
-                                }
-                            } else {
-                                mClient.exhaustResponse(get.getResponseBodyAsStream());
-                            }
-                        } catch (Exception e) {
-                            Timber.e(e, "Error downloading avatar");
-                        }
-                    }
-                }
-                if (avatarBitmap != null) {
-                    avatarDrawable = BitmapUtils.bitmapToCircularBitmapDrawable(
-                            MainApp.Companion.getAppContext().getResources(),
-                            avatarBitmap
-                    );
-
-                } else {
-                    // generate placeholder from user name
-                    try {
-                        avatarDrawable = DefaultAvatarTextDrawable.createAvatar(mUsername, mDisplayRadius);
+                // generate placeholder from user name
+                try {
+                    avatarDrawable = DefaultAvatarTextDrawable.createAvatar(mUsername, mDisplayRadius);
 
-                    } catch (Exception e) {
-                        // nothing to do, return null to apply default icon
-                        Timber.e(e, "Error calculating RGB value for active account icon.");
-                    }
+                } catch (Exception e) {
+                    // nothing to do, return null to apply default icon
+                    Timber.e(e, "Error calculating RGB value for active account icon.");
                 }
             }
             return avatarDrawable;
@@ -554,23 +647,6 @@ public class ThumbnailsCacheManager {
 
     }
 
-    public static String addAvatarToCache(String accountName, byte[] avatarData, int dimension) {
-        final String imageKey = "a_" + accountName;
-
-        Bitmap bitmap = BitmapFactory.decodeByteArray(avatarData, 0, avatarData.length);
-        bitmap = ThumbnailUtils.extractThumbnail(bitmap, dimension, dimension);
-        // Add avatar to cache
-        if (bitmap != null) {
-            addBitmapToCache(imageKey, bitmap);
-        }
-        return imageKey;
-    }
-
-    public static void removeAvatarFromCache(String accountName) {
-        final String imageKey = "a_" + accountName;
-        removeBitmapFromCache(imageKey);
-    }
-
     public static boolean cancelPotentialThumbnailWork(Object file, ImageView imageView) {
         final ThumbnailGenerationTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
 
@@ -21,11 +21,16 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
 import com.owncloud.android.db.UploadResult;
 import com.owncloud.android.files.services.FileUploader;
@@ -33,7 +38,9 @@ import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.operations.UploadFileOperation;
 import timber.log.Timber;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Observable;
 
 /**
@@ -101,6 +108,54 @@ public class UploadsStorageManager extends Observable {
     public long storeUpload(OCUpload ocUpload) {
         Timber.v("Inserting " + ocUpload.getLocalPath() + " with status=" + ocUpload.getUploadStatus());
 
+        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, getNewUploadValues(ocUpload));
+
+        Timber.d("storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
+        if (result == null) {
+            Timber.e("Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
+            return -1;
+        } else {
+            long new_id = Long.parseLong(result.getPathSegments().get(1));
+            ocUpload.setUploadId(new_id);
+            notifyObserversNow(new_id);
+            return new_id;
+        }
+    }
+
+    /**
+     * Stores several upload objects in DB, in a single transaction.
+     *
+     * @param ocUploads Upload objects to store; their ids are set if the insert process succeeds.
+     * @return 'True' if all the uploads were stored, 'false' if none was.
+     */
+    public boolean storeUploads(List<OCUpload> ocUploads) {
+        Timber.v("Inserting %d uploads", ocUploads.size());
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ocUploads.size());
+        for (OCUpload ocUpload : ocUploads) {
+            operations.add(ContentProviderOperation
+                    .newInsert(ProviderTableMeta.CONTENT_URI_UPLOADS)
+                    .withValues(getNewUploadValues(ocUpload))
+                    .build()
+            );
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = getDB().applyBatch(MainApp.Companion.getAuthority(), operations);
+        } catch (OperationApplicationException | RemoteException e) {
+            Timber.e(e, "Failed to insert %d uploads into upload db.", ocUploads.size());
+            return false;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            ocUploads.get(i).setUploadId(Long.parseLong(results[i].uri.getPathSegments().get(1)));
+        }
+        notifyObserversNow();
+        return true;
+    }
+
+    private ContentValues getNewUploadValues(OCUpload ocUpload) {
         ContentValues cv = new ContentValues();
         cv.put(ProviderTableMeta.UPLOADS_LOCAL_PATH, ocUpload.getLocalPath());
         cv.put(ProviderTableMeta.UPLOADS_REMOTE_PATH, ocUpload.getRemotePath());
@@ -113,19 +168,7 @@ public class UploadsStorageManager extends Observable {
         cv.put(ProviderTableMeta.UPLOADS_LAST_RESULT, ocUpload.getLastResult().getValue());
         cv.put(ProviderTableMeta.UPLOADS_CREATED_BY, ocUpload.getCreatedBy());
         cv.put(ProviderTableMeta.UPLOADS_TRANSFER_ID, ocUpload.getTransferId());
-
-        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, cv);
-
-        Timber.d("storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
-        if (result == null) {
-            Timber.e("Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
-            return -1;
-        } else {
-            long new_id = Long.parseLong(result.getPathSegments().get(1));
-            ocUpload.setUploadId(new_id);
-            notifyObserversNow();
-            return new_id;
-        }
+        return cv;
     }
 
     /**
@@ -145,6 +188,8 @@ public class UploadsStorageManager extends Observable {
         cv.put(ProviderTableMeta.UPLOADS_LAST_RESULT, ocUpload.getLastResult().getValue());
         cv.put(ProviderTableMeta.UPLOADS_UPLOAD_END_TIMESTAMP, ocUpload.getUploadEndTimestamp());
         cv.put(ProviderTableMeta.UPLOADS_TRANSFER_ID, ocUpload.getTransferId());
+        cv.put(ProviderTableMeta.UPLOADS_BYTES_SAVED, ocUpload.getBytesSaved());
+        cv.put(ProviderTableMeta.UPLOADS_CHECKSUM, ocUpload.getChecksum());
 
         int result = getDB().update(ProviderTableMeta.CONTENT_URI_UPLOADS,
                 cv,
@@ -156,14 +201,14 @@ public class UploadsStorageManager extends Observable {
         if (result != 1) {
             Timber.e("Failed to update item " + ocUpload.getLocalPath() + " into upload db.");
         } else {
-            notifyObserversNow();
+            notifyObserversNow(ocUpload.getUploadId());
         }
 
         return result;
     }
 
     private int updateUploadInternal(Cursor c, UploadStatus status, UploadResult result, String remotePath,
-                                     String localPath) {
+                                     String localPath, long bytesSaved, String checksum) {
         int r = 0;
         while (c.moveToNext()) {
             // read upload object and update
@@ -180,6 +225,8 @@ public class UploadsStorageManager extends Observable {
                 upload.setLocalPath(localPath);
             }
             upload.setUploadEndTimestamp(Calendar.getInstance().getTimeInMillis());
+            upload.setBytesSaved(bytesSaved);
+            upload.setChecksum(checksum);
 
             // store update upload object to db
             r = updateUpload(upload);
@@ -200,6 +247,23 @@ public class UploadsStorageManager extends Observable {
      */
     public int updateUploadStatus(long id, UploadStatus status, UploadResult result, String remotePath,
                                   String localPath) {
+        return updateUploadStatus(id, status, result, remotePath, localPath, 0, null);
+    }
+
+    /**
+     * Update upload status of file uniquely referenced by id.
+     *
+     * @param id         upload id.
+     * @param status     new status.
+     * @param result     new result of upload operation
+     * @param remotePath path of the file to upload in the ownCloud storage
+     * @param localPath  path of the file to upload in the device storage
+     * @param bytesSaved bytes not uploaded thanks to downscaling the file
+     * @param checksum   checksum of the contents uploaded, null if not known
+     * @return 1 if file status was updated, else 0.
+     */
+    public int updateUploadStatus(long id, UploadStatus status, UploadResult result, String remotePath,
+                                  String localPath, long bytesSaved, String checksum) {
         int returnValue = 0;
         Cursor c = getDB().query(
                 ProviderTableMeta.CONTENT_URI_UPLOADS,
@@ -213,7 +277,7 @@ public class UploadsStorageManager extends Observable {
             Timber.e(c.getCount() + " items for id=" + id
                     + " available in UploadDb. Expected 1. Failed to update upload db.");
         } else {
-            returnValue = updateUploadInternal(c, status, result, remotePath, localPath);
+            returnValue = updateUploadInternal(c, status, result, remotePath, localPath, bytesSaved, checksum);
         }
         c.close();
         return returnValue;
@@ -222,6 +286,8 @@ public class UploadsStorageManager extends Observable {
     /**
      * Should be called when some value of this DB was changed. All observers
      * are informed.
+     *
+     * Observers receive a null argument, meaning that any upload could have changed.
      */
     public void notifyObserversNow() {
         Timber.d("notifyObserversNow");
@@ -229,6 +295,20 @@ public class UploadsStorageManager extends Observable {
         notifyObservers();
     }
 
+    /**
+     * Should be called when a single upload was stored, updated or removed. All observers
+     * are informed.
+     *
+     * Observers receive the id of the upload as argument, so that they can update only that upload.
+     *
+     * @param uploadId Id of the upload changed.
+     */
+    public void notifyObserversNow(long uploadId) {
+        Timber.d("notifyObserversNow for upload %d", uploadId);
+        setChanged();
+        notifyObservers(uploadId);
+    }
+
     /**
      * Remove an upload from the uploads list, known its target account and remote path.
      *
@@ -243,7 +323,7 @@ public class UploadsStorageManager extends Observable {
         );
         Timber.d("delete returns " + result + " for upload " + upload);
         if (result > 0) {
-            notifyObserversNow();
+            notifyObserversNow(upload.getUploadId());
         }
         return result;
     }
@@ -287,6 +367,19 @@ public class UploadsStorageManager extends Observable {
         return result;
     }
 
+    /**
+     * @param uploadId Id of the upload to get.
+     * @return Upload with the given id, or null if it is not stored.
+     */
+    public OCUpload getUpload(long uploadId) {
+        OCUpload[] uploads = getUploads(
+                ProviderTableMeta._ID + "== ?",
+                new String[]{String.valueOf(uploadId)},
+                null
+        );
+        return (uploads.length > 0 ? uploads[0] : null);
+    }
+
     public OCUpload[] getAllStoredUploads() {
         return getUploads(null, null, null);
     }
@@ -351,6 +444,8 @@ public class UploadsStorageManager extends Observable {
                     c.getInt(c.getColumnIndex(ProviderTableMeta.UPLOADS_LAST_RESULT))));
             upload.setCreatedBy(c.getInt(c.getColumnIndex(ProviderTableMeta.UPLOADS_CREATED_BY)));
             upload.setTransferId(c.getString(c.getColumnIndex(ProviderTableMeta.UPLOADS_TRANSFER_ID)));
+            upload.setBytesSaved(c.getLong(c.getColumnIndex(ProviderTableMeta.UPLOADS_BYTES_SAVED)));
+            upload.setChecksum(c.getString(c.getColumnIndex(ProviderTableMeta.UPLOADS_CHECKSUM)));
         }
         return upload;
     }
@@ -397,6 +492,41 @@ public class UploadsStorageManager extends Observable {
         );
     }
 
+    /**
+     * Get a page of the uploads which where successfully completed, the most recent first.
+     *
+     * @param offset Number of uploads to skip.
+     * @param limit  Maximum number of uploads to get.
+     */
+    public OCUpload[] getFinishedUploads(int offset, int limit) {
+        return getUploads(
+                ProviderTableMeta.UPLOADS_STATUS + "== ?",
+                new String[]{
+                        String.valueOf(UploadStatus.UPLOAD_SUCCEEDED.value)
+                },
+                ProviderTableMeta.UPLOADS_UPLOAD_END_TIMESTAMP + " desc, " + ProviderTableMeta._ID + " desc" +
+                        " limit " + limit + " offset " + offset
+        );
+    }
+
+    /**
+     * @return Number of uploads which where successfully completed.
+     */
+    public int getFinishedUploadsCount() {
+        Cursor c = getDB().query(
+                ProviderTableMeta.CONTENT_URI_UPLOADS,
+                new String[]{ProviderTableMeta._ID},
+                ProviderTableMeta.UPLOADS_STATUS + "== ?",
+                new String[]{
+                        String.valueOf(UploadStatus.UPLOAD_SUCCEEDED.value)
+                },
+                null
+        );
+        int count = c.getCount();
+        c.close();
+        return count;
+    }
+
     /**
      * Get all failed uploads, except for those that were not performed due to lack of Wifi connection
      *
@@ -486,7 +616,9 @@ public class UploadsStorageManager extends Observable {
                         UploadStatus.UPLOAD_SUCCEEDED,
                         UploadResult.UPLOADED,
                         uploadFileOperation.getRemotePath(),
-                        localPath
+                        localPath,
+                        uploadFileOperation.getBytesSaved(),
+                        uploadFileOperation.getChecksum()
                 );
             } else {
                 updateUploadStatus(
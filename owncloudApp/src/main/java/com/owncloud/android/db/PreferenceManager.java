@@ -35,6 +35,9 @@ import com.owncloud.android.ui.activity.BiometricActivity;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Helper to simplify reading of Preferences all around the app
@@ -49,11 +52,14 @@ public abstract class PreferenceManager {
     private static final String AUTO_PREF__SORT_ASCENDING_FILE_DISP = "sortAscendingFileDisp";
     private static final String AUTO_PREF__SORT_ORDER_UPLOAD = "sortOrderUpload";
     private static final String AUTO_PREF__SORT_ASCENDING_UPLOAD = "sortAscendingUpload";
+    private static final String AUTO_PREF__CAMERA_UPLOADS_RECENTLY_ENQUEUED = "cameraUploadsRecentlyEnqueued";
 
     private static final String PREF__CAMERA_PICTURE_UPLOADS_ENABLED = "camera_picture_uploads";
     private static final String PREF__CAMERA_VIDEO_UPLOADS_ENABLED = "camera_video_uploads";
     private static final String PREF__CAMERA_PICTURE_UPLOADS_WIFI_ONLY = "camera_picture_uploads_on_wifi";
     private static final String PREF__CAMERA_VIDEO_UPLOADS_WIFI_ONLY = "camera_video_uploads_on_wifi";
+    private static final String PREF__CAMERA_PICTURE_UPLOADS_MAX_SIZE = "camera_picture_uploads_max_size";
+    private static final String PREF__CAMERA_PICTURE_UPLOADS_QUALITY = "camera_picture_uploads_quality";
     private static final String PREF__CAMERA_UPLOADS_ACCOUNT_NAME = "camera_uploads_account_name";  // NEW - not
     // saved yet
     private static final String PREF__CAMERA_PICTURE_UPLOADS_PATH = "camera_picture_uploads_path";
@@ -94,6 +100,36 @@ public abstract class PreferenceManager {
         return getDefaultSharedPreferences(context).getBoolean(PREF__CAMERA_VIDEO_UPLOADS_WIFI_ONLY, false);
     }
 
+    /**
+     * @return Maximum width and height in pixels of the pictures uploaded by camera uploads, or 0 to upload them
+     * with their original size.
+     */
+    public static int cameraPictureUploadMaxSize(Context context) {
+        return getIntFromStringPreference(context, PREF__CAMERA_PICTURE_UPLOADS_MAX_SIZE, 0);
+    }
+
+    /**
+     * @return JPEG quality, from 0 to 100, of the pictures downscaled by camera uploads.
+     */
+    public static int cameraPictureUploadQuality(Context context) {
+        return getIntFromStringPreference(context, PREF__CAMERA_PICTURE_UPLOADS_QUALITY, 90);
+    }
+
+    /**
+     * List preferences are saved as strings
+     */
+    private static int getIntFromStringPreference(Context context, String key, int defaultValue) {
+        String value = getDefaultSharedPreferences(context).getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public static CameraUploadsConfiguration getCameraUploadsConfiguration(Context context) {
         CameraUploadsConfiguration result = new CameraUploadsConfiguration();
         SharedPreferences prefs = getDefaultSharedPreferences(context);
@@ -166,6 +202,31 @@ public abstract class PreferenceManager {
         saveStringPreference(AUTO_PREF__LAST_UPLOAD_PATH, path, context);
     }
 
+    /**
+     * Gets the camera uploads enqueued lately, that may be found again while the last sync timestamps are kept
+     * behind the media indexing.
+     *
+     * @param context Caller {@link Context}, used to access to shared preferences manager.
+     * @return Entries as previously stored by {@link #setCameraUploadsRecentlyEnqueued(Set, Context)}, empty
+     * if never saved before.
+     */
+    public static Set<String> getCameraUploadsRecentlyEnqueued(Context context) {
+        return new HashSet<>(getDefaultSharedPreferences(context)
+                .getStringSet(AUTO_PREF__CAMERA_UPLOADS_RECENTLY_ENQUEUED, Collections.<String>emptySet()));
+    }
+
+    /**
+     * Saves the camera uploads enqueued lately.
+     *
+     * @param entries Entries identifying the files enqueued.
+     * @param context Caller {@link Context}, used to access to shared preferences manager.
+     */
+    public static void setCameraUploadsRecentlyEnqueued(Set<String> entries, Context context) {
+        SharedPreferences.Editor appPreferences = getDefaultSharedPreferences(context.getApplicationContext()).edit();
+        appPreferences.putStringSet(AUTO_PREF__CAMERA_UPLOADS_RECENTLY_ENQUEUED, entries);
+        appPreferences.apply();
+    }
+
     /**
      * Gets the sort order which the user has set last.
      *
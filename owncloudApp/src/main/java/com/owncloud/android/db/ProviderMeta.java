@@ -35,7 +35,7 @@ public class ProviderMeta {
 
     public static final String DB_NAME = "filelist";
     public static final String NEW_DB_NAME = "owncloud_database";
-    public static final int DB_VERSION = 28;
+    public static final int DB_VERSION = 29;
 
     private ProviderMeta() {
     }
@@ -175,6 +175,8 @@ public class ProviderMeta {
         public static final String UPLOADS_LAST_RESULT = "last_result";
         public static final String UPLOADS_CREATED_BY = "created_by";
         public static final String UPLOADS_TRANSFER_ID = "transfer_id";
+        public static final String UPLOADS_BYTES_SAVED = "bytes_saved";
+        public static final String UPLOADS_CHECKSUM = "checksum";
 
         public static final String UPLOADS_DEFAULT_SORT_ORDER =
                 ProviderTableMeta._ID + " collate nocase desc";
@@ -23,7 +23,9 @@ import android.app.job.JobInfo;
 import android.app.job.JobScheduler;
 import android.content.ComponentName;
 import android.content.Context;
+import android.os.Build;
 import android.os.PersistableBundle;
+import android.provider.MediaStore;
 
 import com.owncloud.android.datamodel.CameraUploadsSyncStorageManager;
 import com.owncloud.android.datamodel.OCCameraUploadSync;
@@ -43,6 +45,12 @@ public class CameraUploadsHandler {
     // configuration
     private static final int JOB_ID_CAMERA_UPLOAD = 1;
 
+    // Job run when pictures or videos are added to the MediaStore, so that they are uploaded without waiting for
+    // the periodic job. It is not persisted; the periodic job schedules it again after a reboot
+    private static final int JOB_ID_CAMERA_UPLOAD_CONTENT = 3;
+    private static final long MILLISECONDS_CAMERA_UPLOAD_CONTENT_UPDATE_DELAY = 5000;
+    private static final long MILLISECONDS_CAMERA_UPLOAD_CONTENT_MAX_DELAY = 30000;
+
     private CameraUploadsConfiguration mCameraUploadsConfig; // Camera uploads configuration, set by the user
 
     public CameraUploadsHandler(CameraUploadsConfiguration cameraUploadsConfiguration) {
@@ -107,6 +115,51 @@ public class CameraUploadsHandler {
         JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
 
         jobScheduler.schedule(builder.build());
+
+        scheduleCameraUploadsContentJob(context, extras);
+    }
+
+    /**
+     * Schedule a job to check pictures and videos to be uploaded as soon as new ones are added to the MediaStore.
+     * Several pictures taken in a row are checked together.
+     *
+     * Does nothing before Android 7, where the periodic job is the only one checking them.
+     *
+     * @param extras Same extras as the periodic job
+     */
+    static void scheduleCameraUploadsContentJob(Context context, PersistableBundle extras) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+
+        ComponentName serviceComponent = new ComponentName(context, CameraUploadsSyncJobService.class);
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID_CAMERA_UPLOAD_CONTENT, serviceComponent);
+
+        builder.addTriggerContentUri(new JobInfo.TriggerContentUri(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS
+        ));
+        builder.addTriggerContentUri(new JobInfo.TriggerContentUri(
+                MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS
+        ));
+        builder.setTriggerContentUpdateDelay(MILLISECONDS_CAMERA_UPLOAD_CONTENT_UPDATE_DELAY);
+        builder.setTriggerContentMaxDelay(MILLISECONDS_CAMERA_UPLOAD_CONTENT_MAX_DELAY);
+
+        builder.setExtras(extras);
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        jobScheduler.schedule(builder.build());
+    }
+
+    /**
+     * Cancel the job waiting for new pictures and videos
+     */
+    static void cancelCameraUploadsContentJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        jobScheduler.cancel(JOB_ID_CAMERA_UPLOAD_CONTENT);
     }
 
     /**
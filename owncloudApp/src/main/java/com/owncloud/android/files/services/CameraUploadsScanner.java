@@ -0,0 +1,162 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import timber.log.Timber;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the pictures and videos saved in the camera folder after a given moment, to be uploaded by
+ * {@link CameraUploadsSyncJobService}.
+ *
+ * The files are looked up in the MediaStore, that indexes by modification date the pictures and videos taken
+ * with the camera, so that only the new ones are checked in the file system. Folders not indexed by the
+ * MediaStore are listed instead.
+ */
+public class CameraUploadsScanner {
+
+    private static final Uri MEDIA_STORE_FILES_URI = MediaStore.Files.getContentUri("external");
+    private static final String NO_MEDIA_FILE = ".nomedia";
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    private final ContentResolver mContentResolver;
+
+    public CameraUploadsScanner(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * A file found, with its modification timestamp as read when found.
+     */
+    public static class NewFile {
+        private final File mFile;
+        private final long mLastModified;
+
+        NewFile(File file, long lastModified) {
+            mFile = file;
+            mLastModified = lastModified;
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+
+        public long getLastModified() {
+            return mLastModified;
+        }
+    }
+
+    /**
+     * @param folderPath     Absolute path of the folder to check; subfolders are not checked.
+     * @param sinceTimestamp Files modified at this moment or before are ignored, in milliseconds.
+     * @return Files in the folder modified after the given moment, oldest first.
+     */
+    public List<NewFile> findNewFiles(String folderPath, long sinceTimestamp) {
+        File folder = new File(folderPath);
+        List<NewFile> newFiles = null;
+        if (!new File(folder, NO_MEDIA_FILE).exists()) {
+            newFiles = findNewFilesInMediaStore(folder, sinceTimestamp);
+        }
+        if (newFiles == null) {
+            newFiles = findNewFilesInFolder(folder, sinceTimestamp);
+        }
+        Collections.sort(newFiles, (file1, file2) -> Long.compare(file1.mLastModified, file2.mLastModified));
+        return newFiles;
+    }
+
+    /**
+     * @return New files in the folder according to the MediaStore, or null if the MediaStore can not be queried.
+     */
+    private List<NewFile> findNewFilesInMediaStore(File folder, long sinceTimestamp) {
+        String[] projection = {MediaStore.MediaColumns.DATA};
+        String selection = MediaStore.Files.FileColumns.MEDIA_TYPE + " IN (?, ?) AND " +
+                MediaStore.MediaColumns.DATA + " LIKE ? AND " +
+                MediaStore.MediaColumns.DATE_MODIFIED + " >= ?";
+        String[] selectionArgs = {
+                String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE),
+                String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO),
+                folder.getAbsolutePath() + File.separator + "%",
+                // dates in the MediaStore are in seconds, truncated
+                String.valueOf(sinceTimestamp / MILLIS_PER_SECOND)
+        };
+
+        Cursor cursor;
+        try {
+            cursor = mContentResolver.query(MEDIA_STORE_FILES_URI, projection, selection, selectionArgs, null);
+        } catch (RuntimeException e) {
+            Timber.w(e, "MediaStore can not be queried, listing %s", folder);
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+
+        List<NewFile> newFiles = new ArrayList<>();
+        try {
+            int dataIndex = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
+            while (cursor.moveToNext()) {
+                String path = cursor.getString(dataIndex);
+                if (path == null) {
+                    continue;
+                }
+                File file = new File(path);
+                // LIKE matches subfolders too, and '_' in the path matches any character
+                if (!folder.equals(file.getParentFile())) {
+                    continue;
+                }
+                addIfNew(newFiles, file, sinceTimestamp);
+            }
+        } finally {
+            cursor.close();
+        }
+        Timber.d("%d new files found in the MediaStore for %s", newFiles.size(), folder);
+        return newFiles;
+    }
+
+    /**
+     * Lists the folder, reading the modification date of every file once.
+     */
+    private List<NewFile> findNewFilesInFolder(File folder, long sinceTimestamp) {
+        List<NewFile> newFiles = new ArrayList<>();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                addIfNew(newFiles, file, sinceTimestamp);
+            }
+        }
+        Timber.d("%d new files found listing %s", newFiles.size(), folder);
+        return newFiles;
+    }
+
+    private static void addIfNew(List<NewFile> newFiles, File file, long sinceTimestamp) {
+        long lastModified = file.lastModified(); // 0 if the file does not exist anymore
+        if (lastModified > sinceTimestamp && file.isFile()) {
+            newFiles.add(new NewFile(file, lastModified));
+        }
+    }
+}
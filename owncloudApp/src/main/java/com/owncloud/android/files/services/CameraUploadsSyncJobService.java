@@ -39,12 +39,28 @@ import timber.log.Timber;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 public class CameraUploadsSyncJobService extends JobService {
 
+    // Files requested per intent to FileUploader, to keep the intents far from the size limit of transactions
+    private static final int MAX_FILES_PER_UPLOAD_REQUEST = 500;
+
+    // Time the media scanner may take to index a new file; last sync timestamps are kept behind it, so that
+    // files indexed late are still found
+    private static final long MEDIA_INDEXING_LAG_MILLIS = 5 * 60 * 1000;
+
+    // The periodic job and the job triggered by new content may run at the same time, they must not enqueue
+    // the same files twice
+    private static final Object SYNC_LOCK = new Object();
+
+    private static final String RECENTLY_ENQUEUED_SEPARATOR = ":";
+
     @Override
     public boolean onStartJob(JobParameters jobParameters) {
 
@@ -67,6 +83,13 @@ public class CameraUploadsSyncJobService extends JobService {
         private String mCameraUploadsSourcePath;
         private int mCameraUploadsBehaviorAfterUpload;
 
+        // Files enqueued in previous runs that are still newer than the timestamps
+        private Set<String> mRecentlyEnqueued;
+
+        // New pictures and videos found in this run, requested together once all of them are found
+        private final UploadsBatch mPicturesBatch = new UploadsBatch();
+        private final UploadsBatch mVideosBatch = new UploadsBatch();
+
         public CameraUploadsSyncJobTask(JobService mCameraUploadsSyncJobService) {
             this.mCameraUploadsSyncJobService = mCameraUploadsSyncJobService;
         }
@@ -80,6 +103,7 @@ public class CameraUploadsSyncJobService extends JobService {
             if (!cameraUploadsConfiguration.isEnabledForPictures() &&
                     !cameraUploadsConfiguration.isEnabledForVideos()) {
                 cancelPeriodicJob(jobParams[0].getJobId());
+                CameraUploadsHandler.cancelCameraUploadsContentJob(mCameraUploadsSyncJobService);
 
                 return jobParams[0];
             }
@@ -97,6 +121,10 @@ public class CameraUploadsSyncJobService extends JobService {
 
             syncFiles();
 
+            // jobs triggered by new content run once, wait for the next content after each run
+            CameraUploadsHandler.scheduleCameraUploadsContentJob(mCameraUploadsSyncJobService,
+                    jobParams[0].getExtras());
+
             return jobParams[0];
         }
 
@@ -106,44 +134,71 @@ public class CameraUploadsSyncJobService extends JobService {
         }
 
         /**
-         * Get local images and videos and start handling them
+         * Get local images and videos saved since the last sync and start handling them
          */
         private void syncFiles() {
 
-            //Get local images and videos
-            String localCameraPath = mCameraUploadsSourcePath;
+            if (mCameraUploadsSourcePath == null) {
+                return;
+            }
 
-            File[] localFiles = new File[0];
+            synchronized (SYNC_LOCK) {
+                long indexedBefore = System.currentTimeMillis() - MEDIA_INDEXING_LAG_MILLIS;
 
-            if (localCameraPath != null) {
-                File cameraFolder = new File(localCameraPath);
-                localFiles = cameraFolder.listFiles();
-            }
+                // Timestamps are read once, and kept up to date in memory while the new files are handled
+                mOCCameraUploadSync = mCameraUploadsSyncStorageManager.getCameraUploadSync(null, null,
+                        null);
+
+                if (mOCCameraUploadSync == null) {
+                    Timber.d("There's no timestamp to compare with in database yet, not continue");
+                    return;
+                }
+
+                mRecentlyEnqueued = PreferenceManager.getCameraUploadsRecentlyEnqueued(mCameraUploadsSyncJobService);
+
+                List<CameraUploadsScanner.NewFile> newFiles = new CameraUploadsScanner(
+                        mCameraUploadsSyncJobService.getContentResolver()
+                ).findNewFiles(mCameraUploadsSourcePath, getOldestLastSync());
+
+                for (CameraUploadsScanner.NewFile newFile : newFiles) {
+                    handleFile(newFile.getFile(), newFile.getLastModified());
+                }
 
-            if (localFiles != null) {
-                localFiles = orderFilesByCreationTimestamp(localFiles);
+                requestUploads(mPicturesBatch, UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE);
+                requestUploads(mVideosBatch, UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_VIDEO);
 
-                for (File localFile : localFiles) {
-                    handleFile(localFile);
+                // Update timestamps once all the new pictures/videos have been enqueued
+                if (!mPicturesBatch.isEmpty() || !mVideosBatch.isEmpty()) {
+                    updateTimestamps(mPicturesBatch.mLastTimestamp, mVideosBatch.mLastTimestamp, indexedBefore);
+                    updateRecentlyEnqueued();
                 }
             }
 
             Timber.d("All files synced, finishing job");
         }
 
-        private File[] orderFilesByCreationTimestamp(File[] localFiles) {
-            Arrays.sort(localFiles, (file1, file2) -> Long.compare(file1.lastModified(), file2.lastModified()));
-
-            return localFiles;
+        /**
+         * @return Oldest of the timestamps of the enabled types of files, files saved before are not checked.
+         */
+        private long getOldestLastSync() {
+            long oldestLastSync = Long.MAX_VALUE;
+            if (mCameraUploadsPicturesPath != null) {
+                oldestLastSync = Math.min(oldestLastSync, mOCCameraUploadSync.getPicturesLastSync());
+            }
+            if (mCameraUploadsVideosPath != null) {
+                oldestLastSync = Math.min(oldestLastSync, mOCCameraUploadSync.getVideosLastSync());
+            }
+            return oldestLastSync;
         }
 
         /**
-         * Request the upload of a file just created if matches the criteria of the current
+         * Add a file just created to the uploads to request if matches the criteria of the current
          * configuration for camera uploads.
          *
-         * @param localFile image or video to upload to the server
+         * @param localFile    image or video to upload to the server
+         * @param lastModified modification timestamp of the file, as read when found
          */
-        private synchronized void handleFile(File localFile) {
+        private synchronized void handleFile(File localFile, long lastModified) {
 
             String fileName = localFile.getName();
 
@@ -168,78 +223,90 @@ public class CameraUploadsSyncJobService extends JobService {
 
             String remotePath = (isImage ? mCameraUploadsPicturesPath : mCameraUploadsVideosPath) + fileName;
 
-            int createdBy = isImage ? UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE :
-                    UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_VIDEO;
-
             String localPath = mCameraUploadsSourcePath + File.separator + fileName;
 
-            mOCCameraUploadSync = mCameraUploadsSyncStorageManager.getCameraUploadSync(null, null,
-                    null);
-
-            if (mOCCameraUploadSync == null) {
-                Timber.d("There's no timestamp to compare with in database yet, not continue");
-                return;
-            }
-
             SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss", Locale.getDefault());
-            if (isImage && localFile.lastModified() <= mOCCameraUploadSync.getPicturesLastSync()) {
+            if (isImage && lastModified <= mOCCameraUploadSync.getPicturesLastSync()) {
                 Timber.i("Image " + localPath + " created before period to check, ignoring " +
-                        simpleDateFormat.format(new Date(localFile.lastModified())) + " <= " +
+                        simpleDateFormat.format(new Date(lastModified)) + " <= " +
                         simpleDateFormat.format(new Date(mOCCameraUploadSync.getPicturesLastSync()))
                 );
                 return;
             }
 
-            if (isVideo && localFile.lastModified() <= mOCCameraUploadSync.getVideosLastSync()) {
+            if (isVideo && lastModified <= mOCCameraUploadSync.getVideosLastSync()) {
                 Timber.i("Video " + localPath + " created before period to check, ignoring " +
-                        simpleDateFormat.format(new Date(localFile.lastModified())) + " <= " +
+                        simpleDateFormat.format(new Date(lastModified)) + " <= " +
                         simpleDateFormat.format(new Date(mOCCameraUploadSync.getVideosLastSync()))
                 );
                 return;
             }
 
+            if (mRecentlyEnqueued.contains(getRecentlyEnqueuedEntry(localPath, lastModified))) {
+                Timber.d("%s was already enqueued, ignoring", localPath);
+                return;
+            }
+
+            (isImage ? mPicturesBatch : mVideosBatch).add(localPath, remotePath, mimeType, lastModified);
+        }
+
+        /**
+         * Request the uploads of a batch of files, with as few requests to {@link FileUploader} as possible
+         *
+         * @param createdBy type of the files in the batch
+         */
+        private void requestUploads(UploadsBatch batch, int createdBy) {
             TransferRequester requester = new TransferRequester();
-            requester.uploadNewFile(
-                    mCameraUploadsSyncJobService,
-                    mAccount,
-                    localPath,
-                    remotePath,
-                    mCameraUploadsBehaviorAfterUpload,
-                    mimeType,
-                    true,           // create parent folder if not existent
-                    createdBy
-            );
-
-            // Update timestamps once the first picture/video has been enqueued
-            updateTimestamps(isImage, isVideo, localFile.lastModified());
-
-            Timber.i("Requested upload of %1s to %2s in %3s", localPath, remotePath, mAccount.name);
+            int size = batch.mLocalPaths.size();
+            for (int start = 0; start < size; start += MAX_FILES_PER_UPLOAD_REQUEST) {
+                int end = Math.min(start + MAX_FILES_PER_UPLOAD_REQUEST, size);
+                requester.uploadNewFiles(
+                        mCameraUploadsSyncJobService,
+                        mAccount,
+                        batch.mLocalPaths.subList(start, end).toArray(new String[0]),
+                        batch.mRemotePaths.subList(start, end).toArray(new String[0]),
+                        batch.mMimeTypes.subList(start, end).toArray(new String[0]),
+                        mCameraUploadsBehaviorAfterUpload,
+                        true,           // create parent folder if not existent
+                        createdBy
+                );
+            }
+            if (size > 0) {
+                Timber.i("Requested upload of %1d files to %2s in %3s", size,
+                        createdBy == UploadFileOperation.CREATED_AS_CAMERA_UPLOAD_PICTURE ?
+                                mCameraUploadsPicturesPath : mCameraUploadsVideosPath,
+                        mAccount.name);
+            }
         }
 
         /**
          * Update pictures and videos timestamps to upload only the pictures and videos taken later
-         * than those timestamps
+         * than those timestamps.
+         *
+         * Timestamps are not moved past the files the media scanner may not have indexed yet, the files
+         * enqueued after them are remembered by {@link #updateRecentlyEnqueued()} to not enqueue them again.
          *
-         * @param isImage true if file is an image, false otherwise
-         * @param isVideo true if file is a video, false otherwise
+         * @param lastPictureTimestamp timestamp of the last picture enqueued, 0 if none was
+         * @param lastVideoTimestamp   timestamp of the last video enqueued, 0 if none was
+         * @param indexedBefore        timestamp before which the new files have been indexed for sure
          */
-        private void updateTimestamps(boolean isImage, boolean isVideo, long fileTimestamp) {
+        private void updateTimestamps(long lastPictureTimestamp, long lastVideoTimestamp, long indexedBefore) {
 
             long picturesTimestamp = mOCCameraUploadSync.getPicturesLastSync();
             long videosTimestamp = mOCCameraUploadSync.getVideosLastSync();
 
-            if (isImage) {
+            if (lastPictureTimestamp > 0) {
 
                 Timber.d("Updating timestamp for pictures");
 
-                picturesTimestamp = fileTimestamp;
+                picturesTimestamp = Math.max(picturesTimestamp, Math.min(lastPictureTimestamp, indexedBefore));
             }
 
-            if (isVideo) {
+            if (lastVideoTimestamp > 0) {
 
                 Timber.d("Updating timestamp for videos");
 
-                videosTimestamp = fileTimestamp;
+                videosTimestamp = Math.max(videosTimestamp, Math.min(lastVideoTimestamp, indexedBefore));
             }
 
             OCCameraUploadSync newOCCameraUploadSync = new OCCameraUploadSync(picturesTimestamp,
@@ -248,6 +315,44 @@ public class CameraUploadsSyncJobService extends JobService {
             newOCCameraUploadSync.setId(mOCCameraUploadSync.getId());
 
             mCameraUploadsSyncStorageManager.updateCameraUploadSync(newOCCameraUploadSync);
+
+            mOCCameraUploadSync = newOCCameraUploadSync;
+        }
+
+        /**
+         * Remember the files enqueued that are still newer than the timestamps, forgetting the older ones
+         */
+        private void updateRecentlyEnqueued() {
+            Set<String> recentlyEnqueued = new HashSet<>();
+            addRecentlyEnqueued(recentlyEnqueued, mPicturesBatch, mOCCameraUploadSync.getPicturesLastSync());
+            addRecentlyEnqueued(recentlyEnqueued, mVideosBatch, mOCCameraUploadSync.getVideosLastSync());
+
+            long oldestLastSync = getOldestLastSync();
+            for (String entry : mRecentlyEnqueued) {
+                if (getRecentlyEnqueuedTimestamp(entry) > oldestLastSync) {
+                    recentlyEnqueued.add(entry);
+                }
+            }
+
+            PreferenceManager.setCameraUploadsRecentlyEnqueued(recentlyEnqueued, mCameraUploadsSyncJobService);
+            mRecentlyEnqueued = recentlyEnqueued;
+        }
+
+        private void addRecentlyEnqueued(Set<String> recentlyEnqueued, UploadsBatch batch, long lastSync) {
+            for (int i = 0; i < batch.mLocalPaths.size(); i++) {
+                if (batch.mTimestamps.get(i) > lastSync) {
+                    recentlyEnqueued.add(getRecentlyEnqueuedEntry(batch.mLocalPaths.get(i),
+                            batch.mTimestamps.get(i)));
+                }
+            }
+        }
+
+        private String getRecentlyEnqueuedEntry(String localPath, long lastModified) {
+            return lastModified + RECENTLY_ENQUEUED_SEPARATOR + localPath;
+        }
+
+        private long getRecentlyEnqueuedTimestamp(String entry) {
+            return Long.parseLong(entry.substring(0, entry.indexOf(RECENTLY_ENQUEUED_SEPARATOR)));
         }
 
         /**
@@ -266,6 +371,29 @@ public class CameraUploadsSyncJobService extends JobService {
         }
     }
 
+    /**
+     * New files of the same type to upload, in the order they were saved
+     */
+    private static class UploadsBatch {
+        private final List<String> mLocalPaths = new ArrayList<>();
+        private final List<String> mRemotePaths = new ArrayList<>();
+        private final List<String> mMimeTypes = new ArrayList<>();
+        private final List<Long> mTimestamps = new ArrayList<>();
+        private long mLastTimestamp = 0;
+
+        void add(String localPath, String remotePath, String mimeType, long timestamp) {
+            mLocalPaths.add(localPath);
+            mRemotePaths.add(remotePath);
+            mMimeTypes.add(mimeType);
+            mTimestamps.add(timestamp);
+            mLastTimestamp = Math.max(mLastTimestamp, timestamp);
+        }
+
+        boolean isEmpty() {
+            return mLocalPaths.isEmpty();
+        }
+    }
+
     @Override
     /*
      * Called by the system if the job is cancelled before being finished
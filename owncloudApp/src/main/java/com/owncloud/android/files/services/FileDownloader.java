@@ -93,6 +93,11 @@ public class FileDownloader extends Service
 
     private IndexedForest<DownloadFileOperation> mPendingDownloads = new IndexedForest<>();
 
+    /**
+     * Account names and remote paths of the pending downloads, in the order they will be performed.
+     */
+    private TransferQueue<Pair<String, String>> mDownloadsQueue = new TransferQueue<>();
+
     private DownloadFileOperation mCurrentDownload = null;
 
     private NotificationManager mNotificationManager;
@@ -203,16 +208,19 @@ public class FileDownloader extends Service
         } else {
             final Account account = intent.getParcelableExtra(KEY_ACCOUNT);
             final OCFile file = intent.getParcelableExtra(KEY_FILE);
-            AbstractList<String> requestedDownloads = new Vector<>();
+            AbstractList<Pair<String, String>> requestedDownloads = new Vector<>();
             try {
                 DownloadFileOperation newDownload = new DownloadFileOperation(account, file);
-                newDownload.addDatatransferProgressListener(this);
-                newDownload.addDatatransferProgressListener((FileDownloaderBinder) mBinder);
+                newDownload.addDatatransferProgressListener(new TransferProgressDispatcher(
+                        this, TransferProgressDispatcher.NOTIFICATION_UPDATES_PER_SECOND
+                ));
+                newDownload.addDatatransferProgressListener(new TransferProgressDispatcher(
+                        (FileDownloaderBinder) mBinder, TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND
+                ));
                 Pair<String, String> putResult = mPendingDownloads.putIfAbsent(
                         account.name, file.getRemotePath(), newDownload);
                 if (putResult != null) {
-                    String downloadKey = putResult.first;
-                    requestedDownloads.add(downloadKey);
+                    requestedDownloads.add(new Pair<>(account.name, file.getRemotePath()));
                     sendBroadcastNewDownload(newDownload, putResult.second);
                 }   // else, file already in the queue of downloads; don't repeat the request
 
@@ -222,9 +230,14 @@ public class FileDownloader extends Service
             }
 
             if (requestedDownloads.size() > 0) {
+                TransferQueue.Priority priority =
+                        TransferQueue.Priority.of(retryDownload, false, isAvailableOfflineFile);
+                for (Pair<String, String> download : requestedDownloads) {
+                    mDownloadsQueue.add(download, priority);
+                }
                 Message msg = mServiceHandler.obtainMessage();
                 msg.arg1 = startId;
-                msg.obj = requestedDownloads;
+                msg.arg2 = requestedDownloads.size();
                 mServiceHandler.sendMessage(msg);
             }
         }
@@ -390,7 +403,8 @@ public class FileDownloader extends Service
     }
 
     /**
-     * Download worker. Performs the pending downloads in the order they were requested.
+     * Download worker. Performs as many pending downloads as requested in every command, taking them from the
+     * queue in order of priority.
      * Created with the Looper of a new thread, started in {@link FileUploader#onCreate()}.
      */
     private static class ServiceHandler extends Handler {
@@ -408,11 +422,11 @@ public class FileDownloader extends Service
 
         @Override
         public void handleMessage(Message msg) {
-            @SuppressWarnings("unchecked")
-            AbstractList<String> requestedDownloads = (AbstractList<String>) msg.obj;
-            if (msg.obj != null) {
-                for (String next : requestedDownloads) {
-                    mService.downloadFile(next);
+            // not necessarily the downloads requested in the command; more urgent ones could have been queued since
+            for (int i = 0; i < msg.arg2; i++) {
+                Pair<String, String> download = mService.mDownloadsQueue.poll();
+                if (download != null) {
+                    mService.downloadFile(download.first, download.second);
                 }
             }
             Timber.d("Stopping after command with id %s", msg.arg1);
@@ -424,11 +438,12 @@ public class FileDownloader extends Service
     /**
      * Core download method: requests a file to download and stores it.
      *
-     * @param downloadKey Key to access the download to perform, contained in mPendingDownloads
+     * @param accountName Name of the account of the download to perform, contained in mPendingDownloads
+     * @param remotePath  Remote path of the download to perform
      */
-    private void downloadFile(String downloadKey) {
+    private void downloadFile(String accountName, String remotePath) {
 
-        mCurrentDownload = mPendingDownloads.get(downloadKey);
+        mCurrentDownload = mPendingDownloads.get(accountName, remotePath);
 
         if (mCurrentDownload != null) {
 
@@ -576,6 +591,8 @@ public class FileDownloader extends Service
 
     /**
      * Callback method to update the progress bar in the status notification.
+     * <p>
+     * Rate limited by the {@link TransferProgressDispatcher} the operation reports progress to.
      */
     @Override
     public void onTransferProgress(long progressRate, long totalTransferredSoFar,
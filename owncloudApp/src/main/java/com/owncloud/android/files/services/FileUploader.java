@@ -80,8 +80,9 @@ import timber.log.Timber;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -124,6 +125,11 @@ public class FileUploader extends Service
      * upload of file identified by KEY_RETRY_UPLOAD.
      */
     protected static final String KEY_RETRY_UPLOAD = "KEY_RETRY_UPLOAD";
+    /**
+     * Set to true along with KEY_RETRY when the retry was not requested by the user, so that it does not delay
+     * the transfers requested by the user.
+     */
+    protected static final String KEY_AUTOMATIC_RETRY = "KEY_AUTOMATIC_RETRY";
     /**
      * {@link Account} to which file is to be uploaded.
      */
@@ -163,6 +169,11 @@ public class FileUploader extends Service
 
     private IndexedForest<UploadFileOperation> mPendingUploads = new IndexedForest<>();
 
+    /**
+     * Account names and remote paths of the pending uploads, in the order they will be performed.
+     */
+    private TransferQueue<Pair<String, String>> mUploadsQueue = new TransferQueue<>();
+
     private LocalBroadcastManager mLocalBroadcastManager;
 
     /**
@@ -312,7 +323,13 @@ public class FileUploader extends Service
         }
 
         boolean retry = intent.getBooleanExtra(KEY_RETRY, false);
-        AbstractList<String> requestedUploads = new Vector<>();
+        AbstractList<Pair<String, String>> requestedUploads = new Vector<>();
+
+        TransferQueue.Priority priority = TransferQueue.Priority.of(
+                retry && intent.getBooleanExtra(KEY_AUTOMATIC_RETRY, false),
+                isCameraUploadFile,
+                isAvailableOfflineFile
+        );
 
         if (!intent.hasExtra(KEY_ACCOUNT)) {
             Timber.e("Not enough information provided in intent");
@@ -385,7 +402,6 @@ public class FileUploader extends Service
             }
             // at this point variable "OCFile[] files" is loaded correctly.
 
-            String uploadKey;
             UploadFileOperation newUploadFileOperation;
             try {
                 FileDataStorageManager storageManager = new FileDataStorageManager(
@@ -397,6 +413,8 @@ public class FileUploader extends Service
                 boolean isChunkingAllowed =
                         capabilitiesForAccount != null && capabilitiesForAccount.isChunkingAllowed();
                 Timber.d("Chunking is allowed: %s", isChunkingAllowed);
+                List<OCUpload> newUploads = new ArrayList<>(files.length);
+                List<UploadFileOperation> newUploadFileOperations = new ArrayList<>(files.length);
                 for (OCFile ocFile : files) {
 
                     OCUpload ocUpload = new OCUpload(ocFile, account);
@@ -436,8 +454,12 @@ public class FileUploader extends Service
                     if (isCreateRemoteFolder) {
                         newUploadFileOperation.setRemoteFolderToBeCreated();
                     }
-                    newUploadFileOperation.addDatatransferProgressListener(this);
-                    newUploadFileOperation.addDatatransferProgressListener((FileUploaderBinder) mBinder);
+                    newUploadFileOperation.addDatatransferProgressListener(new TransferProgressDispatcher(
+                            this, TransferProgressDispatcher.NOTIFICATION_UPDATES_PER_SECOND
+                    ));
+                    newUploadFileOperation.addDatatransferProgressListener(new TransferProgressDispatcher(
+                            (FileUploaderBinder) mBinder, TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND
+                    ));
 
                     newUploadFileOperation.addRenameUploadListener(this);
 
@@ -447,12 +469,20 @@ public class FileUploader extends Service
                             newUploadFileOperation
                     );
                     if (putResult != null) {
-                        uploadKey = putResult.first;
-                        requestedUploads.add(uploadKey);
+                        requestedUploads.add(new Pair<>(account.name, ocFile.getRemotePath()));
+                        newUploads.add(ocUpload);
+                        newUploadFileOperations.add(newUploadFileOperation);
+                    }
+                }
 
-                        // Save upload in database
-                        long id = mUploadsStorageManager.storeUpload(ocUpload);
-                        newUploadFileOperation.setOCUploadId(id);
+                // Save uploads in database, all of them in a single transaction
+                if (newUploads.size() == 1) {
+                    long id = mUploadsStorageManager.storeUpload(newUploads.get(0));
+                    newUploadFileOperations.get(0).setOCUploadId(id);
+                } else if (!newUploads.isEmpty()) {
+                    mUploadsStorageManager.storeUploads(newUploads);
+                    for (int i = 0; i < newUploads.size(); i++) {
+                        newUploadFileOperations.get(i).setOCUploadId(newUploads.get(i).getUploadId());
                     }
                 }
 
@@ -501,8 +531,12 @@ public class FileUploader extends Service
                 );
             }
 
-            newUploadFileOperation.addDatatransferProgressListener(this);
-            newUploadFileOperation.addDatatransferProgressListener((FileUploaderBinder) mBinder);
+            newUploadFileOperation.addDatatransferProgressListener(new TransferProgressDispatcher(
+                    this, TransferProgressDispatcher.NOTIFICATION_UPDATES_PER_SECOND
+            ));
+            newUploadFileOperation.addDatatransferProgressListener(new TransferProgressDispatcher(
+                    (FileUploaderBinder) mBinder, TransferProgressDispatcher.VIEW_UPDATES_PER_SECOND
+            ));
 
             newUploadFileOperation.addRenameUploadListener(this);
 
@@ -512,8 +546,7 @@ public class FileUploader extends Service
                     newUploadFileOperation
             );
             if (putResult != null) {
-                String uploadKey = putResult.first;
-                requestedUploads.add(uploadKey);
+                requestedUploads.add(new Pair<>(account.name, upload.getRemotePath()));
 
                 // Update upload in database
                 upload.setUploadStatus(UploadStatus.UPLOAD_IN_PROGRESS);
@@ -523,9 +556,12 @@ public class FileUploader extends Service
         // *** TODO REWRITE END ***/
 
         if (requestedUploads.size() > 0) {
+            for (Pair<String, String> upload : requestedUploads) {
+                mUploadsQueue.add(upload, priority);
+            }
             Message msg = mServiceHandler.obtainMessage();
             msg.arg1 = startId;
-            msg.obj = requestedUploads;
+            msg.arg2 = requestedUploads.size();
             mServiceHandler.sendMessage(msg);
             sendBroadcastUploadsAdded();
         }
@@ -779,8 +815,8 @@ public class FileUploader extends Service
     }
 
     /**
-     * Upload worker. Performs the pending uploads in the order they were
-     * requested.
+     * Upload worker. Performs as many pending uploads as requested in every
+     * command, taking them from the queue in order of priority.
      * <p>
      * Created with the Looper of a new thread, started in
      * {@link FileUploader#onCreate()}.
@@ -800,12 +836,11 @@ public class FileUploader extends Service
 
         @Override
         public void handleMessage(Message msg) {
-            @SuppressWarnings("unchecked")
-            AbstractList<String> requestedUploads = (AbstractList<String>) msg.obj;
-            if (msg.obj != null) {
-                Iterator<String> it = requestedUploads.iterator();
-                while (it.hasNext()) {
-                    mService.uploadFile(it.next());
+            // not necessarily the uploads requested in the command; more urgent ones could have been queued since
+            for (int i = 0; i < msg.arg2; i++) {
+                Pair<String, String> upload = mService.mUploadsQueue.poll();
+                if (upload != null) {
+                    mService.uploadFile(upload.first, upload.second);
                 }
             }
             Timber.d("Stopping command after id %s", msg.arg1);
@@ -817,11 +852,12 @@ public class FileUploader extends Service
     /**
      * Core upload method: sends the file(s) to upload
      *
-     * @param uploadKey Key to access the upload to perform, contained in mPendingUploads
+     * @param accountName Name of the account of the upload to perform, contained in mPendingUploads
+     * @param remotePath  Remote path of the upload to perform
      */
-    public void uploadFile(String uploadKey) {
+    public void uploadFile(String accountName, String remotePath) {
 
-        mCurrentUpload = mPendingUploads.get(uploadKey);
+        mCurrentUpload = mPendingUploads.get(accountName, remotePath);
 
         if (mCurrentUpload != null) {
 
@@ -990,6 +1026,8 @@ public class FileUploader extends Service
 
     /**
      * Callback method to update the progress bar in the status notification
+     * <p>
+     * Rate limited by the {@link TransferProgressDispatcher} the operation reports progress to.
      */
     @Override
     public void onTransferProgress(long progressRate, long totalTransferredSoFar,
@@ -1126,6 +1164,7 @@ public class FileUploader extends Service
         start.putExtra(Extras.EXTRA_REMOTE_PATH, upload.getRemotePath()); // real remote
         start.putExtra(Extras.EXTRA_OLD_FILE_PATH, upload.getOriginalStoragePath());
         start.putExtra(Extras.EXTRA_ACCOUNT_NAME, upload.getAccount().name);
+        start.putExtra(Extras.EXTRA_UPLOAD_ID, upload.getOCUploadId());
 
         mLocalBroadcastManager.sendBroadcast(start);
     }
@@ -1157,6 +1196,7 @@ public class FileUploader extends Service
         end.putExtra(Extras.EXTRA_OLD_FILE_PATH, upload.getOriginalStoragePath());
         end.putExtra(Extras.EXTRA_ACCOUNT_NAME, upload.getAccount().name);
         end.putExtra(Extras.EXTRA_UPLOAD_RESULT, uploadResult.isSuccess());
+        end.putExtra(Extras.EXTRA_UPLOAD_ID, upload.getOCUploadId());
         if (unlinkedFromRemotePath != null) {
             end.putExtra(Extras.EXTRA_LINKED_TO_PATH, unlinkedFromRemotePath);
         }
@@ -23,211 +23,187 @@ package com.owncloud.android.files.services;
 import android.util.Pair;
 
 import com.owncloud.android.datamodel.OCFile;
-import timber.log.Timber;
 
-import java.io.File;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *  Helper structure to keep the trees of folders containing any file downloading or synchronizing.
  *
- *  A map provides the indexation based in hashing.
+ *  A tree is created per account. Every node keeps only its own segment of the path, and finds its children by
+ *  segment, so that inserting, finding or removing a path walks the path once, with no parent paths built.
+ *  Removing all the paths of an account drops its tree.
  *
- *  A tree is created per account.
+ *  Every method holds the lock of the forest, since adding or removing a path links or unlinks several nodes that
+ *  must be seen together.
+ *
+ *  Keys returned are built with {@link #buildKey(String, String)}.
  */
 public class IndexedForest<V> {
 
-    private ConcurrentMap<String, Node<V>> mMap = new ConcurrentHashMap<String, Node<V>>();
-
-    private class Node<V> {
-        String mKey = null;
-        Node<V> mParent = null;
-        Set<Node<V>> mChildren = new HashSet<Node<V>>();    // TODO be careful with hash()
-        V mPayload = null;
+    private static final char SEPARATOR = OCFile.PATH_SEPARATOR.charAt(0);
 
-        // payload is optional
-        public Node(String key, V payload) {
-            if (key == null) {
-                throw new IllegalArgumentException("Argument key MUST NOT be null");
-            }
-            mKey = key;
-            mPayload = payload;
-        }
-
-        public Node<V> getParent() {
-            return mParent;
-        }
-
-        public Set<Node<V>> getChildren() {
-            return mChildren;
-        }
+    /**
+     * Root of the tree of every account, by account name.
+     */
+    private Map<String, Node<V>> mRoots = new HashMap<>();
 
-        public String getKey() {
-            return mKey;
-        }
+    private static class Node<V> {
+        String mSegment;
+        Node<V> mParent;
+        Map<String, Node<V>> mChildren = null;  // created with the first child
+        V mPayload = null;
 
-        public V getPayload() {
-            return mPayload;
+        Node(String segment, Node<V> parent) {
+            mSegment = segment;
+            mParent = parent;
         }
 
-        public void addChild(Node<V> child) {
-            mChildren.add(child);
-            child.setParent(this);
+        Node<V> getChild(String segment) {
+            return mChildren == null ? null : mChildren.get(segment);
         }
 
-        private void setParent(Node<V> parent) {
-            mParent = parent;
+        Node<V> addChild(String segment) {
+            if (mChildren == null) {
+                mChildren = new HashMap<>();
+            }
+            Node<V> child = new Node<>(segment, this);
+            mChildren.put(segment, child);
+            return child;
         }
 
-        public boolean hasChildren() {
-            return mChildren.size() > 0;
+        void removeChild(Node<V> child) {
+            mChildren.remove(child.mSegment);
         }
 
-        public void removeChild(Node<V> removed) {
-            mChildren.remove(removed);
+        boolean hasChildren() {
+            return mChildren != null && !mChildren.isEmpty();
         }
 
-        public void clearPayload() {
-            mPayload = null;
+        /**
+         * @return Path of the folder represented by the node, ending in separator.
+         */
+        String getFolderPath() {
+            if (mParent == null) {
+                return OCFile.ROOT_PATH;
+            }
+            return mParent.getFolderPath() + mSegment + OCFile.PATH_SEPARATOR;
         }
     }
 
-    public /* synchronized */ Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
-        String targetKey = buildKey(accountName, remotePath);
-
-        Node<V> valuedNode = new Node(targetKey, value);
-        Node<V> previousValue = mMap.putIfAbsent(
-                targetKey,
-                valuedNode
-        );
-        if (previousValue != null) {
-            // remotePath already known; not replaced
-            return null;
-
-        } else {
-            // value really added
-            String currentPath = remotePath, parentPath = null, parentKey = null;
-            Node<V> currentNode = valuedNode, parentNode = null;
-            boolean linked = false;
-            while (!OCFile.ROOT_PATH.equals(currentPath) && !linked) {
-                parentPath = new File(currentPath).getParent();
-                if (!parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
-                    parentPath += OCFile.PATH_SEPARATOR;
-                }
-                parentKey = buildKey(accountName, parentPath);
-                parentNode = mMap.get(parentKey);
-                if (parentNode == null) {
-                    parentNode = new Node(parentKey, null);
-                    parentNode.addChild(currentNode);
-                    mMap.put(parentKey, parentNode);
-                } else {
-                    parentNode.addChild(currentNode);
-                    linked = true;
-                }
-                currentPath = parentPath;
-                currentNode = parentNode;
+    /**
+     * Adds a value for a path, unless the path is already in the tree of the account.
+     *
+     * @return Key of the value added and deepest folder already in the tree where it was linked to, root if the
+     * tree was empty; null if the path was already in the tree.
+     */
+    public synchronized Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
+        Node<V> current = mRoots.get(accountName);
+        boolean existing = current != null;
+        if (current == null) {
+            current = new Node<>(null, null);
+            mRoots.put(accountName, current);
+        }
+
+        int linkedToEnd = OCFile.ROOT_PATH.length();
+        int length = remotePath.length();
+        int start = 0;
+        while (start < length) {
+            int end = remotePath.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = length;
             }
-
-            String linkedTo = OCFile.ROOT_PATH;
-            if (linked) {
-                linkedTo = parentNode.getKey().substring(accountName.length());
+            if (end > start) {
+                String segment = remotePath.substring(start, end);
+                Node<V> child = existing ? current.getChild(segment) : null;
+                if (child == null) {
+                    existing = false;
+                    child = current.addChild(segment);
+                } else if (end < length) {
+                    linkedToEnd = end + 1;
+                }
+                current = child;
             }
+            start = end + 1;
+        }
 
-            return new Pair<String, String>(targetKey, linkedTo);
+        if (existing) {
+            // remotePath already known; not replaced
+            return null;
         }
+        current.mPayload = value;
+        return new Pair<>(buildKey(accountName, remotePath), remotePath.substring(0, linkedToEnd));
     }
 
-    public Pair<V, String> removePayload(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        Node<V> target = mMap.get(targetKey);
+    public synchronized Pair<V, String> removePayload(String accountName, String remotePath) {
+        Node<V> target = find(mRoots.get(accountName), remotePath);
         if (target != null) {
-            target.clearPayload();
+            target.mPayload = null;
             if (!target.hasChildren()) {
                 return remove(accountName, remotePath);
             }
         }
-        return new Pair<V, String>(null, null);
+        return new Pair<>(null, null);
     }
 
-    public /* synchronized */ Pair<V, String> remove(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        Node<V> firstRemoved = mMap.remove(targetKey);
-        String unlinkedFrom = null;
-
-        if (firstRemoved != null) {
-            /// remove children
-            removeDescendants(firstRemoved);
-
-            /// remove ancestors if only here due to firstRemoved
-            Node<V> removed = firstRemoved;
-            Node<V> parent = removed.getParent();
-            boolean unlinked = false;
-            while (parent != null) {
-                parent.removeChild(removed);
-                if (!parent.hasChildren()) {
-                    removed = mMap.remove(parent.getKey());
-                    parent = removed.getParent();
-                } else {
-                    break;
-                }
-            }
-
-            if (parent != null) {
-                unlinkedFrom = parent.getKey().substring(accountName.length());
+    /**
+     * Removes a path and everything below it from the tree of the account, and the folders above it that
+     * are left empty and have no value.
+     *
+     * @return Value removed and deepest folder left in the tree where it was unlinked from, null if the tree
+     * of the account was removed.
+     */
+    public synchronized Pair<V, String> remove(String accountName, String remotePath) {
+        Node<V> target = find(mRoots.get(accountName), remotePath);
+        if (target == null) {
+            return new Pair<>(null, null);
+        }
+
+        Node<V> removed = target;
+        Node<V> parent = target.mParent;
+        while (parent != null) {
+            parent.removeChild(removed);
+            if (parent.hasChildren() || parent.mPayload != null) {
+                break;
             }
-
-            return new Pair<V, String>(firstRemoved.getPayload(), unlinkedFrom);
+            removed = parent;
+            parent = parent.mParent;
         }
 
-        return new Pair<V, String>(null, null);
-    }
-
-    private void removeDescendants(Node<V> removed) {
-        Iterator<Node<V>> childrenIt = removed.getChildren().iterator();
-        Node<V> child = null;
-        while (childrenIt.hasNext()) {
-            child = childrenIt.next();
-            mMap.remove(child.getKey());
-            removeDescendants(child);
+        String unlinkedFrom = null;
+        if (parent == null) {
+            mRoots.remove(accountName);
+        } else {
+            unlinkedFrom = parent.getFolderPath();
         }
+        return new Pair<>(target.mPayload, unlinkedFrom);
     }
 
-    public boolean contains(String accountName, String remotePath) {
-        String targetKey = buildKey(accountName, remotePath);
-        return mMap.containsKey(targetKey);
-    }
-
-    public /* synchronized */ V get(String key) {
-        Node<V> node = mMap.get(key);
-        if (node != null) {
-            return node.getPayload();
-        } else {
-            return null;
-        }
+    /**
+     * @return 'True' if the path is in the tree of the account, with a value or with any value below it.
+     */
+    public synchronized boolean contains(String accountName, String remotePath) {
+        return find(mRoots.get(accountName), remotePath) != null;
     }
 
-    public V get(String accountName, String remotePath) {
-        String key = buildKey(accountName, remotePath);
-        return get(key);
+    /**
+     * Values are got by account name and path, not by key, since account names may contain separators and the
+     * tree of the account could not be told from a key without checking every tree.
+     *
+     * @return Value of the path in the tree of the account, null if none.
+     */
+    public synchronized V get(String accountName, String remotePath) {
+        Node<V> node = find(mRoots.get(accountName), remotePath);
+        return node == null ? null : node.mPayload;
     }
 
     /**
-     * Remove the elements that contains account as a part of its key
-     * @param accountName
+     * Remove all the paths of an account
+     *
+     * @param accountName   Local name of the ownCloud account.
      */
-    public void remove(String accountName) {
-        Iterator<String> it = mMap.keySet().iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            Timber.d("Number of pending downloads= %s", mMap.size());
-            if (key.startsWith(accountName)) {
-                mMap.remove(key);
-            }
-        }
+    public synchronized void remove(String accountName) {
+        mRoots.remove(accountName);
     }
 
     /**
@@ -239,4 +215,26 @@ public class IndexedForest<V> {
     public String buildKey(String accountName, String remotePath) {
         return accountName + remotePath;
     }
+
+    /**
+     * @param root  Root of the tree of an account, or null.
+     * @param path  Path to find.
+     * @return Node of the path, or null if the path is not in the tree.
+     */
+    private static <V> Node<V> find(Node<V> root, String path) {
+        Node<V> current = root;
+        int start = 0;
+        int length = path.length();
+        while (current != null && start < length) {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                current = current.getChild(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return current;
+    }
 }
@@ -0,0 +1,85 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+
+/**
+ * Forwards the progress of a single transfer to a listener at most a given number of times per second.
+ *
+ * The network layer reports progress every time a buffer is written, thousands of times per second in a fast
+ * transfer. Progress reported between two deliveries is coalesced: the listener gets the latest totals, and
+ * the bytes transferred since the previous delivery. The first progress and the completion are always delivered.
+ *
+ * Callbacks are delivered in the thread of the transfer; an instance must not be shared between transfers.
+ */
+public class TransferProgressDispatcher implements OnDatatransferProgressListener {
+
+    /**
+     * Updates per second for views, a frame rate at which progress bars look smooth.
+     */
+    public static final int VIEW_UPDATES_PER_SECOND = 30;
+
+    /**
+     * Updates per second for notifications, far below the rate the system allows an app to post them.
+     */
+    public static final int NOTIFICATION_UPDATES_PER_SECOND = 2;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final OnDatatransferProgressListener mListener;
+    private final long mMinIntervalNanos;
+
+    private boolean mDelivered = false;
+    private long mLastDeliveryNanos;
+    private long mCoalescedProgressRate = 0;
+
+    /**
+     * @param listener         Listener to forward the progress to.
+     * @param updatesPerSecond Maximum number of progress updates forwarded per second.
+     */
+    public TransferProgressDispatcher(OnDatatransferProgressListener listener, int updatesPerSecond) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Received NULL listener");
+        }
+        if (updatesPerSecond <= 0) {
+            throw new IllegalArgumentException("Updates per second must be positive");
+        }
+        mListener = listener;
+        mMinIntervalNanos = NANOS_PER_SECOND / updatesPerSecond;
+    }
+
+    @Override
+    public void onTransferProgress(long progressRate, long totalTransferredSoFar, long totalToTransfer,
+                                   String fileName) {
+        mCoalescedProgressRate += progressRate;
+
+        long now = System.nanoTime();
+        boolean finished = totalToTransfer >= 0 && totalTransferredSoFar >= totalToTransfer;
+        if (mDelivered && !finished && now - mLastDeliveryNanos < mMinIntervalNanos) {
+            return;
+        }
+
+        mDelivered = true;
+        mLastDeliveryNanos = now;
+        long coalescedProgressRate = mCoalescedProgressRate;
+        mCoalescedProgressRate = 0;
+        mListener.onTransferProgress(coalescedProgressRate, totalTransferredSoFar, totalToTransfer, fileName);
+    }
+}
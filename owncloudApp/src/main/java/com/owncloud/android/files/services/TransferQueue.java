@@ -0,0 +1,134 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Queue of the transfers waiting in a transfer service, taken by priority instead of in arrival order.
+ *
+ * Transfers of the same priority are taken in arrival order. For every aging interval a transfer waits, it is
+ * taken as if it had the next higher priority, so that lower priorities are not starved. Waiting never promotes a
+ * transfer to {@link Priority#USER}, transfers requested by the user are always taken first.
+ *
+ * @param <T> Key of a transfer in the service.
+ */
+public class TransferQueue<T> {
+
+    /**
+     * Priorities of the transfers, highest first.
+     */
+    public enum Priority {
+        USER,
+        AVAILABLE_OFFLINE,
+        CAMERA_UPLOAD,
+        RETRY;
+
+        /**
+         * @param automaticRetry   'True' if the transfer is retried without the user asking for it.
+         * @param cameraUpload     'True' if the transfer is a camera upload.
+         * @param availableOffline 'True' if the transfer keeps an available offline file up to date.
+         * @return Priority of a requested transfer; transfers retried by the user keep {@link #USER}.
+         */
+        public static Priority of(boolean automaticRetry, boolean cameraUpload, boolean availableOffline) {
+            if (automaticRetry) {
+                return RETRY;
+            } else if (cameraUpload) {
+                return CAMERA_UPLOAD;
+            } else if (availableOffline) {
+                return AVAILABLE_OFFLINE;
+            } else {
+                return USER;
+            }
+        }
+    }
+
+    private static final long DEFAULT_AGING_MILLIS = 10 * 60 * 1000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long HIGHEST_AGED_RANK = Priority.USER.ordinal() + 1;
+
+    private final Map<Priority, ArrayDeque<QueuedTransfer<T>>> mQueues = new EnumMap<>(Priority.class);
+    private final long mAgingNanos;
+
+    private int mSize = 0;
+
+    public TransferQueue() {
+        this(DEFAULT_AGING_MILLIS);
+    }
+
+    /**
+     * @param agingMillis Time a transfer has to wait to be taken as if it had the next higher priority.
+     */
+    TransferQueue(long agingMillis) {
+        mAgingNanos = agingMillis * NANOS_PER_MILLI;
+        for (Priority priority : Priority.values()) {
+            mQueues.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    public synchronized void add(T transfer, Priority priority) {
+        mQueues.get(priority).add(new QueuedTransfer<>(transfer, System.nanoTime()));
+        mSize++;
+    }
+
+    /**
+     * Takes the transfer to perform next.
+     *
+     * @return Transfer of the highest priority, after aging, that has waited the longest; null if the queue is empty.
+     */
+    public synchronized T poll() {
+        long now = System.nanoTime();
+        ArrayDeque<QueuedTransfer<T>> next = null;
+        long nextRank = Long.MAX_VALUE;
+        for (Priority priority : Priority.values()) {
+            ArrayDeque<QueuedTransfer<T>> queue = mQueues.get(priority);
+            QueuedTransfer<T> head = queue.peek();
+            if (head == null) {
+                continue;
+            }
+            long rank = priority == Priority.USER ? priority.ordinal() :
+                    Math.max(HIGHEST_AGED_RANK, priority.ordinal() - (now - head.mQueuedNanos) / mAgingNanos);
+            if (rank < nextRank || (rank == nextRank && head.mQueuedNanos < next.peek().mQueuedNanos)) {
+                next = queue;
+                nextRank = rank;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        mSize--;
+        return next.poll().mTransfer;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    private static class QueuedTransfer<T> {
+        private final T mTransfer;
+        private final long mQueuedNanos;
+
+        QueuedTransfer(T transfer, long queuedNanos) {
+            mTransfer = transfer;
+            mQueuedNanos = queuedNanos;
+        }
+    }
+}
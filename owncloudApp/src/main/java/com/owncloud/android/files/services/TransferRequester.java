@@ -125,10 +125,13 @@ public class TransferRequester {
         intent.putExtra(FileUploader.KEY_LOCAL_BEHAVIOUR, behaviour);
         intent.putExtra(FileUploader.KEY_FORCE_OVERWRITE, forceOverwrite);
 
+        if (requestedFromAvOfflineJobService) {
+            intent.putExtra(FileUploader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
+        }
+
         // Since in Android O and above the apps in background are not allowed to start background
         // services and available offline feature may try to do it, this is the way to proceed
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && requestedFromAvOfflineJobService) {
-            intent.putExtra(FileUploader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
             Timber.d("Start to upload some already uploaded files from foreground/background, startForeground() will be called soon");
             context.startForegroundService(intent);
         } else {
@@ -206,6 +209,8 @@ public class TransferRequester {
         if (upload != null) {
             Intent intent = new Intent(context, FileUploader.class);
             intent.putExtra(FileUploader.KEY_RETRY, true);
+            // only the retries requested when connectivity is back are not requested by the user
+            intent.putExtra(FileUploader.KEY_AUTOMATIC_RETRY, requestedFromWifiBackEvent);
             intent.putExtra(FileUploader.KEY_ACCOUNT, account);
             intent.putExtra(FileUploader.KEY_RETRY_UPLOAD, upload);
 
@@ -46,48 +46,42 @@ public class ChunkedUploadFileOperation extends UploadFileOperation {
     }
 
     @Override
-    protected RemoteOperationResult uploadRemoteFile(OwnCloudClient client, File temporalFile, File originalFile,
-                                                     String expectedPath, File expectedFile, String timeStamp) {
-        try {
-            RemoteOperationResult result;
+    protected RemoteOperationResult transferFile(OwnCloudClient client, String timeStamp) throws Exception {
+        RemoteOperationResult result;
 
-            // Step 1, create folder where we put the uploaded file chunks
-            result = createChunksFolder(String.valueOf(mTransferId));
+        // Length of the file sent, read before sending it; it may not match the contents if the file is
+        // modified meanwhile, but then the file is transferred again
+        long fileLength = new File(mFile.getStoragePath()).length();
 
-            if (!result.isSuccess()) {
-                return result;
-            }
+        // Step 1, create folder where we put the uploaded file chunks
+        result = createChunksFolder(String.valueOf(mTransferId));
 
-            // Step 2, start to upload chunks
-            mUploadOperation = new ChunkedUploadRemoteFileOperation(mTransferId, mFile.getStoragePath(),
-                    mFile.getRemotePath(), mFile.getMimetype(), mFile.getEtagInConflict(), timeStamp);
-
-            Iterator<OnDatatransferProgressListener> listener = mDataTransferListeners.iterator();
-            while (listener.hasNext()) {
-                mUploadOperation.addDatatransferProgressListener(listener.next());
-            }
-
-            if (mCancellationRequested.get()) {
-                throw new OperationCancelledException();
-            }
+        if (!result.isSuccess()) {
+            return result;
+        }
 
-            result = mUploadOperation.execute(client);
+        // Step 2, start to upload chunks
+        mUploadOperation = new ChunkedUploadRemoteFileOperation(mTransferId, mFile.getStoragePath(),
+                mFile.getRemotePath(), mFile.getMimetype(), mFile.getEtagInConflict(), timeStamp);
 
-            // File chunks not properly uploaded
-            if (!result.isSuccess()) {
-                return result;
-            }
+        Iterator<OnDatatransferProgressListener> listener = mDataTransferListeners.iterator();
+        while (listener.hasNext()) {
+            mUploadOperation.addDatatransferProgressListener(listener.next());
+        }
 
-            // Step 3, move remote file to final remote destination
-            moveChunksFileToFinalDestination(timeStamp, mFile.getFileLength());
+        if (mCancellationRequested.get()) {
+            throw new OperationCancelledException();
+        }
 
-            // Step 4, move local file to final local destination
-            moveTemporalOriginalFiles(temporalFile, originalFile, expectedPath, expectedFile);
+        result = mUploadOperation.execute(client);
 
+        // File chunks not properly uploaded
+        if (!result.isSuccess()) {
             return result;
-        } catch (Exception e) {
-            return new RemoteOperationResult(e);
         }
+
+        // Step 3, move remote file to final remote destination
+        return moveChunksFileToFinalDestination(timeStamp, fileLength);
     }
 
     private RemoteOperationResult createChunksFolder(String remoteChunksFolder) {
@@ -25,14 +25,13 @@ import android.content.res.Resources;
 
 import com.owncloud.android.MainApp;
 import com.owncloud.android.R;
-import com.owncloud.android.datamodel.ThumbnailsCacheManager;
+import com.owncloud.android.datamodel.AvatarCache;
 import com.owncloud.android.datamodel.UserProfile;
 import com.owncloud.android.datamodel.UserProfilesRepository;
 import com.owncloud.android.domain.UseCaseResult;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.accounts.AccountUtils;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
-import com.owncloud.android.lib.resources.users.GetRemoteUserAvatarOperation;
 import com.owncloud.android.domain.user.model.UserInfo;
 import com.owncloud.android.lib.resources.users.GetRemoteUserQuotaOperation;
 import com.owncloud.android.lib.resources.users.GetRemoteUserQuotaOperation.RemoteQuota;
@@ -124,34 +123,30 @@ public class GetUserProfileOperation extends SyncOperation {
 
                     /// get avatar (optional for success)
                     int dimension = getAvatarDimension();
+                    String userId = com.owncloud.android.authentication.AccountUtils.getUsernameOfAccount(
+                            storedAccount.name
+                    );
 
-                    GetRemoteUserAvatarOperation getAvatarOperation = new GetRemoteUserAvatarOperation(dimension);
-
-                    RemoteOperationResult<GetRemoteUserAvatarOperation.ResultData> avatarOperationResult =
-                            getAvatarOperation.execute(client);
-
-                    if (avatarOperationResult.isSuccess()) {
-                        GetRemoteUserAvatarOperation.ResultData avatar = avatarOperationResult.getData();
-
-                        byte[] avatarData = avatar.getAvatarData();
-                        String avatarKey = ThumbnailsCacheManager.addAvatarToCache(
-                                storedAccount.name,
-                                avatarData,
-                                dimension
-                        );
+                    // the server is only accessed if the cached avatar expired, and then with a conditional
+                    // request, so the avatar is only downloaded if changed in the server :D
+                    AvatarCache.AvatarResult avatarResult = AvatarCache.getInstance().fetchAvatar(
+                            storedAccount,
+                            userId,
+                            dimension
+                    );
+                    AvatarCache.CachedAvatar avatar = avatarResult.getAvatar();
 
+                    if (avatar != null) {
                         UserProfile.UserAvatar userAvatar = new UserProfile.UserAvatar(
-                                avatarKey, avatar.getMimeType(), avatar.getEtag()
+                                AvatarCache.buildKey(storedAccount, userId), avatar.getMimeType(), avatar.getEtag()
                         );
                         userProfile.setAvatar(userAvatar);
 
-                    } else if (avatarOperationResult.getCode().equals(RemoteOperationResult.ResultCode.FILE_NOT_FOUND)) {
-                        Timber.i("No avatar available, removing cached copy");
+                    } else if (avatarResult.isNotFound()) {
+                        Timber.i("No avatar available");
                         userProfilesRepository.deleteAvatar(storedAccount.name);
-                        ThumbnailsCacheManager.removeAvatarFromCache(storedAccount.name);
 
-                    }   // others are ignored, including 304 (not modified), so the avatar is only stored
-                    // if changed in the server :D
+                    }   // others are ignored, the avatar stored is kept until the server can be reached
 
                     /// store userProfile
                     userProfilesRepository.update(userProfile);
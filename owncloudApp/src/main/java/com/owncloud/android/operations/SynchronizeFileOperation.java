@@ -248,10 +248,13 @@ public class SynchronizeFileOperation extends SyncOperation {
         intent.putExtra(FileDownloader.KEY_ACCOUNT, mAccount);
         intent.putExtra(FileDownloader.KEY_FILE, file);
 
+        if (mRequestedFromAvOfflineJobService) {
+            intent.putExtra(FileDownloader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
+        }
+
         // Since in Android O and above the apps in background are not allowed to start background
         // services and available offline feature may try to do it, this is the way to proceed
         if (mRequestedFromAvOfflineJobService && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            intent.putExtra(FileDownloader.KEY_IS_AVAILABLE_OFFLINE_FILE, true);
             Timber.d("Download file from foreground/background, startForeground() will be called soon");
             mContext.startForegroundService(intent);
         } else {
@@ -37,9 +37,11 @@ import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode;
 import com.owncloud.android.lib.resources.files.ReadRemoteFileOperation;
 import com.owncloud.android.lib.resources.files.RemoteFile;
+import com.owncloud.android.lib.resources.files.RemoveRemoteFileOperation;
 import com.owncloud.android.lib.resources.files.UploadRemoteFileOperation;
 import com.owncloud.android.lib.resources.files.CheckPathExistenceRemoteOperation;
 import com.owncloud.android.operations.common.SyncOperation;
+import com.owncloud.android.utils.BitmapUtils;
 import com.owncloud.android.utils.ConnectivityUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimetypeIconUtil;
@@ -54,6 +56,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -68,6 +72,17 @@ public class UploadFileOperation extends SyncOperation {
     public static final int CREATED_AS_CAMERA_UPLOAD_PICTURE = 1;
     public static final int CREATED_AS_CAMERA_UPLOAD_VIDEO = 2;
 
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+    /**
+     * Checksum computed while copying the file, the type is named as in the ownCloud checksum header
+     */
+    private static final String CHECKSUM_TYPE = "SHA1";
+    private static final String CHECKSUM_ALGORITHM = "SHA-1";
+
+    // Times a file uploaded straight from its original location is uploaded again if it changes meanwhile
+    private static final int MAX_REUPLOADS_OF_MODIFIED_FILE = 2;
+
     public static OCFile obtainNewOCFileToUpload(String remotePath, String localPath, String mimeType,
                                                  Context context) {
 
@@ -118,6 +133,24 @@ public class UploadFileOperation extends SyncOperation {
      * Local path to file which is to be uploaded (before any possible renaming or moving).
      */
     private String mOriginalStoragePath;
+    /**
+     * Bytes not uploaded thanks to downscaling the picture, 0 if it was uploaded as is.
+     */
+    private long mBytesSaved;
+    /**
+     * Checksum of the contents uploaded, known when the file is copied before or after uploading it; null otherwise.
+     */
+    private String mChecksum;
+    /**
+     * Length and modification date of the original file when the transfer started, to detect changes in it while
+     * it is uploaded without a previous copy.
+     */
+    private long mOriginalLength;
+    private long mOriginalLastModified;
+    /**
+     * Bytes written in the device to upload the file, for diagnostics.
+     */
+    private long mLocalBytesWritten;
     protected Set<OnDatatransferProgressListener> mDataTransferListeners = new HashSet<>();
     private OnRenameListener mRenameUploadListener;
 
@@ -245,6 +278,14 @@ public class UploadFileOperation extends SyncOperation {
         return mOCUploadId;
     }
 
+    public long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    public String getChecksum() {
+        return mChecksum;
+    }
+
     public Set<OnDatatransferProgressListener> getDataTransferListeners() {
         return mDataTransferListeners;
     }
@@ -275,6 +316,10 @@ public class UploadFileOperation extends SyncOperation {
     protected RemoteOperationResult run(OwnCloudClient client) {
         mCancellationRequested.set(false);
         mUploadStarted.set(true);
+        mBytesSaved = 0;
+        mChecksum = null;
+        mLocalBytesWritten = 0;
+        long startTime = System.currentTimeMillis();
         RemoteOperationResult result = null;
         File temporalFile = null, originalFile = new File(mOriginalStoragePath), expectedFile = null;
 
@@ -326,26 +371,18 @@ public class UploadFileOperation extends SyncOperation {
             String expectedPath = FileStorageUtils.getDefaultSavePathFor(mAccount.name, mFile);
             expectedFile = new File(expectedPath);
 
-            /// copy the file locally before uploading
-            if (mLocalBehaviour == FileUploader.LOCAL_BEHAVIOUR_COPY &&
-                    !mOriginalStoragePath.equals(expectedPath)) {
-
-                String temporalPath = FileStorageUtils.getTemporalPath(mAccount.name) + mFile.getRemotePath();
-                mFile.setStoragePath(temporalPath);
-                temporalFile = new File(temporalPath);
-
-                result = copy(originalFile, temporalFile);
-                if (result != null) {
-                    return result;
-                }
-            }
+            /// downscale camera pictures; files are uploaded without a previous copy otherwise, and copied to
+            /// the ownCloud folder after the upload when needed
+            temporalFile = downscaleCameraUploadsPicture(originalFile);
 
             if (mCancellationRequested.get()) {
                 throw new OperationCancelledException();
             }
 
             // Get the last modification date of the file from the file system
-            Long timeStampLong = originalFile.lastModified() / 1000;
+            mOriginalLength = originalFile.length();
+            mOriginalLastModified = originalFile.lastModified();
+            Long timeStampLong = mOriginalLastModified / 1000;
             String timeStamp = timeStampLong.toString();
 
             // Perform the upload
@@ -365,6 +402,8 @@ public class UploadFileOperation extends SyncOperation {
             if (result.isSuccess()) {
                 Timber.i("Upload of " + mOriginalStoragePath + " to " + mRemotePath + ": " +
                         result.getLogMessage());
+                Timber.d("Upload of %s took %d ms, %d bytes written locally", mOriginalStoragePath,
+                        System.currentTimeMillis() - startTime, mLocalBytesWritten);
             } else {
                 if (result.getException() != null) {
                     if (result.isCancelled()) {
@@ -390,6 +429,47 @@ public class UploadFileOperation extends SyncOperation {
         return result;
     }
 
+    /**
+     * Downscales pictures from camera uploads into a temporal file, when enabled in the settings. The original
+     * picture is never modified, the temporal file is moved or deleted after the upload like copied files are.
+     *
+     * @param originalFile local file to upload
+     * @return temporal file with the downscaled picture, to upload instead of originalFile; null if the picture
+     * is uploaded as is
+     */
+    private File downscaleCameraUploadsPicture(File originalFile) {
+        final int maxSize = PreferenceManager.cameraPictureUploadMaxSize(mContext);
+        if (!isCameraUploadsPicture() || maxSize <= 0 || !MIME_TYPE_JPEG.equalsIgnoreCase(mFile.getMimetype())) {
+            return null;
+        }
+
+        String temporalPath = FileStorageUtils.getTemporalPath(mAccount.name) + mFile.getRemotePath();
+        File temporalFile = new File(temporalPath);
+        try {
+            if (!BitmapUtils.downscaleJpeg(originalFile, temporalFile, maxSize,
+                    PreferenceManager.cameraPictureUploadQuality(mContext))) {
+                return null;
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Could not downscale %s, uploading it as is", mOriginalStoragePath);
+            temporalFile.delete();
+            return null;
+        }
+
+        long bytesSaved = originalFile.length() - temporalFile.length();
+        if (bytesSaved <= 0) {
+            Timber.d("Downscaling %s does not make it smaller, uploading it as is", mOriginalStoragePath);
+            temporalFile.delete();
+            return null;
+        }
+        Timber.d("%s downscaled to %d px, %d bytes saved", mOriginalStoragePath, maxSize, bytesSaved);
+        mBytesSaved = bytesSaved;
+        mLocalBytesWritten += temporalFile.length();
+        mFile.setStoragePath(temporalPath);
+        mFile.setFileLength(temporalFile.length());
+        return temporalFile;
+    }
+
     /**
      * Upload file to server
      *
@@ -406,19 +486,26 @@ public class UploadFileOperation extends SyncOperation {
         RemoteOperationResult result;
 
         try {
-            mUploadOperation = new UploadRemoteFileOperation(mFile.getStoragePath(), mFile.getRemotePath(),
-                    mFile.getMimetype(), mFile.getEtagInConflict(), timeStamp);
-
-            for (OnDatatransferProgressListener dataTransferListener : mDataTransferListeners) {
-                mUploadOperation.addDatatransferProgressListener(dataTransferListener);
-            }
-
-            if (mCancellationRequested.get()) {
-                throw new OperationCancelledException();
+            result = transferFile(client, timeStamp);
+
+            /// a file uploaded straight from its original location is uploaded again to the same remote path
+            // while it changes, so that the server does not keep content the upload is not reported for
+            int reuploads = 0;
+            while (result.isSuccess() && temporalFile == null &&
+                    mLocalBehaviour == FileUploader.LOCAL_BEHAVIOUR_COPY && isOriginalFileChanged(originalFile)) {
+                if (reuploads++ == MAX_REUPLOADS_OF_MODIFIED_FILE) {
+                    removeUploadedFile(client);
+                    throw new IOException(mOriginalStoragePath + " was modified while uploading it");
+                }
+                if (mCancellationRequested.get()) {
+                    throw new OperationCancelledException();
+                }
+                Timber.d("%s was modified while uploading it, uploading it again", mOriginalStoragePath);
+                mOriginalLength = originalFile.length();
+                mOriginalLastModified = originalFile.lastModified();
+                result = transferFile(client, String.valueOf(mOriginalLastModified / 1000));
             }
 
-            result = mUploadOperation.execute(client);
-
             /// move local temporal file or original file to its corresponding
             // location in the ownCloud local folder
             if (result.isSuccess()) {
@@ -434,6 +521,29 @@ public class UploadFileOperation extends SyncOperation {
         return result;
     }
 
+    /**
+     * Sends the contents of the file to upload to its remote path, once; called again by
+     * {@link #uploadRemoteFile} when the original file is modified while uploading it.
+     *
+     * @param client    client to send the file with
+     * @param timeStamp last modification date of the file, in seconds
+     * @return {@link RemoteOperationResult} representing the transfer result
+     */
+    protected RemoteOperationResult transferFile(OwnCloudClient client, String timeStamp) throws Exception {
+        mUploadOperation = new UploadRemoteFileOperation(mFile.getStoragePath(), mFile.getRemotePath(),
+                mFile.getMimetype(), mFile.getEtagInConflict(), timeStamp);
+
+        for (OnDatatransferProgressListener dataTransferListener : mDataTransferListeners) {
+            mUploadOperation.addDatatransferProgressListener(dataTransferListener);
+        }
+
+        if (mCancellationRequested.get()) {
+            throw new OperationCancelledException();
+        }
+
+        return mUploadOperation.execute(client);
+    }
+
     /**
      * Move local temporal file or original file to its corresponding location in the ownCloud local folder
      *
@@ -458,8 +568,21 @@ public class UploadFileOperation extends SyncOperation {
         } else {
             mFile.setStoragePath(expectedPath);
 
-            if (temporalFile != null) {         // FileUploader.LOCAL_BEHAVIOUR_COPY
+            if (temporalFile != null) {         // copied or downscaled before uploading
                 move(temporalFile, expectedFile);
+            } else if (mLocalBehaviour == FileUploader.LOCAL_BEHAVIOUR_COPY) {
+                // uploaded straight from the original file, keep a copy of what was uploaded
+                if (!originalFile.equals(expectedFile)) {
+                    RemoteOperationResult copyResult = copy(originalFile, expectedFile);
+                    if (copyResult != null || isOriginalFileChanged(originalFile)) {
+                        // the local copy could differ from what was uploaded, it is not kept
+                        Timber.w("Could not copy %s after uploading it: %s", mOriginalStoragePath,
+                                copyResult != null ? copyResult.getCode() : "modified while copying it");
+                        expectedFile.delete();
+                        mFile.setStoragePath("");   // the file was uploaded anyway
+                        return;
+                    }
+                }
             } else {                            // FileUploader.LOCAL_BEHAVIOUR_MOVE
                 move(originalFile, expectedFile);
                 getStorageManager().deleteFileInMediaScan(originalFile.getAbsolutePath());
@@ -468,6 +591,28 @@ public class UploadFileOperation extends SyncOperation {
         }
     }
 
+    /**
+     * @param originalFile local file uploaded without a previous copy
+     * @return 'True' if the length or the modification date of the file changed since the transfer started.
+     */
+    private boolean isOriginalFileChanged(File originalFile) {
+        return originalFile.length() != mOriginalLength || originalFile.lastModified() != mOriginalLastModified;
+    }
+
+    /**
+     * Removes the file uploaded from the server when the upload fails after the transfer, unless it replaced a
+     * file already there, so that retrying the upload does not create a renamed copy.
+     */
+    private void removeUploadedFile(OwnCloudClient client) {
+        if (mForceOverwrite) {
+            return;
+        }
+        RemoteOperationResult result = new RemoveRemoteFileOperation(mFile.getRemotePath()).execute(client);
+        if (!result.isSuccess()) {
+            Timber.w("Could not remove %s after a failed upload: %s", mFile.getRemotePath(), result.getCode());
+        }
+    }
+
     /**
      * Checks origin of current upload and network type to decide if should be delayed, according to
      * current user preferences.
@@ -637,13 +782,19 @@ public class UploadFileOperation extends SyncOperation {
                         in = new FileInputStream(sourceFile);
                     }
                     out = new FileOutputStream(targetFile);
-                    int nRead;
-                    byte[] buf = new byte[4096];
-                    while (!mCancellationRequested.get() &&
-                            (nRead = in.read(buf)) > -1) {
-                        out.write(buf, 0, nRead);
+                    MessageDigest digest = null;
+                    try {
+                        digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+                    } catch (NoSuchAlgorithmException e) {
+                        Timber.w("%s not available, copying without checksum", CHECKSUM_ALGORITHM);
                     }
+                    boolean copied = FileStorageUtils.copyStream(in, out, digest, mCancellationRequested);
                     out.flush();
+                    mLocalBytesWritten += targetFile.length();
+                    if (copied && digest != null) {
+                        mChecksum = FileStorageUtils.getChecksum(CHECKSUM_TYPE, digest);
+                        Timber.d("Copied %s with checksum %s", mOriginalStoragePath, mChecksum);
+                    }
 
                 } // else: weird but possible situation, nothing to copy
 
@@ -25,22 +25,33 @@
 package com.owncloud.android.providers
 
 import android.accounts.Account
+import android.accounts.AccountManager
 import android.annotation.TargetApi
+import android.content.BroadcastReceiver
+import android.content.ComponentName
+import android.content.Context
 import android.content.Intent
+import android.content.IntentFilter
+import android.content.ServiceConnection
 import android.content.res.AssetFileDescriptor
 import android.database.Cursor
+import android.graphics.Bitmap
 import android.graphics.Point
 import android.net.Uri
 import android.os.CancellationSignal
 import android.os.Handler
+import android.os.IBinder
 import android.os.ParcelFileDescriptor
 import android.preference.PreferenceManager
 import android.provider.DocumentsContract
 import android.provider.DocumentsProvider
+import android.util.LruCache
+import androidx.localbroadcastmanager.content.LocalBroadcastManager
 import com.owncloud.android.R
 import com.owncloud.android.authentication.AccountUtils
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.files.services.FileDownloader
 import com.owncloud.android.files.services.FileUploader
 import com.owncloud.android.files.services.TransferRequester
@@ -59,22 +70,17 @@ import com.owncloud.android.providers.cursors.RootCursor
 import com.owncloud.android.ui.activity.PassCodeActivity
 import com.owncloud.android.ui.activity.PatternLockActivity
 import com.owncloud.android.ui.notifications.NotificationUtils
+import com.owncloud.android.utils.Extras
 import com.owncloud.android.utils.FileStorageUtils
 import timber.log.Timber
 import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
-import java.util.HashMap
 import java.util.Vector
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
 
 class DocumentsStorageProvider : DocumentsProvider() {
-    /**
-     * If a directory requires to sync, it will write the id of the directory into this variable.
-     * After the sync function gets triggered again over the same directory, it will see that a sync got already
-     * triggered, and does not need to be triggered again. This way a endless loop is prevented.
-     */
-    private var requestedFolderIdForSync: Long = -1
-    private var syncRequired = true
     private var currentStorageManager: FileDataStorageManager? = null
     private lateinit var fileToUpload: OCFile
 
@@ -99,20 +105,13 @@ class DocumentsStorageProvider : DocumentsProvider() {
             ocFile = getFileByIdOrException(docId)
 
             if (!ocFile.isDown) {
-                val intent = Intent(context, FileDownloader::class.java).apply {
-                    putExtra(FileDownloader.KEY_ACCOUNT, getAccountFromFileId(docId))
-                    putExtra(FileDownloader.KEY_FILE, ocFile)
-                }
+                val account = getAccountFromFileId(docId)
+                    ?: throw FileNotFoundException("Account of $documentId not found")
 
-                context?.startService(intent)
+                // Readers get the bytes as they are downloaded; writers need the whole file first
+                if (!isWrite) return openDownloadingDocument(ocFile, account, signal)
 
-                do {
-                    if (!waitOrGetCancelled(signal)) {
-                        return null
-                    }
-                    ocFile = getFileByIdOrException(docId)
-
-                } while (!ocFile.isDown)
+                ocFile = downloadDocument(ocFile, account, signal) ?: return null
             }
         } else {
             ocFile = fileToUpload
@@ -182,27 +181,26 @@ class DocumentsStorageProvider : DocumentsProvider() {
         val resultCursor = FileCursor(projection)
 
         // Create result cursor before syncing folder again, in order to enable faster loading
-        currentStorageManager?.getFolderContent(currentStorageManager?.getFileById(folderId))
-            ?.forEach { file -> resultCursor.addFile(file) }
+        currentStorageManager?.let { storageManager ->
+            storageManager.getFolderRows(folderId).forEach { file ->
+                resultCursor.addFile(file)
+                // The file picker queries the children right after showing them
+                fileIdToAccountName.put(file.fileId, storageManager.account.name)
+            }
+        }
 
         //Create notification listener
         val notifyUri: Uri = toNotifyUri(toUri(parentDocumentId))
         resultCursor.setNotificationUri(context?.contentResolver, notifyUri)
 
         /**
-         * This will start syncing the current folder. User will only see this after updating his view with a
-         * pull down, or by accessing the folder again.
+         * This will start syncing the current folder, unless it was synced recently. The file manager shows it
+         * is loading until the notification sent when the sync finishes makes it query the folder again.
          */
-        if (requestedFolderIdForSync != folderId && syncRequired && currentStorageManager != null) {
-            // register for sync
-            syncDirectoryWithServer(parentDocumentId)
-            requestedFolderIdForSync = folderId
-            resultCursor.setMoreToSync(true)
-        } else {
-            requestedFolderIdForSync = -1
+        if (currentStorageManager != null) {
+            resultCursor.setMoreToSync(syncDirectoryWithServer(parentDocumentId))
         }
 
-        syncRequired = true
         return resultCursor
 
     }
@@ -221,7 +219,11 @@ class DocumentsStorageProvider : DocumentsProvider() {
         }
     }
 
-    override fun onCreate(): Boolean = true
+    override fun onCreate(): Boolean {
+        // Ids may belong to a removed account, or to none after an account is added again
+        AccountManager.get(context).addOnAccountsUpdatedListener({ clearStorageMap() }, null, false)
+        return true
+    }
 
     override fun queryRoots(projection: Array<String>?): Cursor {
         val result = RootCursor(projection)
@@ -251,15 +253,25 @@ class DocumentsStorageProvider : DocumentsProvider() {
         val docId = documentId.toLong()
         updateCurrentStorageManagerIfNeeded(docId)
 
-        val file = getFileById(docId)
+        val file = getFileByIdOrException(docId)
 
-        val realFile = File(file?.storagePath)
+        val px = sizeHint?.let { maxOf(it.x, it.y) } ?: 0
+        val thumbnail = ThumbnailsCacheManager.getThumbnail(file, getAccountFromFileId(docId), px, signal)
+            ?: throw FileNotFoundException("Thumbnail for $documentId not available")
+
+        val pipe = ParcelFileDescriptor.createPipe()
+        Thread {
+            ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]).use { outputStream ->
+                try {
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, outputStream)
+                } catch (e: IOException) {
+                    // Reader went away, nothing to do
+                    Timber.w(e, "Thumbnail for $documentId could not be written")
+                }
+            }
+        }.start()
 
-        return AssetFileDescriptor(
-            ParcelFileDescriptor.open(realFile, ParcelFileDescriptor.MODE_READ_ONLY),
-            0,
-            AssetFileDescriptor.UNKNOWN_LENGTH
-        )
+        return AssetFileDescriptor(pipe[0], 0, AssetFileDescriptor.UNKNOWN_LENGTH)
     }
 
     override fun querySearchDocuments(
@@ -352,7 +364,6 @@ class DocumentsStorageProvider : DocumentsProvider() {
             targetParentFile.remotePath
         ).apply {
             execute(currentStorageManager, context).also { result ->
-                syncRequired = false
                 checkOperationResult(result, targetParentFile.fileId.toString())
                 //Returns the document id of the document copied at the target destination
                 var newPath = targetParentFile.remotePath + sourceFile.fileName
@@ -383,7 +394,6 @@ class DocumentsStorageProvider : DocumentsProvider() {
             targetParentFile.remotePath
         ).apply {
             execute(currentStorageManager, context).also { result ->
-                syncRequired = false
                 checkOperationResult(result, targetParentFile.fileId.toString())
                 //Returns the document id of the document moved to the target destination
                 var newPath = targetParentFile.remotePath + sourceFile.fileName
@@ -401,7 +411,8 @@ class DocumentsStorageProvider : DocumentsProvider() {
             )
             throw FileNotFoundException("Remote Operation failed")
         }
-        syncRequired = false
+        // The operation already updated the folder, no need to sync it when it is queried again
+        folderRefresher.setRefreshed(folderToNotify.toLong())
         notifyChangeInFolder(folderToNotify)
     }
 
@@ -439,64 +450,163 @@ class DocumentsStorageProvider : DocumentsProvider() {
     }
 
     private fun updateCurrentStorageManagerIfNeeded(docId: Long) {
-        if (rootIdToStorageManager.isEmpty()) {
+        if (accountNameToStorageManager.isEmpty()) {
             initiateStorageMap()
         }
-        if (currentStorageManager == null || (
-                    rootIdToStorageManager.containsKey(docId) &&
-                            currentStorageManager !== rootIdToStorageManager[docId])
-        ) {
-            currentStorageManager = rootIdToStorageManager[docId]
-        }
+        getStoreManagerFromFileId(docId)?.let { currentStorageManager = it }
     }
 
     private fun updateCurrentStorageManagerIfNeeded(rootId: String) {
-        if (rootIdToStorageManager.isEmpty()) {
-            return
-        }
-        for (data in rootIdToStorageManager.values) {
-            if (data.account.name == rootId) {
-                currentStorageManager = data
-            }
-        }
+        accountNameToStorageManager[rootId]?.let { currentStorageManager = it }
     }
 
+    /**
+     * Creates a storage manager for every account without one, and keeps the existing ones.
+     */
     private fun initiateStorageMap() {
         for (account in AccountUtils.getAccounts(context)) {
+            if (accountNameToStorageManager.containsKey(account.name)) continue
             val storageManager = FileDataStorageManager(context, account, context.contentResolver)
             val rootDir = storageManager.getFileByPath(OCFile.ROOT_PATH)
-            rootIdToStorageManager[rootDir!!.fileId] = storageManager
+            rootDir?.let { fileIdToAccountName.put(it.fileId, account.name) }
+            accountNameToStorageManager[account.name] = storageManager
         }
     }
 
-    private fun syncDirectoryWithServer(parentDocumentId: String) {
-        Timber.d("Trying to sync $parentDocumentId with server")
+    private fun clearStorageMap() {
+        Timber.d("Accounts changed, clearing storage managers")
+        accountNameToStorageManager.clear()
+        fileIdToAccountName.evictAll()
+        currentStorageManager = null
+    }
+
+    /**
+     * @return 'True' if the folder is being synced.
+     */
+    private fun syncDirectoryWithServer(parentDocumentId: String): Boolean {
         val folderId = parentDocumentId.toLong()
 
-        getFileByIdOrException(folderId)
+        return folderRefresher.refreshIfNeeded(
+            folderId,
+            refresh = {
+                Timber.d("Trying to sync $parentDocumentId with server")
+                val folder = getFileById(folderId)
+                if (folder != null) {
+                    RefreshFolderOperation(
+                        folder,
+                        false,
+                        getAccountFromFileId(folderId),
+                        context
+                    ).apply {
+                        syncVersionAndProfileEnabled(false)
+                        execute(getStoreManagerFromFileId(folderId), context)
+                    }
+                }
+            },
+            onRefreshed = { notifyChangeInFolder(parentDocumentId) }
+        )
+    }
+
+    /**
+     * Downloads a document and streams it while it is downloaded, through a pipe.
+     *
+     * The end of the download is reported by the broadcast of [FileDownloader], and the download is cancelled
+     * through its binder when the reader cancels the request or closes the pipe before the end.
+     */
+    private fun openDownloadingDocument(
+        ocFile: OCFile,
+        account: Account,
+        signal: CancellationSignal?
+    ): ParcelFileDescriptor {
+        val appContext = context?.applicationContext ?: throw FileNotFoundException("No context")
+        val broadcastManager = LocalBroadcastManager.getInstance(appContext)
+
+        var downloaderBinder: FileDownloader.FileDownloaderBinder? = null
+        var bound = false
+        val connection = object : ServiceConnection {
+            override fun onServiceConnected(name: ComponentName, service: IBinder) {
+                downloaderBinder = service as FileDownloader.FileDownloaderBinder
+            }
 
-        val refreshFolderOperation = RefreshFolderOperation(
-            getFileById(folderId),
-            false,
-            getAccountFromFileId(folderId),
-            context
-        ).apply { syncVersionAndProfileEnabled(false) }
+            override fun onServiceDisconnected(name: ComponentName) {
+                downloaderBinder = null
+            }
+        }
 
-        val thread = Thread {
-            refreshFolderOperation.execute(getStoreManagerFromFileId(folderId), context)
-            notifyChangeInFolder(parentDocumentId)
+        lateinit var finishReceiver: BroadcastReceiver
+        val downloadPipe = DownloadPipe(
+            File(FileStorageUtils.getTemporalPath(account.name) + ocFile.remotePath),
+            onCancel = {
+                Timber.d("Cancelling download of ${ocFile.remotePath}, not read anymore")
+                downloaderBinder?.cancel(account, ocFile)
+            },
+            onClose = {
+                broadcastManager.unregisterReceiver(finishReceiver)
+                if (bound) appContext.unbindService(connection)
+            }
+        )
+        finishReceiver = object : BroadcastReceiver() {
+            override fun onReceive(context: Context, intent: Intent) {
+                if (account.name == intent.getStringExtra(Extras.EXTRA_ACCOUNT_NAME) &&
+                    ocFile.remotePath == intent.getStringExtra(Extras.EXTRA_REMOTE_PATH)
+                ) {
+                    downloadPipe.finish(
+                        intent.getBooleanExtra(Extras.EXTRA_DOWNLOAD_RESULT, false),
+                        intent.getStringExtra(Extras.EXTRA_FILE_PATH)?.let { File(it) }
+                    )
+                }
+            }
         }
-        thread.start()
+
+        // Listen before starting, a short download could finish right away
+        broadcastManager.registerReceiver(finishReceiver, IntentFilter(FileDownloader.getDownloadFinishMessage()))
+        bound = appContext.bindService(Intent(appContext, FileDownloader::class.java), connection, 0)
+        startDownload(appContext, ocFile, account)
+
+        return downloadPipe.open(signal)
     }
 
-    private fun waitOrGetCancelled(cancellationSignal: CancellationSignal?): Boolean {
+    /**
+     * Downloads a document and waits for the end of the download, reported by the broadcast of [FileDownloader].
+     *
+     * @return Document after the download, or null if it failed or was cancelled.
+     */
+    private fun downloadDocument(ocFile: OCFile, account: Account, signal: CancellationSignal?): OCFile? {
+        val appContext = context?.applicationContext ?: return null
+        val finished = CountDownLatch(1)
+        var success = false
+        val finishReceiver = object : BroadcastReceiver() {
+            override fun onReceive(context: Context, intent: Intent) {
+                if (account.name == intent.getStringExtra(Extras.EXTRA_ACCOUNT_NAME) &&
+                    ocFile.remotePath == intent.getStringExtra(Extras.EXTRA_REMOTE_PATH)
+                ) {
+                    success = intent.getBooleanExtra(Extras.EXTRA_DOWNLOAD_RESULT, false)
+                    finished.countDown()
+                }
+            }
+        }
+        val broadcastManager = LocalBroadcastManager.getInstance(appContext)
+        broadcastManager.registerReceiver(finishReceiver, IntentFilter(FileDownloader.getDownloadFinishMessage()))
+        signal?.setOnCancelListener { finished.countDown() }
         try {
-            Thread.sleep(1000)
+            startDownload(appContext, ocFile, account)
+            finished.await()
         } catch (e: InterruptedException) {
-            return false
+            return null
+        } finally {
+            broadcastManager.unregisterReceiver(finishReceiver)
+            signal?.setOnCancelListener(null)
         }
 
-        return cancellationSignal == null || !cancellationSignal.isCanceled
+        return if (success) getFileById(ocFile.fileId) else null
+    }
+
+    private fun startDownload(context: Context, ocFile: OCFile, account: Account) {
+        val intent = Intent(context, FileDownloader::class.java).apply {
+            putExtra(FileDownloader.KEY_ACCOUNT, account)
+            putExtra(FileDownloader.KEY_FILE, ocFile)
+        }
+        context.startService(intent)
     }
 
     private fun findFiles(root: OCFile, query: String): Vector<OCFile> {
@@ -531,23 +641,18 @@ class DocumentsStorageProvider : DocumentsProvider() {
     private fun getAccountFromFileId(id: Long): Account? = getStoreManagerFromFileId(id)?.account
 
     private fun getStoreManagerFromFileId(id: Long): FileDataStorageManager? {
-        // If file is found in current storage manager, return it
-        currentStorageManager?.getFileById(id)?.let { return currentStorageManager }
-
-        //  Else, look for it in other ones
-        var fileFromOtherStorageManager: OCFile?
-        var otherStorageManager: FileDataStorageManager? = null
-        for (key in rootIdToStorageManager.keys) {
-            otherStorageManager = rootIdToStorageManager[key]
-            // Skip current storage manager, already checked
-            if (otherStorageManager == currentStorageManager) continue
-            fileFromOtherStorageManager = otherStorageManager?.getFileById(id)
-            if (fileFromOtherStorageManager != null) {
-                Timber.d("File with id $id found in storage manager: $otherStorageManager")
-                break
-            }
+        fileIdToAccountName.get(id)?.let { accountName ->
+            return accountNameToStorageManager[accountName]
+        }
+
+        // Ids are unique among accounts, a single query finds the owner of the file
+        val anyStorageManager = currentStorageManager ?: accountNameToStorageManager.values.firstOrNull()
+        val accountName = anyStorageManager?.getAccountNameOfFile(id) ?: return null
+        fileIdToAccountName.put(id, accountName)
+        if (!accountNameToStorageManager.containsKey(accountName)) {
+            initiateStorageMap()
         }
-        return otherStorageManager
+        return accountNameToStorageManager[accountName]
     }
 
     private fun getFileByPathOrException(path: String): OCFile =
@@ -556,7 +661,11 @@ class DocumentsStorageProvider : DocumentsProvider() {
     private fun getFileByPath(path: String): OCFile? = currentStorageManager?.getFileByPath(path)
 
     companion object {
-        private var rootIdToStorageManager: MutableMap<Long, FileDataStorageManager> = HashMap()
+        private val accountNameToStorageManager: MutableMap<String, FileDataStorageManager> = ConcurrentHashMap()
+        private val fileIdToAccountName = LruCache<Long, String>(FILE_ID_CACHE_SIZE)
+        private val folderRefresher = FolderRefresher()
         const val NONEXISTENT_DOCUMENT_ID = "-1"
+        private const val THUMBNAIL_QUALITY = 80
+        private const val FILE_ID_CACHE_SIZE = 10000
     }
 }
@@ -0,0 +1,206 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers
+
+import android.os.CancellationSignal
+import android.os.FileObserver
+import android.os.ParcelFileDescriptor
+import android.os.SystemClock
+import timber.log.Timber
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Streams a file that is still being downloaded through a pipe, so that the client of [DocumentsStorageProvider]
+ * can read its first bytes without waiting for the whole download.
+ *
+ * The bytes are read from the temporary file of the download as they are written to it. The writer thread sleeps
+ * until a [FileObserver] reports new data or [finish] is called with the result of the download; the end of the
+ * stream is only reported to the reader once the download succeeded, and an error is reported if it failed.
+ *
+ * @param downloadingFile Temporary file the download writes to; it does not need to exist yet.
+ * @param onCancel        Called to cancel the download when the reader cancels or closes the pipe too early.
+ * @param onClose         Called from the writer thread once the pipe is closed, whatever the result.
+ */
+class DownloadPipe(
+    private val downloadingFile: File,
+    private val onCancel: () -> Unit,
+    private val onClose: () -> Unit
+) {
+    private val lock = Object()
+
+    // guarded by lock
+    private var state = State.DOWNLOADING
+    private var downloadedFile: File? = null
+    private var pendingEvent = false
+
+    private enum class State { DOWNLOADING, SUCCEEDED, FAILED, CANCELLED }
+
+    /**
+     * Starts streaming.
+     *
+     * @param signal Signal the reader cancels the request with, may be null.
+     * @return Read side of the pipe.
+     */
+    fun open(signal: CancellationSignal?): ParcelFileDescriptor {
+        val pipe = ParcelFileDescriptor.createReliablePipe()
+        signal?.setOnCancelListener { cancel() }
+        Thread({ stream(pipe[1], SystemClock.elapsedRealtime()) }, "DownloadPipe").start()
+        return pipe[0]
+    }
+
+    /**
+     * Reports the end of the download.
+     *
+     * @param success        'True' if the download succeeded.
+     * @param downloadedFile Final location of the downloaded file, where it is moved from the temporary one.
+     */
+    fun finish(success: Boolean, downloadedFile: File?) {
+        synchronized(lock) {
+            if (state == State.DOWNLOADING) {
+                state = if (success) State.SUCCEEDED else State.FAILED
+                this.downloadedFile = downloadedFile
+            }
+            notifyEvent()
+        }
+    }
+
+    private fun cancel() {
+        synchronized(lock) {
+            if (state != State.DOWNLOADING) {
+                return
+            }
+            state = State.CANCELLED
+            notifyEvent()
+        }
+        onCancel()
+    }
+
+    private fun notifyEvent() {
+        synchronized(lock) {
+            pendingEvent = true
+            lock.notifyAll()
+        }
+    }
+
+    private fun stream(output: ParcelFileDescriptor, start: Long) {
+        var input: FileInputStream? = null
+        var observer: FileObserver? = null
+        var transferred = 0L
+        var error: String? = null
+        try {
+            // not closed, the pipe is closed below with the result of the streaming
+            val outputStream = FileOutputStream(output.fileDescriptor)
+            val buffer = ByteArray(BUFFER_SIZE)
+            while (true) {
+                // take the state before reading, so that a finished download is read until its very end
+                val (currentState, currentDownloadedFile) = synchronized(lock) {
+                    pendingEvent = false
+                    Pair(state, downloadedFile)
+                }
+                if (currentState == State.FAILED || currentState == State.CANCELLED) {
+                    error = "Download ${currentState.name.toLowerCase()}"
+                    break
+                }
+
+                if (input == null) {
+                    // a finished download is not in the temporary file anymore
+                    val source = if (currentState == State.SUCCEEDED) currentDownloadedFile else downloadingFile
+                    if (source != null && source.exists()) {
+                        input = FileInputStream(source)
+                        if (currentState == State.DOWNLOADING) {
+                            observer = DataObserver(source.absolutePath).apply { startWatching() }
+                        }
+                    }
+                }
+
+                input?.let {
+                    if (it.channel.size() < transferred) {
+                        // the download started again over the bytes already sent
+                        throw IOException("${downloadingFile.name} was truncated while streaming it")
+                    }
+                    var read = it.read(buffer)
+                    while (read > 0) {
+                        outputStream.write(buffer, 0, read)
+                        if (transferred == 0L) {
+                            Timber.d(
+                                "First byte of %s streamed after %d ms",
+                                downloadingFile.name, SystemClock.elapsedRealtime() - start
+                            )
+                        }
+                        transferred += read
+                        read = it.read(buffer)
+                    }
+                }
+
+                if (currentState == State.SUCCEEDED) {
+                    if (input == null) {
+                        error = "Downloaded file not found"
+                    }
+                    break
+                }
+
+                synchronized(lock) {
+                    if (!pendingEvent && state == State.DOWNLOADING) {
+                        // the observer can not watch a file that does not exist yet
+                        lock.wait(if (input == null) WAIT_FOR_FILE_MS else WAIT_FOR_DATA_MS)
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            // the reader closed the pipe, or the file could not be read
+            Timber.w(e, "Streaming of %s stopped after %d bytes", downloadingFile.name, transferred)
+            error = e.message ?: "I/O error"
+            cancel()
+        } catch (e: InterruptedException) {
+            error = "Interrupted"
+            cancel()
+        } finally {
+            observer?.stopWatching()
+            input?.close()
+            try {
+                if (error == null) output.close() else output.closeWithError(error)
+            } catch (e: IOException) {
+                Timber.w(e, "Pipe of %s could not be closed", downloadingFile.name)
+            }
+            Timber.d(
+                "Streamed %d bytes of %s in %d ms",
+                transferred, downloadingFile.name, SystemClock.elapsedRealtime() - start
+            )
+            onClose()
+        }
+    }
+
+    /**
+     * Wakes up the writer thread when the download writes to the file.
+     */
+    private inner class DataObserver(path: String) : FileObserver(path, MODIFY or CLOSE_WRITE or MOVE_SELF) {
+        override fun onEvent(event: Int, path: String?) {
+            notifyEvent()
+        }
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val WAIT_FOR_FILE_MS = 100L
+        private const val WAIT_FOR_DATA_MS = 1000L
+    }
+}
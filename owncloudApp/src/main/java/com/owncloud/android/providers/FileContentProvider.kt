@@ -1007,6 +1007,27 @@ class FileContentProvider(val executors: Executors = Executors()) : ContentProvi
                 }
             }
 
+            if (oldVersion < 29 && newVersion >= 29) {
+                Timber.i("SQL : Entering in the #29 ADD bytes saved and checksum in uploads")
+                db.beginTransaction()
+                try {
+                    db.execSQL(
+                        "ALTER TABLE " + ProviderTableMeta.UPLOADS_TABLE_NAME +
+                                " ADD COLUMN " + ProviderTableMeta.UPLOADS_BYTES_SAVED + " INTEGER " +
+                                " DEFAULT 0"
+                    )
+                    db.execSQL(
+                        "ALTER TABLE " + ProviderTableMeta.UPLOADS_TABLE_NAME +
+                                " ADD COLUMN " + ProviderTableMeta.UPLOADS_CHECKSUM + " TEXT " +
+                                " DEFAULT NULL"
+                    )
+                    db.setTransactionSuccessful()
+                    upgraded = true
+                } finally {
+                    db.endTransaction()
+                }
+            }
+
             if (oldVersion < 30 && newVersion >= 30) {
                 Timber.i("SQL : Entering in the #30 ADD chunking capability")
                 db.beginTransaction()
@@ -1143,7 +1164,11 @@ class FileContentProvider(val executors: Executors = Executors()) : ContentProvi
 
                     + ProviderTableMeta.UPLOADS_CREATED_BY + " INTEGER, "     // Upload createdBy
 
-                    + ProviderTableMeta.UPLOADS_TRANSFER_ID + " TEXT );"    // Upload chunkedUploadId
+                    + ProviderTableMeta.UPLOADS_TRANSFER_ID + " TEXT, "    // Upload chunkedUploadId
+
+                    + ProviderTableMeta.UPLOADS_BYTES_SAVED + " INTEGER DEFAULT 0, "    // by downscaling
+
+                    + ProviderTableMeta.UPLOADS_CHECKSUM + " TEXT );"    // of the contents uploaded
         )
     }
 
@@ -1491,6 +1516,8 @@ class FileContentProvider(val executors: Executors = Executors()) : ContentProvi
             uploadProjectionMap[ProviderTableMeta.UPLOADS_LAST_RESULT] = ProviderTableMeta.UPLOADS_LAST_RESULT
             uploadProjectionMap[ProviderTableMeta.UPLOADS_CREATED_BY] = ProviderTableMeta.UPLOADS_CREATED_BY
             uploadProjectionMap[ProviderTableMeta.UPLOADS_TRANSFER_ID] = ProviderTableMeta.UPLOADS_TRANSFER_ID
+            uploadProjectionMap[ProviderTableMeta.UPLOADS_BYTES_SAVED] = ProviderTableMeta.UPLOADS_BYTES_SAVED
+            uploadProjectionMap[ProviderTableMeta.UPLOADS_CHECKSUM] = ProviderTableMeta.UPLOADS_CHECKSUM
         }
 
         private val cameraUploadSyncProjectionMap = HashMap<String, String>()
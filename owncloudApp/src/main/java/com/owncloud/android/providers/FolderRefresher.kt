@@ -0,0 +1,114 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers
+
+import android.os.SystemClock
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Coalesces the refreshes of folders requested by [DocumentsStorageProvider], that file managers query again
+ * and again while they are shown.
+ *
+ * A folder is refreshed by a single task at a time, and not again until [freshnessWindowMs] after the last
+ * refresh finished; requests meanwhile are ignored. Refreshes older than the window are forgotten, so only the
+ * folders refreshed recently are tracked.
+ */
+class FolderRefresher(
+    private val freshnessWindowMs: Long = FRESHNESS_WINDOW_MS,
+    private val executor: Executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REFRESHES),
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() }
+) {
+    // guarded by this
+    private val refreshing = HashSet<Long>()
+    // in the order they were refreshed, oldest first
+    private val lastRefreshes = LinkedHashMap<Long, Long>()
+
+    /**
+     * Number of folders refreshed within the freshness window.
+     */
+    internal val recentRefreshCount: Int
+        @Synchronized get() {
+            forgetExpiredRefreshes()
+            return lastRefreshes.size
+        }
+
+    /**
+     * Refreshes a folder in background, unless it is already being refreshed or was refreshed recently.
+     *
+     * @param folderId    Id of the folder.
+     * @param refresh     Refreshes the folder; runs in a background thread.
+     * @param onRefreshed Called from the background thread after the refresh, to notify about it.
+     * @return 'True' if the folder is being refreshed, so the content about to be shown may change soon.
+     */
+    @Synchronized
+    fun refreshIfNeeded(folderId: Long, refresh: () -> Unit, onRefreshed: () -> Unit): Boolean {
+        if (refreshing.contains(folderId)) {
+            return true
+        }
+        forgetExpiredRefreshes()
+        val lastRefresh = lastRefreshes[folderId]
+        if (lastRefresh != null && clock() - lastRefresh < freshnessWindowMs) {
+            return false
+        }
+
+        refreshing.add(folderId)
+        executor.execute {
+            try {
+                refresh()
+            } finally {
+                // a failed refresh is not retried before the window either, not to insist on an unreachable server
+                synchronized(this) {
+                    refreshing.remove(folderId)
+                    recordRefresh(folderId)
+                }
+                onRefreshed()
+            }
+        }
+        return true
+    }
+
+    /**
+     * Records a folder as up to date, because the changes made to it on the server are already in the database.
+     */
+    @Synchronized
+    fun setRefreshed(folderId: Long) {
+        recordRefresh(folderId)
+    }
+
+    private fun recordRefresh(folderId: Long) {
+        // moved to the end, keeping the map in the order of the refreshes
+        lastRefreshes.remove(folderId)
+        lastRefreshes[folderId] = clock()
+        forgetExpiredRefreshes()
+    }
+
+    private fun forgetExpiredRefreshes() {
+        val now = clock()
+        val iterator = lastRefreshes.values.iterator()
+        while (iterator.hasNext() && now - iterator.next() >= freshnessWindowMs) {
+            iterator.remove()
+        }
+    }
+
+    companion object {
+        private const val FRESHNESS_WINDOW_MS = 30_000L
+        private const val MAX_CONCURRENT_REFRESHES = 2
+    }
+}
@@ -26,6 +26,7 @@ import android.os.Bundle
 import android.provider.DocumentsContract
 import android.provider.DocumentsContract.Document
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.OCFileRow
 import com.owncloud.android.utils.MimetypeIconUtil
 
 class FileCursor(projection: Array<String>?) : MatrixCursor(projection ?: DEFAULT_DOCUMENT_PROJECTION) {
@@ -37,11 +38,27 @@ class FileCursor(projection: Array<String>?) : MatrixCursor(projection ?: DEFAUL
         cursorExtras = Bundle().apply { putBoolean(DocumentsContract.EXTRA_LOADING, hasMoreToSync) }
     }
 
-    fun addFile(file: OCFile) {
-        val iconRes = MimetypeIconUtil.getFileTypeIconId(file.mimetype, file.fileName)
-        val mimeType = if (file.isFolder) Document.MIME_TYPE_DIR else file.mimetype
-        val imagePath = if (file.isImage && file.isDown) file.storagePath else null
-        var flags = if (imagePath != null) Document.FLAG_SUPPORTS_THUMBNAIL else 0
+    fun addFile(file: OCFile) =
+        addRow(file.fileId, file.fileName, file.mimetype, file.isFolder, file.isImage, file.fileLength,
+            file.modificationTimestamp)
+
+    fun addFile(row: OCFileRow) =
+        addRow(row.fileId, row.fileName, row.mimeType, row.isFolder, row.isImage, row.fileLength,
+            row.modificationTimestamp)
+
+    private fun addRow(
+        fileId: Long,
+        fileName: String,
+        fileMimeType: String?,
+        isFolder: Boolean,
+        isImage: Boolean,
+        fileLength: Long,
+        modificationTimestamp: Long
+    ) {
+        val iconRes = MimetypeIconUtil.getFileTypeIconId(fileMimeType, fileName)
+        val mimeType = if (isFolder) Document.MIME_TYPE_DIR else fileMimeType
+        // Thumbnails of images not downloaded yet are fetched from the server
+        var flags = if (isImage) Document.FLAG_SUPPORTS_THUMBNAIL else 0
 
         flags = flags or Document.FLAG_SUPPORTS_DELETE or Document.FLAG_SUPPORTS_WRITE
 
@@ -57,10 +74,10 @@ class FileCursor(projection: Array<String>?) : MatrixCursor(projection ?: DEFAUL
         }
 
         newRow()
-            .add(Document.COLUMN_DOCUMENT_ID, file.fileId.toString())
-            .add(Document.COLUMN_DISPLAY_NAME, file.fileName)
-            .add(Document.COLUMN_LAST_MODIFIED, file.modificationTimestamp)
-            .add(Document.COLUMN_SIZE, file.fileLength)
+            .add(Document.COLUMN_DOCUMENT_ID, fileId.toString())
+            .add(Document.COLUMN_DISPLAY_NAME, fileName)
+            .add(Document.COLUMN_LAST_MODIFIED, modificationTimestamp)
+            .add(Document.COLUMN_SIZE, fileLength)
             .add(Document.COLUMN_FLAGS, flags)
             .add(Document.COLUMN_ICON, iconRes)
             .add(Document.COLUMN_MIME_TYPE, mimeType)
@@ -301,6 +301,16 @@ public abstract class BaseActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Replaces the message of the loading dialog, if shown
+     */
+    public void updateLoadingDialog(CharSequence message) {
+        Fragment frag = getSupportFragmentManager().findFragmentByTag(DIALOG_WAIT_TAG);
+        if (frag != null) {
+            ((LoadingDialog) frag).setMessage(message);
+        }
+    }
+
     /**
      * Dismiss loading dialog
      */
@@ -84,6 +84,8 @@ public class Preferences extends PreferenceActivity {
     private static final String PREFERENCE_CAMERA_PICTURE_UPLOADS_PATH = "camera_picture_uploads_path";
     private static final String PREFERENCE_CAMERA_UPLOADS_CATEGORY = "camera_uploads_category";
     private static final String PREFERENCE_CAMERA_PICTURE_UPLOADS_ON_WIFI = "camera_picture_uploads_on_wifi";
+    private static final String PREFERENCE_CAMERA_PICTURE_UPLOADS_MAX_SIZE = "camera_picture_uploads_max_size";
+    private static final String PREFERENCE_CAMERA_PICTURE_UPLOADS_QUALITY = "camera_picture_uploads_quality";
     private static final String PREFERENCE_CAMERA_VIDEO_UPLOADS = "camera_video_uploads";
     private static final String PREFERENCE_CAMERA_VIDEO_UPLOADS_PATH = "camera_video_uploads_path";
     private static final String PREFERENCE_CAMERA_VIDEO_UPLOADS_ON_WIFI = "camera_video_uploads_on_wifi";
@@ -106,6 +108,8 @@ public class Preferences extends PreferenceActivity {
     private CheckBoxPreference mPrefCameraPictureUploads;
     private Preference mPrefCameraPictureUploadsPath;
     private Preference mPrefCameraPictureUploadsWiFi;
+    private Preference mPrefCameraPictureUploadsMaxSize;
+    private Preference mPrefCameraPictureUploadsQuality;
     private CheckBoxPreference mPrefCameraVideoUploads;
     private Preference mPrefCameraVideoUploadsPath;
     private Preference mPrefCameraVideoUploadsWiFi;
@@ -200,6 +204,8 @@ public class Preferences extends PreferenceActivity {
         mPrefCameraUploadsCategory = (PreferenceCategory) findPreference(PREFERENCE_CAMERA_UPLOADS_CATEGORY);
 
         mPrefCameraPictureUploadsWiFi = findPreference(PREFERENCE_CAMERA_PICTURE_UPLOADS_ON_WIFI);
+        mPrefCameraPictureUploadsMaxSize = findPreference(PREFERENCE_CAMERA_PICTURE_UPLOADS_MAX_SIZE);
+        mPrefCameraPictureUploadsQuality = findPreference(PREFERENCE_CAMERA_PICTURE_UPLOADS_QUALITY);
 
         toggleCameraUploadsPictureOptions(true, mPrefCameraPictureUploads.isChecked());
 
@@ -559,6 +565,8 @@ public class Preferences extends PreferenceActivity {
     private void toggleCameraUploadsPictureOptions(Boolean initializing, Boolean isChecked) {
         if (isChecked) {
             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsWiFi);
+            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsMaxSize);
+            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsQuality);
             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsPath);
             if (!initializing) {
                 showSimpleDialog(getString(R.string.proper_pics_folder_warning_camera_upload));
@@ -571,22 +579,30 @@ public class Preferences extends PreferenceActivity {
                         .setNegativeButton(getString(R.string.common_no), (dialog, which) -> {
                             mPrefCameraPictureUploads.setChecked(true);
                             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsWiFi);
+                            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsMaxSize);
+                            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsQuality);
                             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsPath);
                         })
                         .setOnCancelListener(dialog -> {
                             mPrefCameraPictureUploads.setChecked(true);
                             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsWiFi);
+                            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsMaxSize);
+                            mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsQuality);
                             mPrefCameraUploadsCategory.addPreference(mPrefCameraPictureUploadsPath);
                         })
                         .setPositiveButton(getString(R.string.common_yes), (dialog, which) -> {
                             mPrefCameraPictureUploads.setChecked(false);
                             mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsWiFi);
+                            mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsMaxSize);
+                            mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsQuality);
                             mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsPath);
                             mCameraUploadsHandler.updatePicturesLastSync(getApplicationContext(), 0);
                         })
                         .show();
             } else {
                 mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsWiFi);
+                mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsMaxSize);
+                mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsQuality);
                 mPrefCameraUploadsCategory.removePreference(mPrefCameraPictureUploadsPath);
             }
         }
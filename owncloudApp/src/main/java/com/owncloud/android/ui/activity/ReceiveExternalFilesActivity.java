@@ -788,6 +788,16 @@ public class ReceiveExternalFilesActivity extends FileActivity
         }
     }
 
+    /**
+     * Report the progress of CopyAndUploadContentUrisTask
+     */
+    @Override
+    public void onTmpFileCopied(int copiedFiles, int totalFiles) {
+        updateLoadingDialog(
+                getString(R.string.wait_for_tmp_copy_from_private_storage_progress, copiedFiles, totalFiles)
+        );
+    }
+
     /**
      * Process the result of CopyAndUploadContentUrisTask
      */
@@ -52,6 +52,7 @@ import com.owncloud.android.lib.common.operations.RemoteOperation;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.operations.CheckCurrentCredentialsOperation;
 import com.owncloud.android.ui.fragment.UploadListFragment;
+import com.owncloud.android.utils.Extras;
 import com.owncloud.android.utils.MimetypeIconUtil;
 import timber.log.Timber;
 
@@ -324,7 +325,12 @@ public class UploadListActivity extends FileActivity implements UploadListFragme
             UploadListFragment uploadListFragment =
                     (UploadListFragment) getSupportFragmentManager().findFragmentByTag(TAG_UPLOAD_LIST_FRAGMENT);
 
-            uploadListFragment.updateUploads();
+            if (intent.hasExtra(Extras.EXTRA_UPLOAD_ID)) {
+                // a single upload started or finished
+                uploadListFragment.updateUpload(intent.getLongExtra(Extras.EXTRA_UPLOAD_ID, -1));
+            } else {
+                uploadListFragment.updateUploads();
+            }
         }
     }
 
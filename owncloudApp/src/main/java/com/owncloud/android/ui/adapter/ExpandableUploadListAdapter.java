@@ -58,8 +58,14 @@ import timber.log.Timber;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -69,9 +75,13 @@ import static com.owncloud.android.db.PreferenceManager.PREF__CAMERA_UPLOADS_DEF
  * This Adapter populates a ListView with following types of uploads: pending,
  * active, completed. Filtering possible.
  *
+ * Uploads are kept in memory, indexed by id, so that a change in a single upload only reloads and moves that
+ * upload. Finished uploads are loaded by pages, while the list is scrolled.
  */
 public class ExpandableUploadListAdapter extends BaseExpandableListAdapter implements Observer {
 
+    private static final int FINISHED_UPLOADS_PAGE_SIZE = 20;
+
     private FileActivity mParentActivity;
 
     private UploadsStorageManager mUploadsStorageManager;
@@ -83,22 +93,71 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
     }
 
     abstract class UploadGroup implements Refresh {
-        OCUpload[] items;
+        List<OCUpload> items;
         String name;
 
         UploadGroup(String groupName) {
             this.name = groupName;
-            items = new OCUpload[0];
+            items = new ArrayList<>();
         }
 
         String getGroupName() {
             return name;
         }
 
+        /**
+         * @return Number of uploads in the group, loaded or not.
+         */
         int getGroupCount() {
-            return items == null ? 0 : items.length;
+            return items.size();
+        }
+
+        /**
+         * @return 'True' if the upload belongs to this group according to its status.
+         */
+        abstract boolean accepts(OCUpload upload);
+
+        /**
+         * Inserts an upload of the group keeping the order of the items.
+         *
+         * @return 'True' if the upload was loaded in the items.
+         */
+        boolean add(OCUpload upload) {
+            int position = Collections.binarySearch(items, upload, comparator);
+            items.add(position < 0 ? -position - 1 : position, upload);
+            return true;
+        }
+
+        void remove(long uploadId) {
+            Iterator<OCUpload> iterator = items.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getUploadId() == uploadId) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+
+        boolean hasMoreItems() {
+            return false;
+        }
+
+        /**
+         * Loads the next page of items, if the group is paged.
+         */
+        void loadMoreItems() {
         }
 
+        /**
+         * Updates the number of uploads in the group after a single upload changed, if not all of them are loaded.
+         */
+        void refreshCount() {
+        }
+
+        /**
+         * Order of the items, only on stored fields, so that the items stay sorted while uploads start and finish
+         * in the service; the upload being transferred now is told apart in its view.
+         */
         Comparator<OCUpload> comparator = new Comparator<OCUpload>() {
 
             @Override
@@ -107,15 +166,8 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                     if (!upload2.getUploadStatus().equals(UploadStatus.UPLOAD_IN_PROGRESS)) {
                         return -1;
                     }
-                    // both are in progress
-                    FileUploader.FileUploaderBinder binder = mParentActivity.getFileUploaderBinder();
-                    if (binder != null) {
-                        if (binder.isUploadingNow(upload1)) {
-                            return -1;
-                        } else if (binder.isUploadingNow(upload2)) {
-                            return 1;
-                        }
-                    }
+                    // both are in progress, in the order they were requested
+                    return compareUploadId(upload1, upload2);
                 } else if (upload2.getUploadStatus().equals(UploadStatus.UPLOAD_IN_PROGRESS)) {
                     return 1;
                 }
@@ -140,6 +192,13 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
 
     private UploadGroup[] mUploadGroups;
 
+    /**
+     * Group of every loaded upload, by upload id.
+     */
+    private Map<Long, UploadGroup> mGroupByUploadId = new HashMap<>();
+
+    private boolean mLoadingMoreItems = false;
+
     public ExpandableUploadListAdapter(FileActivity parentActivity) {
         Timber.d("ExpandableUploadListAdapter");
         mParentActivity = parentActivity;
@@ -148,8 +207,15 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
         mUploadGroups[0] = new UploadGroup(mParentActivity.getString(R.string.uploads_view_group_current_uploads)) {
             @Override
             public void refresh() {
-                items = mUploadsStorageManager.getCurrentAndPendingUploads();
-                Arrays.sort(items, comparator);
+                OCUpload[] uploads = mUploadsStorageManager.getCurrentAndPendingUploads();
+                Arrays.sort(uploads, comparator);
+                items = new ArrayList<>(Arrays.asList(uploads));
+            }
+
+            @Override
+            boolean accepts(OCUpload upload) {
+                return upload.getUploadStatus() == UploadStatus.UPLOAD_IN_PROGRESS ||
+                        upload.getLastResult() == UploadResult.DELAYED_FOR_WIFI;
             }
 
             @Override
@@ -160,8 +226,15 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
         mUploadGroups[1] = new UploadGroup(mParentActivity.getString(R.string.uploads_view_group_failed_uploads)) {
             @Override
             public void refresh() {
-                items = mUploadsStorageManager.getFailedButNotDelayedForWifiUploads();
-                Arrays.sort(items, comparator);
+                OCUpload[] uploads = mUploadsStorageManager.getFailedButNotDelayedForWifiUploads();
+                Arrays.sort(uploads, comparator);
+                items = new ArrayList<>(Arrays.asList(uploads));
+            }
+
+            @Override
+            boolean accepts(OCUpload upload) {
+                return upload.getUploadStatus() == UploadStatus.UPLOAD_FAILED &&
+                        upload.getLastResult() != UploadResult.DELAYED_FOR_WIFI;
             }
 
             @Override
@@ -171,10 +244,72 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
 
         };
         mUploadGroups[2] = new UploadGroup(mParentActivity.getString(R.string.uploads_view_group_finished_uploads)) {
+            private int mCount = 0;
+
+            /**
+             * Reloads as many finished uploads as were loaded before, at least one page.
+             */
             @Override
             public void refresh() {
-                items = mUploadsStorageManager.getFinishedUploads();
-                Arrays.sort(items, comparator);
+                mCount = mUploadsStorageManager.getFinishedUploadsCount();
+                int limit = Math.max(items.size(), FINISHED_UPLOADS_PAGE_SIZE);
+                items = new ArrayList<>(Arrays.asList(mUploadsStorageManager.getFinishedUploads(0, limit)));
+            }
+
+            @Override
+            int getGroupCount() {
+                return mCount;
+            }
+
+            @Override
+            boolean accepts(OCUpload upload) {
+                return upload.getUploadStatus() == UploadStatus.UPLOAD_SUCCEEDED;
+            }
+
+            /**
+             * Uploads that would be placed after the last one loaded are left to the next pages.
+             */
+            @Override
+            boolean add(OCUpload upload) {
+                int position = Collections.binarySearch(items, upload, comparator);
+                if (position < 0) {
+                    position = -position - 1;
+                }
+                if (position == items.size() && hasMoreItems()) {
+                    return false;
+                }
+                items.add(position, upload);
+                return true;
+            }
+
+            /**
+             * Counted again in the database, since changes in the uploads not loaded yet are not tracked.
+             */
+            @Override
+            void refreshCount() {
+                mCount = mUploadsStorageManager.getFinishedUploadsCount();
+            }
+
+            @Override
+            boolean hasMoreItems() {
+                return items.size() < mCount;
+            }
+
+            @Override
+            void loadMoreItems() {
+                OCUpload[] page = mUploadsStorageManager.getFinishedUploads(items.size(), FINISHED_UPLOADS_PAGE_SIZE);
+                for (OCUpload upload : page) {
+                    // skip the uploads already loaded if others were removed meanwhile
+                    if (!mGroupByUploadId.containsKey(upload.getUploadId())) {
+                        items.add(upload);
+                        mGroupByUploadId.put(upload.getUploadId(), this);
+                    }
+                }
+                if (page.length < FINISHED_UPLOADS_PAGE_SIZE) {
+                    // no more finished uploads stored, whatever the count said
+                    mCount = items.size();
+                }
+                Timber.d("Loaded %d finished uploads, %d of %d", page.length, items.size(), mCount);
             }
 
             @Override
@@ -205,7 +340,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
         return true;
     }
 
-    private View getView(OCUpload[] uploadsItems, int position, View convertView, ViewGroup parent) {
+    private View getView(List<OCUpload> uploadsItems, int position, View convertView, ViewGroup parent) {
         View view = convertView;
         if (view == null) {
             LayoutInflater inflator =
@@ -219,8 +354,8 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
             );
         }
 
-        if (uploadsItems != null && uploadsItems.length > position) {
-            final OCUpload upload = uploadsItems[position];
+        if (uploadsItems != null && uploadsItems.size() > position) {
+            final OCUpload upload = uploadsItems.get(position);
 
             // local file name
             TextView fileTextView = view.findViewById(R.id.upload_name);
@@ -242,6 +377,12 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
             // file size
             TextView fileSizeTextView = view.findViewById(R.id.upload_file_size);
             String fileSize = DisplayUtils.bytesToHumanReadable(upload.getFileSize(), mParentActivity) + ", ";
+            if (upload.getBytesSaved() > 0) {
+                fileSize = mParentActivity.getString(
+                        R.string.uploads_view_bytes_saved,
+                        DisplayUtils.bytesToHumanReadable(upload.getBytesSaved(), mParentActivity)
+                ) + ", " + fileSize;
+            }
             fileSizeTextView.setText(fileSize);
 
             //* upload date
@@ -345,7 +486,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                     FileUploader.FileUploaderBinder uploaderBinder = mParentActivity.getFileUploaderBinder();
                     if (uploaderBinder != null) {
                         uploaderBinder.cancel(upload);
-                        refreshView();
+                        refreshUpload(upload.getUploadId());
                     }
                 });
 
@@ -354,8 +495,8 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                 rightButton.setImageResource(R.drawable.ic_action_delete_grey);
                 rightButton.setVisibility(View.VISIBLE);
                 rightButton.setOnClickListener(v -> {
+                    // the upload is removed from the list when the storage manager notifies it
                     mUploadsStorageManager.removeUpload(upload);
-                    refreshView();
                 });
 
             } else {    // UploadStatus.UPLOAD_SUCCESS
@@ -378,7 +519,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
                             if (file.exists()) {
                                 TransferRequester requester = new TransferRequester();
                                 requester.retry(mParentActivity, upload, false);
-                                refreshView();
+                                refreshUpload(upload.getUploadId());
                             } else {
                                 Snackbar snackbar = Snackbar.make(
                                         v.getRootView().findViewById(android.R.id.content),
@@ -615,7 +756,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
 
     @Override
     public boolean hasStableIds() {
-        return false;
+        return true;
     }
 
     /**
@@ -624,17 +765,60 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
     private void loadUploadItemsFromDb() {
         Timber.d("loadUploadItemsFromDb");
 
+        mGroupByUploadId.clear();
         for (UploadGroup group : mUploadGroups) {
             group.refresh();
+            for (OCUpload upload : group.items) {
+                mGroupByUploadId.put(upload.getUploadId(), group);
+            }
+        }
+
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Load a single upload from {@link UploadsStorageManager}, moving it to the group matching its current
+     * status, or removing it if it is not stored anymore.
+     *
+     * @param uploadId Id of the upload to load.
+     */
+    private void loadUploadItemFromDb(long uploadId) {
+        Timber.d("loadUploadItemFromDb %d", uploadId);
+
+        UploadGroup oldGroup = mGroupByUploadId.remove(uploadId);
+        if (oldGroup != null) {
+            oldGroup.remove(uploadId);
+        }
+
+        OCUpload upload = mUploadsStorageManager.getUpload(uploadId);
+        if (upload != null) {
+            for (UploadGroup group : mUploadGroups) {
+                if (group.accepts(upload)) {
+                    if (group.add(upload)) {
+                        mGroupByUploadId.put(uploadId, group);
+                    }
+                    break;
+                }
+            }
+        }
+        for (UploadGroup group : mUploadGroups) {
+            group.refreshCount();
         }
 
         notifyDataSetChanged();
     }
 
+    /**
+     * @param arg1 Id of the upload changed, or null if any upload could have changed.
+     */
     @Override
     public void update(Observable arg0, Object arg1) {
         Timber.d("update");
-        loadUploadItemsFromDb();
+        if (arg1 instanceof Long) {
+            loadUploadItemFromDb((Long) arg1);
+        } else {
+            loadUploadItemsFromDb();
+        }
     }
 
     public void refreshView() {
@@ -642,25 +826,45 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
         loadUploadItemsFromDb();
     }
 
+    /**
+     * Refreshes a single upload, after a change that does not affect the rest.
+     *
+     * @param uploadId Id of the upload changed.
+     */
+    public void refreshUpload(long uploadId) {
+        Timber.d("refreshUpload");
+        loadUploadItemFromDb(uploadId);
+    }
+
     @Override
     public Object getChild(int groupPosition, int childPosition) {
-        return mUploadGroups[(int) getGroupId(groupPosition)].items[childPosition];
+        return mUploadGroups[(int) getGroupId(groupPosition)].items.get(childPosition);
     }
 
     @Override
     public long getChildId(int groupPosition, int childPosition) {
-        return childPosition;
+        return mUploadGroups[(int) getGroupId(groupPosition)].items.get(childPosition).getUploadId();
     }
 
     @Override
     public View getChildView(int groupPosition, int childPosition, boolean isLastChild, View convertView,
                              ViewGroup parent) {
-        return getView(mUploadGroups[(int) getGroupId(groupPosition)].items, childPosition, convertView, parent);
+        final UploadGroup group = mUploadGroups[(int) getGroupId(groupPosition)];
+        if (isLastChild && group.hasMoreItems() && !mLoadingMoreItems) {
+            // the list can not change while its views are being got
+            mLoadingMoreItems = true;
+            parent.post(() -> {
+                group.loadMoreItems();
+                mLoadingMoreItems = false;
+                notifyDataSetChanged();
+            });
+        }
+        return getView(group.items, childPosition, convertView, parent);
     }
 
     @Override
     public int getChildrenCount(int groupPosition) {
-        return mUploadGroups[(int) getGroupId(groupPosition)].items.length;
+        return mUploadGroups[(int) getGroupId(groupPosition)].items.size();
     }
 
     @Override
@@ -672,7 +876,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
     public int getGroupCount() {
         int size = 0;
         for (UploadGroup uploadGroup : mUploadGroups) {
-            if (uploadGroup.items.length > 0) {
+            if (!uploadGroup.items.isEmpty()) {
                 size++;
             }
         }
@@ -688,7 +892,7 @@ public class ExpandableUploadListAdapter extends BaseExpandableListAdapter imple
         int id = -1;
         for (int i = 0; i <= groupPosition; ) {
             id++;
-            if (mUploadGroups[id].items.length > 0) {
+            if (!mUploadGroups[id].items.isEmpty()) {
                 i++;
             }
         }
@@ -30,6 +30,10 @@ import android.accounts.Account;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -42,6 +46,7 @@ import android.widget.LinearLayout;
 import android.widget.ListAdapter;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import com.owncloud.android.R;
 import com.owncloud.android.authentication.AccountUtils;
@@ -59,8 +64,12 @@ import com.owncloud.android.utils.MimetypeIconUtil;
 import com.owncloud.android.utils.PreferenceUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This Adapter populates a ListView with all files and folders in an ownCloud
@@ -71,6 +80,12 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
     private Context mContext;
     private Vector<OCFile> mImmutableFilesList = null; // List containing the database files, doesn't change with search
     private Vector<OCFile> mFiles = null; // List that can be changed when using search
+    private Vector<OCFile> mUnfilteredFiles = null; // Files shown when not searching, sorted
+    private String[] mSearchableNames = null; // Lower case names of mUnfilteredFiles, in the same order
+    private int mUnfilteredSortOrder; // Order of mUnfilteredFiles, to not sort them again when it is requested
+    private int mFoldersCount = 0; // Folders in mUnfilteredFiles
+    private int mFilesCount = 0; // Not hidden files in mUnfilteredFiles
+    private boolean mUnfilteredSortAscending;
     private boolean mJustFolders;
     private boolean mOnlyAvailableOffline;
     private boolean mSharedByLinkFiles;
@@ -80,6 +95,16 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
     private Account mAccount;
     private ComponentsGetter mTransferServiceGetter;
 
+    private FolderLoadTask mLoadTask;
+
+    // Search state; mLastQuery is null when the list is not filtered
+    private String mLastQuery = null;
+    private int[] mLastMatches = null; // Positions in mUnfilteredFiles of the files matching mLastQuery
+    private final AtomicInteger mSearchGeneration = new AtomicInteger();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService sSearchExecutor = Executors.newSingleThreadExecutor();
+    private static final int SEARCH_CANCELLATION_CHECK_INTERVAL = 1024;
+
     private enum ViewType {LIST_ITEM, GRID_IMAGE, GRID_ITEM}
 
     public FileListListAdapter(
@@ -125,6 +150,20 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         return mFiles != null ? mFiles.size() : 0;
     }
 
+    /**
+     * @return Number of folders in the loaded folder, not filtered by search.
+     */
+    public int getFoldersCount() {
+        return mFoldersCount;
+    }
+
+    /**
+     * @return Number of files, not hidden and not folders, in the loaded folder, not filtered by search.
+     */
+    public int getFilesCount() {
+        return mFilesCount;
+    }
+
     @Override
     public Object getItem(int position) {
         if (mFiles == null || mFiles.size() <= position) {
@@ -381,42 +420,195 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
     }
 
     /**
-     * Change the adapted directory for a new one
+     * Change the adapted directory for a new one.
+     * <p>
+     * The content of the folder is loaded and sorted in background; the list is only updated when it is ready.
      *
      * @param folder                New folder to adapt. Can be NULL, meaning
      *                              "no content to adapt".
      * @param updatedStorageManager Optional updated storage manager; used to replace
      *                              mStorageManager if is different (and not NULL)
+     * @param listener              Listener to notify when the content of the folder is shown.
      */
-    public void swapDirectory(OCFile folder, FileDataStorageManager updatedStorageManager) {
+    public void swapDirectory(OCFile folder, FileDataStorageManager updatedStorageManager,
+                              OnFolderLoadedListener listener) {
         if (updatedStorageManager != null && updatedStorageManager != mStorageManager) {
             mStorageManager = updatedStorageManager;
             mAccount = AccountUtils.getCurrentOwnCloudAccount(mContext);
         }
 
-        boolean isRootFolder = folder.equals(updatedStorageManager.getFileByPath(OCFile.ROOT_PATH));
+        if (mLoadTask != null) {
+            // a refresh requested meanwhile makes the previous one useless
+            mLoadTask.cancel(false);
+        }
 
-        if (mStorageManager != null) {
-            if (mOnlyAvailableOffline && (isRootFolder || !folder.isAvailableOffline())) {
-                mImmutableFilesList = updatedStorageManager.getAvailableOfflineFilesFromCurrentAccount();
+        if (mStorageManager == null) {
+            mImmutableFilesList = null;
+            mUnfilteredFiles = null;
+            mSearchableNames = null;
+            mFoldersCount = 0;
+            mFilesCount = 0;
+            resetSearch();
+            mFiles = null;
+            notifyDataSetChanged();
+            listener.onFolderLoaded(null);
+            return;
+        }
+
+        mLoadTask = new FolderLoadTask(folder, mStorageManager, listener);
+        mLoadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Listener notified when the content of a folder is loaded and shown.
+     */
+    public interface OnFolderLoadedListener {
+        /**
+         * @param changedPositions Positions of the files whose content changed, when the list holds the same files
+         *                         in the same order as before, so that only those views need to be bound again;
+         *                         null if the whole list changed.
+         */
+        void onFolderLoaded(@Nullable int[] changedPositions);
+    }
+
+    /**
+     * Loads, sorts and counts the files of a folder, and compares them with the ones shown, out of the main thread.
+     */
+    private class FolderLoadTask extends AsyncTask<Void, Void, Vector<OCFile>> {
+
+        private final OCFile mFolder;
+        private final FileDataStorageManager mTaskStorageManager;
+        private final OnFolderLoadedListener mListener;
+        private final List<OCFile> mShownFiles;
+        private final int mSortOrder;
+        private final boolean mSortAscending;
+
+        private Vector<OCFile> mLoadedFiles;
+        private String[] mSearchableNames;
+        private int[] mChangedPositions;
+        private int mFoldersCount = 0;
+        private int mFilesCount = 0;
+
+        FolderLoadTask(OCFile folder, FileDataStorageManager storageManager, OnFolderLoadedListener listener) {
+            mFolder = folder;
+            mTaskStorageManager = storageManager;
+            mListener = listener;
+            // the shown list may be filtered meanwhile
+            mShownFiles = (mFiles != null) ? new ArrayList<>(mFiles) : null;
+            mSortOrder = FileStorageUtils.mSortOrderFileDisp;
+            mSortAscending = FileStorageUtils.mSortAscendingFileDisp;
+        }
+
+        @Override
+        protected Vector<OCFile> doInBackground(Void... params) {
+            boolean isRootFolder = mFolder.equals(mTaskStorageManager.getFileByPath(OCFile.ROOT_PATH));
+
+            if (mOnlyAvailableOffline && (isRootFolder || !mFolder.isAvailableOffline())) {
+                mLoadedFiles = mTaskStorageManager.getAvailableOfflineFilesFromCurrentAccount();
             } else if (mSharedByLinkFiles && isRootFolder) {
-                mImmutableFilesList = updatedStorageManager.getSharedByLinkFilesFromCurrentAccount();
+                mLoadedFiles = mTaskStorageManager.getSharedByLinkFilesFromCurrentAccount();
+            } else if (mJustFolders) {
+                // the rest of the files of a big folder are not read from the database to discard them
+                mLoadedFiles = mTaskStorageManager.getSubfolders(mFolder);
             } else {
-                mImmutableFilesList = mStorageManager.getFolderContent(folder);
+                mLoadedFiles = mTaskStorageManager.getFolderContent(mFolder);
             }
 
-            mFiles = mImmutableFilesList;
-
+            Vector<OCFile> files = mLoadedFiles;
             if (mJustFolders) {
-                mFiles = getFolders(mFiles);
+                files = getFolders(files);
             }
-        } else {
-            mFiles = null;
+            files = FileStorageUtils.sortFolder(files, mSortOrder, mSortAscending);
+
+            mSearchableNames = buildSearchableNames(files);
+            mChangedPositions = findChangedPositions(mShownFiles, files);
+            for (OCFile file : files) {
+                if (file.isFolder()) {
+                    mFoldersCount++;
+                } else if (!file.isHidden()) {
+                    mFilesCount++;
+                }
+            }
+            return files;
         }
 
-        mFiles = FileStorageUtils.sortFolder(mFiles, FileStorageUtils.mSortOrderFileDisp,
-                FileStorageUtils.mSortAscendingFileDisp);
-        notifyDataSetChanged();
+        @Override
+        protected void onPostExecute(Vector<OCFile> files) {
+            mLoadTask = null;
+            mImmutableFilesList = mLoadedFiles;
+            mUnfilteredFiles = files;
+            mUnfilteredSortOrder = mSortOrder;
+            mUnfilteredSortAscending = mSortAscending;
+            FileListListAdapter.this.mSearchableNames = mSearchableNames;
+            FileListListAdapter.this.mFoldersCount = mFoldersCount;
+            FileListListAdapter.this.mFilesCount = mFilesCount;
+            resetSearch();
+            mFiles = files;
+            if (mChangedPositions == null) {
+                notifyDataSetChanged();
+            }
+            mListener.onFolderLoaded(mChangedPositions);
+        }
+    }
+
+    /**
+     * Compares the files shown with the ones just loaded.
+     *
+     * @return Positions of the files whose content changed, or null if the files or their order are not the same.
+     */
+    private static int[] findChangedPositions(List<OCFile> shownFiles, List<OCFile> loadedFiles) {
+        if (shownFiles == null || shownFiles.size() != loadedFiles.size()) {
+            return null;
+        }
+        int[] changedPositions = new int[loadedFiles.size()];
+        int changedCount = 0;
+        for (int i = 0; i < loadedFiles.size(); i++) {
+            OCFile shown = shownFiles.get(i);
+            OCFile loaded = loadedFiles.get(i);
+            if (shown.getFileId() != loaded.getFileId()) {
+                return null;
+            }
+            if (!isShownTheSame(shown, loaded)) {
+                changedPositions[changedCount++] = i;
+            }
+        }
+        return Arrays.copyOf(changedPositions, changedCount);
+    }
+
+    /**
+     * @return 'True' if both versions of a file show the same in the list.
+     */
+    private static boolean isShownTheSame(OCFile shown, OCFile loaded) {
+        return TextUtils.equals(shown.getRemotePath(), loaded.getRemotePath()) &&
+                TextUtils.equals(shown.getMimetype(), loaded.getMimetype()) &&
+                TextUtils.equals(shown.getEtag(), loaded.getEtag()) &&
+                TextUtils.equals(shown.getStoragePath(), loaded.getStoragePath()) &&
+                TextUtils.equals(shown.getEtagInConflict(), loaded.getEtagInConflict()) &&
+                shown.getFileLength() == loaded.getFileLength() &&
+                shown.getModificationTimestamp() == loaded.getModificationTimestamp() &&
+                shown.getAvailableOfflineStatus() == loaded.getAvailableOfflineStatus() &&
+                shown.isSharedViaLink() == loaded.isSharedViaLink() &&
+                shown.isSharedWithSharee() == loaded.isSharedWithSharee() &&
+                shown.isSharedWithMe() == loaded.isSharedWithMe() &&
+                shown.needsUpdateThumbnail() == loaded.needsUpdateThumbnail();
+    }
+
+    /**
+     * Binds again the views of the files in the given positions, if they are visible.
+     *
+     * @param list      List showing the files.
+     * @param positions Positions of the files to bind.
+     */
+    public void rebindVisibleViews(AbsListView list, int[] positions) {
+        final int first = list.getFirstVisiblePosition();
+        for (int position : positions) {
+            final View view = list.getChildAt(position - first);
+            if (view != null && position < getCount() && getView(position, view, list) != view) {
+                // the file needs another kind of view now
+                notifyDataSetChanged();
+                return;
+            }
+        }
     }
 
     /**
@@ -445,8 +637,22 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         FileStorageUtils.mSortOrderFileDisp = order;
         FileStorageUtils.mSortAscendingFileDisp = ascending;
 
-        mFiles = FileStorageUtils.sortFolder(mFiles, FileStorageUtils.mSortOrderFileDisp,
-                FileStorageUtils.mSortAscendingFileDisp);
+        if (mUnfilteredFiles == null || (order == mUnfilteredSortOrder && ascending == mUnfilteredSortAscending)) {
+            return;
+        }
+        mUnfilteredFiles = FileStorageUtils.sortFolder(mUnfilteredFiles, order, ascending);
+        mUnfilteredSortOrder = order;
+        mUnfilteredSortAscending = ascending;
+        mSearchableNames = buildSearchableNames(mUnfilteredFiles);
+        if (mLastQuery != null) {
+            // positions of the previous results are not valid anymore; filter again the sorted files
+            final String query = mLastQuery;
+            resetSearch();
+            mFiles = mUnfilteredFiles;
+            filterBySearch(query);
+        } else {
+            mFiles = mUnfilteredFiles;
+        }
         notifyDataSetChanged();
     }
 
@@ -465,40 +671,98 @@ public class FileListListAdapter extends BaseAdapter implements ListAdapter {
         return files;
     }
 
+    /**
+     * Filters the files shown by name, in background. Results of previous queries not published yet are discarded.
+     *
+     * @param query Text the names of the files must contain, ignoring case.
+     */
     public void filterBySearch(String query) {
-        query = query.toLowerCase();
+        if (mUnfilteredFiles == null) {
+            return;
+        }
+        final String normalizedQuery = query.toLowerCase();
+        final int generation = mSearchGeneration.incrementAndGet();
+        final Vector<OCFile> files = mUnfilteredFiles;
+        final String[] names = mSearchableNames;
+        // a longer query can only match files that matched the shorter one
+        final int[] candidates = (mLastQuery != null && normalizedQuery.startsWith(mLastQuery)) ?
+                mLastMatches : null;
+
+        sSearchExecutor.execute(() -> {
+            final int[] matches = findMatches(names, normalizedQuery, candidates, generation);
+            if (matches == null) {
+                return;
+            }
+            mHandler.post(() -> {
+                if (mSearchGeneration.get() == generation) {
+                    publishSearchResults(normalizedQuery, matches, files);
+                }
+            });
+        });
+    }
 
-        clearFilterBySearch();
+    public void clearFilterBySearch() {
+        final boolean wasFiltered = mLastQuery != null;
+        resetSearch();
+        if (wasFiltered) {
+            mFiles = mUnfilteredFiles;
+            notifyDataSetChanged();
+        }
+    }
 
-        List<OCFile> filteredList = new ArrayList<>();
+    /**
+     * Discards the current search results, and the pending ones.
+     */
+    private void resetSearch() {
+        mSearchGeneration.incrementAndGet();
+        mLastQuery = null;
+        mLastMatches = null;
+    }
 
-        // Gather files matching the query
-        for (OCFile fileToAdd : mFiles) {
-            final String nameOfTheFileToAdd = fileToAdd.getFileName().toLowerCase();
-            if (nameOfTheFileToAdd.contains(query)) {
-                filteredList.add(fileToAdd);
+    /**
+     * @param candidates Positions of the names to check, or null to check all of them.
+     * @return Positions of the names containing the query, or null if a newer search started meanwhile.
+     */
+    private int[] findMatches(String[] names, String query, int[] candidates, int generation) {
+        final int count = (candidates != null) ? candidates.length : names.length;
+        final int[] matches = new int[count];
+        int matchCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % SEARCH_CANCELLATION_CHECK_INTERVAL == 0 && mSearchGeneration.get() != generation) {
+                return null;
             }
-        }
-
-        // Remove not matching files from the filelist
-        for (int i = mFiles.size() - 1; i >= 0; i--) {
-            if (!filteredList.contains(mFiles.get(i))) {
-                mFiles.remove(i);
+            final int position = (candidates != null) ? candidates[i] : i;
+            if (names[position].contains(query)) {
+                matches[matchCount++] = position;
             }
         }
+        return Arrays.copyOf(matches, matchCount);
+    }
 
-        // Add matching files to the filelist
-        for (int i = 0; i < filteredList.size(); i++) {
-            if (!mFiles.contains(filteredList.get(i))) {
-                mFiles.add(i, filteredList.get(i));
-            }
+    private void publishSearchResults(String query, int[] matches, Vector<OCFile> files) {
+        // without a previous search all the files are shown
+        final boolean changed = (mLastMatches != null) ?
+                !Arrays.equals(mLastMatches, matches) :
+                matches.length != files.size();
+        mLastQuery = query;
+        mLastMatches = matches;
+        if (!changed) {
+            // same files as shown, typing an extension of the query usually does not change them
+            return;
         }
-
+        final Vector<OCFile> filtered = new Vector<>(matches.length);
+        for (int position : matches) {
+            filtered.add(files.get(position));
+        }
+        mFiles = filtered;
         notifyDataSetChanged();
     }
 
-    public void clearFilterBySearch() {
-        mFiles = (Vector<OCFile>) mImmutableFilesList.clone();
-        notifyDataSetChanged();
+    private static String[] buildSearchableNames(List<OCFile> files) {
+        final String[] names = new String[files.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = files.get(i).getFileName().toLowerCase();
+        }
+        return names;
     }
 }
@@ -0,0 +1,100 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.adapter;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import androidx.core.content.ContextCompat;
+import com.owncloud.android.R;
+import com.owncloud.android.ui.preview.MappedTextFile;
+
+/**
+ * This Adapter populates a ListView with the lines of a {@link MappedTextFile}, reading only the visible ones.
+ */
+public class TextLinesListAdapter extends BaseAdapter {
+
+    private final LayoutInflater mInflater;
+    private final MappedTextFile mTextFile;
+    private final int mHighlightColor;
+    private int mLineCount = 0;
+    private int mHighlightedLine = -1;
+
+    public TextLinesListAdapter(Context context, MappedTextFile textFile) {
+        mInflater = LayoutInflater.from(context);
+        mTextFile = textFile;
+        mHighlightColor = ContextCompat.getColor(context, R.color.selected_item_background);
+    }
+
+    /**
+     * Updates the number of lines shown, as they are indexed.
+     */
+    public void setLineCount(int lineCount) {
+        if (lineCount != mLineCount) {
+            mLineCount = lineCount;
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Highlights a line, usually the last match of a search; -1 for none.
+     */
+    public void setHighlightedLine(int line) {
+        mHighlightedLine = line;
+        notifyDataSetChanged();
+    }
+
+    public int getHighlightedLine() {
+        return mHighlightedLine;
+    }
+
+    @Override
+    public int getCount() {
+        return mLineCount;
+    }
+
+    @Override
+    public String getItem(int position) {
+        return mTextFile.getLine(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView lineView = (TextView) convertView;
+        if (lineView == null) {
+            lineView = (TextView) mInflater.inflate(R.layout.preview_text_line, parent, false);
+        }
+        lineView.setText(getItem(position));
+        if (position == mHighlightedLine) {
+            lineView.setBackgroundColor(mHighlightColor);
+        } else {
+            lineView.setBackground(null);
+        }
+        return lineView;
+    }
+}
@@ -40,11 +40,23 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * AsyncTask to copy a file from a uri in a temporal file
+ * AsyncTask to copy files from uris in temporal files, and request their upload
  */
-public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, ResultCode> {
+public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Integer, ResultCode> {
+
+    /**
+     * Number of files copied at the same time. A few concurrent copies hide the latency of the providers that
+     * serve the files, more would just compete for the same storage.
+     */
+    private static final int PARALLEL_COPIES = 4;
 
     /**
      * Helper method building a correct array of parameters to be passed to {@link #execute(Object[])} )}
@@ -123,11 +135,7 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
     protected ResultCode doInBackground(Object[] params) {
 
         ResultCode result = ResultCode.UNKNOWN_ERROR;
-
-        InputStream inputStream = null;
-        FileOutputStream outputStream = null;
-        String fullTempPath = null;
-        Uri currentUri = null;
+        ExecutorService executor = null;
 
         try {
             Account account = (Account) params[0];
@@ -136,39 +144,30 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
             int behaviour = (int) params[3];
             ContentResolver leakedContentResolver = (ContentResolver) params[4];
 
-            String currentRemotePath;
-
+            // copies run in parallel, and every file is uploaded as soon as its own copy finishes
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(PARALLEL_COPIES, uris.length)));
+            CompletionService<TemporalCopy> copies = new ExecutorCompletionService<>(executor);
             for (int i = 0; i < uris.length; i++) {
-                currentUri = uris[i];
-                currentRemotePath = remotePaths[i];
-
-                fullTempPath = FileStorageUtils.getTemporalPath(account.name) + currentRemotePath;
-                inputStream = leakedContentResolver.openInputStream(currentUri);
-                File cacheFile = new File(fullTempPath);
-                File tempDir = cacheFile.getParentFile();
-                if (!tempDir.exists()) {
-                    tempDir.mkdirs();
-                }
-                cacheFile.createNewFile();
-                outputStream = new FileOutputStream(fullTempPath);
-                byte[] buffer = new byte[4096];
+                copies.submit(new TemporalCopy(
+                        leakedContentResolver,
+                        uris[i],
+                        FileStorageUtils.getTemporalPath(account.name) + remotePaths[i],
+                        remotePaths[i]
+                ));
+            }
 
-                int count;
-                while ((count = inputStream.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, count);
+            ResultCode copiesResult = ResultCode.OK;
+            for (int copied = 1; copied <= uris.length; copied++) {
+                TemporalCopy copy = copies.take().get();
+                if (copy.mResult == ResultCode.OK) {
+                    requestUpload(account, copy.mTemporalPath, copy.mRemotePath, behaviour, copy.mMimeType);
+                } else if (copiesResult == ResultCode.OK) {
+                    // the rest of files are still uploaded; the first error is reported
+                    copiesResult = copy.mResult;
                 }
-
-                requestUpload(
-                        account,
-                        fullTempPath,
-                        currentRemotePath,
-                        behaviour,
-                        leakedContentResolver.getType(currentUri)
-                );
-                fullTempPath = null;
+                publishProgress(copied, uris.length);
             }
-
-            result = ResultCode.OK;
+            result = copiesResult;
 
         } catch (ArrayIndexOutOfBoundsException e) {
             Timber.e(e, "Wrong number of arguments received");
@@ -176,50 +175,104 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
         } catch (ClassCastException e) {
             Timber.e(e, "Wrong parameter received");
 
-        } catch (FileNotFoundException e) {
-            Timber.e(e, "Could not find source file %s", currentUri);
-            result = ResultCode.LOCAL_FILE_NOT_FOUND;
-
-        } catch (SecurityException e) {
-            Timber.e(e, "Not enough permissions to read source file %s", currentUri);
-            result = ResultCode.FORBIDDEN;
+        } catch (InterruptedException e) {
+            Timber.w("Interrupted while copying files to upload");
+            result = ResultCode.CANCELLED;
+            Thread.currentThread().interrupt();
 
-        } catch (Exception e) {
-            Timber.e(e, "Exception while copying " + currentUri + " to temporary file");
+        } catch (ExecutionException e) {
+            Timber.e(e, "Unexpected error while copying files to upload");
             result = ResultCode.LOCAL_STORAGE_NOT_COPIED;
 
-            // clean
-            if (fullTempPath != null) {
-                File f = new File(fullTempPath);
-                if (f.exists()) {
-                    if (!f.delete()) {
-                        Timber.e("Could not delete temporary file %s", fullTempPath);
+        } finally {
+            if (executor != null) {
+                // copies still waiting or running are not needed anymore if the loop was left early
+                executor.shutdownNow();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy of a content URI to a temporal file, run in the pool of the task.
+     */
+    private static class TemporalCopy implements Callable<TemporalCopy> {
+
+        private final ContentResolver mContentResolver;
+        private final Uri mUri;
+        private final String mTemporalPath;
+        private final String mRemotePath;
+        private String mMimeType;
+        private ResultCode mResult = ResultCode.UNKNOWN_ERROR;
+
+        TemporalCopy(ContentResolver contentResolver, Uri uri, String temporalPath, String remotePath) {
+            mContentResolver = contentResolver;
+            mUri = uri;
+            mTemporalPath = temporalPath;
+            mRemotePath = remotePath;
+        }
+
+        @Override
+        public TemporalCopy call() {
+            InputStream inputStream = null;
+            FileOutputStream outputStream = null;
+            try {
+                inputStream = mContentResolver.openInputStream(mUri);
+                File cacheFile = new File(mTemporalPath);
+                File tempDir = cacheFile.getParentFile();
+                if (!tempDir.exists()) {
+                    tempDir.mkdirs();
+                }
+                cacheFile.createNewFile();
+                outputStream = new FileOutputStream(mTemporalPath);
+                FileStorageUtils.copyStream(inputStream, outputStream, null, null);
+                mMimeType = mContentResolver.getType(mUri);
+                mResult = ResultCode.OK;
+
+            } catch (FileNotFoundException e) {
+                Timber.e(e, "Could not find source file %s", mUri);
+                mResult = ResultCode.LOCAL_FILE_NOT_FOUND;
+
+            } catch (SecurityException e) {
+                Timber.e(e, "Not enough permissions to read source file %s", mUri);
+                mResult = ResultCode.FORBIDDEN;
+
+            } catch (Exception e) {
+                Timber.e(e, "Exception while copying " + mUri + " to temporary file");
+                mResult = ResultCode.LOCAL_STORAGE_NOT_COPIED;
+
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (Exception e) {
+                        Timber.w("Ignoring exception of inputStream closure");
                     }
                 }
-            }
 
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (Exception e) {
-                    Timber.w("Ignoring exception of inputStream closure");
+                if (outputStream != null) {
+                    try {
+                        outputStream.close();
+                    } catch (Exception e) {
+                        Timber.w("Ignoring exception of outStream closure");
+                    }
                 }
             }
 
-            if (outputStream != null) {
-                try {
-                    outputStream.close();
-                } catch (Exception e) {
-                    Timber.w("Ignoring exception of outStream closure");
+            if (mResult != ResultCode.OK) {
+                // clean
+                File f = new File(mTemporalPath);
+                if (f.exists() && !f.delete()) {
+                    Timber.e("Could not delete temporary file %s", mTemporalPath);
                 }
             }
+            return this;
         }
-
-        return result;
     }
 
-    private void requestUpload(Account account, String localPath, String remotePath, int behaviour, String mimeType) {
+    protected void requestUpload(Account account, String localPath, String remotePath, int behaviour,
+                                 String mimeType) {
         TransferRequester requester = new TransferRequester();
         requester.uploadNewFile(
                 mAppContext,
@@ -233,6 +286,14 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
         );
     }
 
+    @Override
+    protected void onProgressUpdate(Integer... progress) {
+        OnCopyTmpFilesTaskListener listener = mListener.get();
+        if (listener != null) {
+            listener.onTmpFileCopied(progress[0], progress[1]);
+        }
+    }
+
     @Override
     protected void onPostExecute(ResultCode result) {
         OnCopyTmpFilesTaskListener listener = mListener.get();
@@ -241,7 +302,7 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
 
         } else {
             Timber.i("User left the caller activity before the temporal copies were finished");
-            if (result != ResultCode.OK) {
+            if (result != ResultCode.OK && result != ResultCode.CANCELLED) {
                 // if the user left the app, report background error in a Toast
                 int messageId;
                 switch (result) {
@@ -279,6 +340,8 @@ public class CopyAndUploadContentUrisTask extends AsyncTask<Object, Void, Result
      * Interface to retrieve data from recognition task
      */
     public interface OnCopyTmpFilesTaskListener {
+        void onTmpFileCopied(int copiedFiles, int totalFiles);
+
         void onTmpFilesCopied(ResultCode result);
     }
 }
@@ -41,6 +41,9 @@ public class LoadingDialog extends DialogFragment {
     private static final String ARG_MESSAGE_ID = LoadingDialog.class.getCanonicalName() + ".ARG_MESSAGE_ID";
     private static final String ARG_CANCELABLE = LoadingDialog.class.getCanonicalName() + ".ARG_CANCELABLE";
 
+    private TextView mMessageView;
+    private CharSequence mMessage;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -75,9 +78,13 @@ public class LoadingDialog extends DialogFragment {
         );
 
         // set message
-        TextView tv = v.findViewById(R.id.loadingText);
-        int messageId = getArguments().getInt(ARG_MESSAGE_ID, R.string.placeholder_sentence);
-        tv.setText(messageId);
+        mMessageView = v.findViewById(R.id.loadingText);
+        if (mMessage != null) {
+            mMessageView.setText(mMessage);
+        } else {
+            int messageId = getArguments().getInt(ARG_MESSAGE_ID, R.string.placeholder_sentence);
+            mMessageView.setText(messageId);
+        }
 
         // set progress wheel color
         ProgressBar progressBar = v.findViewById(R.id.loadingBar);
@@ -89,6 +96,18 @@ public class LoadingDialog extends DialogFragment {
         return v;
     }
 
+    /**
+     * Replaces the message shown in the dialog, e.g. to report progress.
+     *
+     * @param message   New message to show; kept across configuration changes.
+     */
+    public void setMessage(CharSequence message) {
+        mMessage = message;
+        if (mMessageView != null) {
+            mMessageView.setText(message);
+        }
+    }
+
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         Dialog dialog = super.onCreateDialog(savedInstanceState);
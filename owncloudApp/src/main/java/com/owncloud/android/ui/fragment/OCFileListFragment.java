@@ -1001,33 +1001,31 @@ public class OCFileListFragment extends ExtendedListFragment implements
                 directory = storageManager.getFileById(directory.getParentId());
             }
 
-            mFileListAdapter.swapDirectory(directory, storageManager);
-            if (mFile == null || !mFile.equals(directory)) {
-                mCurrentListView.setSelection(0);
-            }
+            final boolean folderChanged = mFile == null || !mFile.equals(directory);
             mFile = directory;
 
-            updateLayout();
+            mFileListAdapter.swapDirectory(directory, storageManager, changedPositions -> {
+                if (!isAdded()) {
+                    return;
+                }
+                if (changedPositions != null) {
+                    // same files, only the rows that changed need to be bound again
+                    mFileListAdapter.rebindVisibleViews(mCurrentListView, changedPositions);
+                } else if (folderChanged) {
+                    mCurrentListView.setSelection(0);
+                }
+                updateLayout();
+            });
         }
     }
 
     private void updateLayout() {
         if (!isShowingJustFolders()) {
-            int filesCount = 0, foldersCount = 0;
-            int count = mFileListAdapter.getCount();
-            OCFile file;
-            for (int i = 0; i < count; i++) {
-                file = (OCFile) mFileListAdapter.getItem(i);
-                if (file.isFolder()) {
-                    foldersCount++;
-                } else {
-                    if (!file.isHidden()) {
-                        filesCount++;
-                    }
-                }
-            }
+            // counted when the folder was loaded, in background
+            int filesCount = mFileListAdapter.getFilesCount();
+            int foldersCount = mFileListAdapter.getFoldersCount();
 
-            if (count == 0) {
+            if (mFileListAdapter.getCount() == 0) {
                 int emptyMessage;
                 if (mFileListOption == FileListOption.AV_OFFLINE) {
                     emptyMessage = R.string.file_list_empty_available_offline;
@@ -115,4 +115,10 @@ public class UploadListFragment extends ExpandableListFragment {
             mAdapter.refreshView();
         }
     }
+
+    public void updateUpload(long uploadId) {
+        if (mAdapter != null) {
+            mAdapter.refreshUpload(uploadId);
+        }
+    }
 }
@@ -0,0 +1,384 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Read-only view of a text file as a list of lines, without loading it in memory.
+ * <p>
+ * The file is memory-mapped; the offsets of its lines are found by {@link #buildIndex(OnIndexProgressListener)},
+ * that can run in background while the lines already indexed are read. Only the offset of one every
+ * {@link #INDEX_STRIDE} lines is kept, the rest are found scanning from the closest one.
+ * <p>
+ * Lines longer than {@link #MAX_LINE_BYTES} are split, so that a file without line breaks can be shown too.
+ */
+public class MappedTextFile {
+
+    private static final int INDEX_STRIDE = 64;
+    private static final int MAX_LINE_BYTES = 4 * 1024;
+    private static final int CHARSET_SAMPLE_SIZE = 64 * 1024;
+    private static final int INDEX_PROGRESS_INTERVAL = 16 * 1024; // lines
+    private static final int FIRST_PAGE_LINES = 4 * INDEX_STRIDE;
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final MappedByteBuffer mBuffer;
+    private final int mLength;
+    private final Charset mCharset;
+    private final int mStart;
+
+    // bytes per code unit; 2 for UTF-16
+    private final int mUnit;
+    private final boolean mBigEndian;
+
+    // offset of every INDEX_STRIDE-th line; guarded by 'this'
+    private int[] mCheckpoints = new int[1024];
+    private int mCheckpointCount = 0;
+
+    private volatile int mLineCount = 0;
+    private volatile boolean mIndexComplete = false;
+    private volatile boolean mClosed = false;
+
+    /**
+     * Listener notified periodically while the lines are indexed, from the indexing thread; the first time,
+     * as soon as there are lines enough to fill a screen.
+     */
+    public interface OnIndexProgressListener {
+        void onIndexProgress(int lineCount);
+    }
+
+    private MappedTextFile(MappedByteBuffer buffer, Charset charset, int bomLength) {
+        mBuffer = buffer;
+        mLength = buffer.capacity();
+        mCharset = charset;
+        mStart = bomLength;
+        mBigEndian = StandardCharsets.UTF_16BE.equals(charset);
+        mUnit = (mBigEndian || StandardCharsets.UTF_16LE.equals(charset)) ? 2 : 1;
+    }
+
+    /**
+     * Maps a text file in memory and detects its charset. Does not read the lines yet.
+     *
+     * @param path Absolute path to the text file.
+     * @return The mapped file.
+     * @throws IOException If the file could not be mapped.
+     */
+    public static MappedTextFile open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            final FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                Timber.w("%s is bigger than 2GB, only the beginning will be shown", path);
+                size = Integer.MAX_VALUE;
+            }
+            // the mapping stays valid after closing the file
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            final Charset charset;
+            final int bomLength;
+            if (startsWith(buffer, 0xEF, 0xBB, 0xBF)) {
+                charset = StandardCharsets.UTF_8;
+                bomLength = 3;
+            } else if (startsWith(buffer, 0xFE, 0xFF)) {
+                charset = StandardCharsets.UTF_16BE;
+                bomLength = 2;
+            } else if (startsWith(buffer, 0xFF, 0xFE)) {
+                charset = StandardCharsets.UTF_16LE;
+                bomLength = 2;
+            } else {
+                charset = isValidUtf8(buffer, Math.min(buffer.capacity(), CHARSET_SAMPLE_SIZE)) ?
+                        StandardCharsets.UTF_8 : getLegacyCharset();
+                bomLength = 0;
+            }
+            Timber.d("Text file %s opened as %s", path, charset.name());
+            return new MappedTextFile(buffer, charset, bomLength);
+        }
+    }
+
+    /**
+     * Finds the lines of the file. Blocks until all of them are indexed, or {@link #close()} is called.
+     *
+     * @param listener Listener to notify about the lines indexed so far, may be null.
+     */
+    public void buildIndex(@Nullable OnIndexProgressListener listener) {
+        int offset = mStart;
+        int lineCount = 0;
+        while (offset < mLength && !mClosed) {
+            if (lineCount % INDEX_STRIDE == 0) {
+                addCheckpoint(offset);
+            }
+            offset = nextLineStart(offset);
+            lineCount++;
+            if (lineCount % INDEX_STRIDE == 0) {
+                mLineCount = lineCount;
+            }
+            if (listener != null &&
+                    (lineCount == FIRST_PAGE_LINES || lineCount % INDEX_PROGRESS_INTERVAL == 0)) {
+                listener.onIndexProgress(lineCount);
+            }
+        }
+        mLineCount = lineCount;
+        mIndexComplete = !mClosed;
+        if (listener != null) {
+            listener.onIndexProgress(lineCount);
+        }
+    }
+
+    /**
+     * @return Number of lines indexed so far; all of them can be read.
+     */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    public boolean isIndexComplete() {
+        return mIndexComplete;
+    }
+
+    public Charset getCharset() {
+        return mCharset;
+    }
+
+    /**
+     * @param line Index of the line, lower than {@link #getLineCount()}.
+     * @return Content of the line, without its line break.
+     */
+    public String getLine(int line) {
+        final int start = getLineStart(line);
+        return decode(start, getContentEnd(start, nextLineStart(start)));
+    }
+
+    private String decode(int start, int end) {
+        final ByteBuffer bytes = mBuffer.duplicate();
+        bytes.limit(end);
+        bytes.position(start);
+        return mCharset.decode(bytes).toString();
+    }
+
+    /**
+     * Searches the indexed lines for a text, ignoring case. The search starts in the line after fromLine and wraps
+     * around the end of the file.
+     * <p>
+     * ASCII text in a file of one byte per character is searched on the mapped bytes, where ASCII letters can
+     * not be part of another character. Any other search decodes every line to compare it.
+     *
+     * @param query    Text to search for.
+     * @param fromLine Line the search starts after; -1 to start from the first one.
+     * @param signal   Signal to cancel the search, may be null.
+     * @return Index of the first line containing the text, or -1 if no line does.
+     * @throws android.os.OperationCanceledException if signal is cancelled.
+     */
+    public int find(String query, int fromLine, @Nullable CancellationSignal signal) {
+        final int lineCount = mLineCount;
+        if (query.isEmpty() || lineCount == 0) {
+            return -1;
+        }
+        final String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        final byte[] pattern = (mUnit == 1 && isAscii(lowerCaseQuery)) ?
+                lowerCaseQuery.getBytes(StandardCharsets.US_ASCII) : null;
+
+        int line = (fromLine + 1) % lineCount;
+        int start = getLineStart(line);
+        for (int checked = 0; checked < lineCount; checked++) {
+            if (signal != null && checked % INDEX_STRIDE == 0) {
+                signal.throwIfCanceled();
+            }
+            final int next = nextLineStart(start);
+            final int end = getContentEnd(start, next);
+            final boolean found = pattern != null ? contains(start, end, pattern) :
+                    decode(start, end).toLowerCase(Locale.ROOT).contains(lowerCaseQuery);
+            if (found) {
+                return line;
+            }
+            line++;
+            start = next;
+            if (line == lineCount) {
+                line = 0;
+                start = mStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stops the indexing. The mapping itself is released when the object is garbage collected.
+     */
+    public void close() {
+        mClosed = true;
+    }
+
+    private synchronized void addCheckpoint(int offset) {
+        if (mCheckpointCount == mCheckpoints.length) {
+            mCheckpoints = Arrays.copyOf(mCheckpoints, mCheckpoints.length * 2);
+        }
+        mCheckpoints[mCheckpointCount++] = offset;
+    }
+
+    private int getLineStart(int line) {
+        int offset;
+        synchronized (this) {
+            offset = mCheckpoints[line / INDEX_STRIDE];
+        }
+        for (int i = line % INDEX_STRIDE; i > 0; i--) {
+            offset = nextLineStart(offset);
+        }
+        return offset;
+    }
+
+    /**
+     * @return Offset of the line following the one starting at start; after its line break, or after
+     * {@link #MAX_LINE_BYTES} if it is too long.
+     */
+    private int nextLineStart(int start) {
+        final int limit = Math.min(mLength, start + MAX_LINE_BYTES);
+        for (int i = start; i + mUnit <= limit; i += mUnit) {
+            if (isCharAt(i, LINE_FEED)) {
+                return i + mUnit;
+            }
+        }
+        if (limit >= mLength) {
+            return mLength;
+        }
+        // split too long lines, but not in the middle of a UTF-8 character
+        int end = limit;
+        if (mUnit == 1 && StandardCharsets.UTF_8.equals(mCharset)) {
+            while (end > start + 1 && (mBuffer.get(end) & 0xC0) == 0x80) {
+                end--;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return End of the content of the line in [start, end), excluding its line break.
+     */
+    private int getContentEnd(int start, int end) {
+        if (end - mUnit >= start && isCharAt(end - mUnit, LINE_FEED)) {
+            end -= mUnit;
+            if (end - mUnit >= start && isCharAt(end - mUnit, CARRIAGE_RETURN)) {
+                end -= mUnit;
+            }
+        }
+        return end;
+    }
+
+    private boolean isCharAt(int offset, byte ascii) {
+        if (mUnit == 1) {
+            return mBuffer.get(offset) == ascii;
+        }
+        final byte high = mBuffer.get(mBigEndian ? offset : offset + 1);
+        final byte low = mBuffer.get(mBigEndian ? offset + 1 : offset);
+        return high == 0 && low == ascii;
+    }
+
+    /**
+     * Searches ASCII lower case bytes in a line of a file of one byte per character.
+     */
+    private boolean contains(int start, int end, byte[] pattern) {
+        outer:
+        for (int i = start; i + pattern.length <= end; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (toLowerAscii(mBuffer.get(i + j)) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toLowerAscii(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int... bytes) {
+        if (buffer.capacity() < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((buffer.get(i) & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the first bytes of the buffer are valid UTF-8; a character cut at the end of the sample is accepted.
+     */
+    private static boolean isValidUtf8(ByteBuffer buffer, int length) {
+        int i = 0;
+        while (i < length) {
+            final int b = buffer.get(i) & 0xFF;
+            final int continuationBytes;
+            if (b < 0x80) {
+                continuationBytes = 0;
+            } else if ((b & 0xE0) == 0xC0 && b >= 0xC2) {
+                continuationBytes = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                continuationBytes = 2;
+            } else if ((b & 0xF8) == 0xF0 && b <= 0xF4) {
+                continuationBytes = 3;
+            } else {
+                return false;
+            }
+            for (int j = 1; j <= continuationBytes; j++) {
+                if (i + j >= length) {
+                    return true;
+                }
+                if ((buffer.get(i + j) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += continuationBytes + 1;
+        }
+        return true;
+    }
+
+    private static Charset getLegacyCharset() {
+        try {
+            return Charset.forName("windows-1252");
+        } catch (RuntimeException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
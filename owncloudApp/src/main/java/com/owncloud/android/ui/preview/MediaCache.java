@@ -0,0 +1,270 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import android.accounts.Account;
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.owncloud.android.MainApp;
+import com.owncloud.android.datamodel.OCFile;
+import timber.log.Timber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for media streamed by ExoPlayer, so that seeking back or playing a file again does not download
+ * it again.
+ * <p>
+ * Media are keyed by account, remote path and ETag, so a new version of a file never plays old content; the
+ * least recently used media are evicted when the cache grows over {@link #MAX_CACHE_SIZE}.
+ */
+public class MediaCache {
+
+    private static final String CACHE_FOLDER = "mediaCache";
+    private static final long MAX_CACHE_SIZE = 256L * 1024 * 1024; // 256MB
+    private static final long MAX_CACHE_FILE_SIZE = 2L * 1024 * 1024;
+
+    /**
+     * Bytes prefetched when a video is opened; a few seconds of a mobile video
+     */
+    private static final long PREFETCH_SIZE = 2L * 1024 * 1024;
+    private static final int PREFETCH_BUFFER_SIZE = 16 * 1024;
+
+    private static MediaCache sInstance;
+
+    private final Cache mCache;
+    private final ExecutorService mPrefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private MediaCache() {
+        mCache = new SimpleCache(
+                new File(MainApp.Companion.getAppContext().getCacheDir(), CACHE_FOLDER),
+                new LeastRecentlyUsedCacheEvictor(MAX_CACHE_SIZE)
+        );
+    }
+
+    /**
+     * There must be a single instance, {@link SimpleCache} locks its folder.
+     */
+    public static synchronized MediaCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new MediaCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Wraps the factory of the data sources that stream a file, so that its content is read from the cache
+     * when available, and written to it when not.
+     * <p>
+     * A data source waits while another one, like the one of {@link #prefetch(Uri, OCFile, Account,
+     * DataSource.Factory)}, writes the span it needs, and then reads it from the cache instead of downloading it
+     * again.
+     *
+     * @param file     Streamed file.
+     * @param account  OC account owning the file.
+     * @param upstream Factory of the data sources that stream from the server.
+     * @param stats    Counters of the bytes played from the cache, may be null.
+     * @return Factory of cached data sources.
+     */
+    public DataSource.Factory buildDataSourceFactory(OCFile file, Account account, DataSource.Factory upstream,
+                                                     PlaybackStats stats) {
+        final String key = buildKey(file, account);
+        final long length = file.getFileLength();
+        return () -> new KeyedDataSource(
+                new CacheDataSource(
+                        mCache,
+                        upstream.createDataSource(),
+                        new FileDataSource(),
+                        new CacheDataSink(mCache, MAX_CACHE_FILE_SIZE),
+                        CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+                        stats
+                ),
+                key,
+                length,
+                stats
+        );
+    }
+
+    /**
+     * @return 'True' if the whole content of the file is cached, so that it can be played without network.
+     */
+    public boolean isFullyCached(OCFile file, Account account) {
+        final long length = file.getFileLength();
+        final NavigableSet<CacheSpan> spans = mCache.getCachedSpans(buildKey(file, account));
+        if (spans == null || length <= 0) {
+            return false;
+        }
+        long cachedUntil = 0;
+        for (CacheSpan span : spans) {
+            if (span.position > cachedUntil) {
+                return false;
+            }
+            cachedUntil = Math.max(cachedUntil, span.position + span.length);
+        }
+        return cachedUntil >= length;
+    }
+
+    /**
+     * Downloads the beginning of a file to the cache in background, so that the player can start without
+     * waiting for the network, and so that it is kept even if the playback is abandoned right away.
+     *
+     * @param uri      Remote URI of the file.
+     * @param file     File to prefetch.
+     * @param account  OC account owning the file.
+     * @param upstream Factory of the data sources that stream from the server.
+     */
+    public void prefetch(Uri uri, OCFile file, Account account, DataSource.Factory upstream) {
+        if (isFullyCached(file, account)) {
+            return;
+        }
+        final String key = buildKey(file, account);
+        final long length = Math.min(PREFETCH_SIZE, file.getFileLength());
+        mPrefetchExecutor.execute(() -> {
+            // blocks while the player writes the same span, and then reads it from the cache; the player does
+            // the same while this writes it
+            DataSource dataSource = new CacheDataSource(
+                    mCache,
+                    upstream.createDataSource(),
+                    new FileDataSource(),
+                    new CacheDataSink(mCache, MAX_CACHE_FILE_SIZE),
+                    CacheDataSource.FLAG_BLOCK_ON_CACHE,
+                    null
+            );
+            try {
+                dataSource.open(new DataSpec(uri, 0, 0, length, key, 0));
+                final byte[] buffer = new byte[PREFETCH_BUFFER_SIZE];
+                while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {
+                    // just fill the cache
+                }
+                Timber.d("Prefetched %d bytes of %s", length, file.getRemotePath());
+            } catch (IOException e) {
+                Timber.w(e, "Prefetch of %s failed", file.getRemotePath());
+            } finally {
+                try {
+                    dataSource.close();
+                } catch (IOException e) {
+                    Timber.w(e);
+                }
+            }
+        });
+    }
+
+    private static String buildKey(OCFile file, Account account) {
+        return account.name + ":" + file.getRemotePath() + ":" + file.getEtag();
+    }
+
+    /**
+     * Counters of the bytes read during a playback, and of how many of them came from the cache.
+     */
+    public static class PlaybackStats implements CacheDataSource.EventListener {
+
+        private final AtomicLong mBytesRead = new AtomicLong();
+        private final AtomicLong mCachedBytesRead = new AtomicLong();
+
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            mCachedBytesRead.addAndGet(cachedBytesRead);
+        }
+
+        void addBytesRead(long bytes) {
+            mBytesRead.addAndGet(bytes);
+        }
+
+        public long getBytesRead() {
+            return mBytesRead.get();
+        }
+
+        public long getCachedBytesRead() {
+            return mCachedBytesRead.get();
+        }
+
+        public void log(String fileName) {
+            Timber.d("Playback of %s: %d bytes read, %d from the media cache",
+                    fileName, getBytesRead(), getCachedBytesRead());
+        }
+    }
+
+    /**
+     * Data source that replaces the cache key of the requests, which is the URI by default, and sets their length
+     * when unknown, so that a fully cached file is played without connecting to the server.
+     */
+    private static class KeyedDataSource implements DataSource {
+
+        private final DataSource mDataSource;
+        private final String mKey;
+        private final long mLength;
+        private final PlaybackStats mStats;
+
+        KeyedDataSource(DataSource dataSource, String key, long length, PlaybackStats stats) {
+            mDataSource = dataSource;
+            mKey = key;
+            mLength = length;
+            mStats = stats;
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            long length = dataSpec.length;
+            if (length == C.LENGTH_UNSET && mLength > dataSpec.absoluteStreamPosition) {
+                length = mLength - dataSpec.absoluteStreamPosition;
+            }
+            return mDataSource.open(new DataSpec(
+                    dataSpec.uri,
+                    dataSpec.absoluteStreamPosition,
+                    dataSpec.position,
+                    length,
+                    mKey,
+                    dataSpec.flags
+            ));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            final int read = mDataSource.read(buffer, offset, readLength);
+            if (read > 0 && mStats != null) {
+                mStats.addBytesRead(read);
+            }
+            return read;
+        }
+
+        @Override
+        public Uri getUri() {
+            return mDataSource.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mDataSource.close();
+        }
+    }
+}
@@ -40,16 +40,19 @@ public class PrepareVideoPlayerAsyncTask extends AsyncTask<Object, Void, MediaSo
     private OCFile mFile;
     private Account mAccount;
     private Handler mHandler;
+    private MediaCache.PlaybackStats mPlaybackStats;
 
     private static final DefaultBandwidthMeter BANDWIDTH_METER = new DefaultBandwidthMeter();
 
     public PrepareVideoPlayerAsyncTask(Context context, OnPrepareVideoPlayerTaskListener listener,
-                                       OCFile file, Account account, Handler mainHandler) {
+                                       OCFile file, Account account, Handler mainHandler,
+                                       MediaCache.PlaybackStats playbackStats) {
         mContext = context;
         mListener = new WeakReference<>(listener);
         mFile = file;
         mAccount = account;
         mHandler = mainHandler;
+        mPlaybackStats = playbackStats;
     }
 
     @Override
@@ -76,6 +79,18 @@ public class PrepareVideoPlayerAsyncTask extends AsyncTask<Object, Void, MediaSo
             DataSource.Factory mediaDataSourceFactory = new DefaultDataSourceFactory(mContext,
                     bandwidthMeter, httpDataSourceFactory);
 
+            if (!mFile.isDown()) {
+                // Streamed content is kept in a disk cache, and read from it when available
+                MediaCache mediaCache = MediaCache.getInstance();
+                if (mediaCache.isFullyCached(mFile, mAccount)) {
+                    Timber.d("%s is fully cached, playing it without streaming", mFile.getRemotePath());
+                } else {
+                    mediaCache.prefetch(uri, mFile, mAccount, mediaDataSourceFactory);
+                }
+                mediaDataSourceFactory = mediaCache.buildDataSourceFactory(mFile, mAccount,
+                        mediaDataSourceFactory, mPlaybackStats);
+            }
+
             // This represents the media to be played.
             mediaSource = buildMediaSource(mediaDataSourceFactory, uri);
 
@@ -39,6 +39,7 @@ import androidx.appcompat.app.ActionBar;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.viewpager.widget.ViewPager;
+import com.bumptech.glide.Glide;
 import com.owncloud.android.R;
 import com.owncloud.android.authentication.AccountUtils;
 import com.owncloud.android.datamodel.FileDataStorageManager;
@@ -60,6 +61,8 @@ import com.owncloud.android.utils.Extras;
 import com.owncloud.android.utils.PreferenceUtils;
 import timber.log.Timber;
 
+import java.io.File;
+
 /**
  * Holds a swiping galley where image files contained in an ownCloud directory are shown
  */
@@ -69,6 +72,11 @@ public class PreviewImageActivity extends FileActivity implements
 
     private static final int INITIAL_HIDE_DELAY = 0; // immediate hide
 
+    /**
+     * Distance, in pages, up to which images around the current one are decoded in advance
+     */
+    private static final int PRELOAD_DISTANCE = 2;
+
     private ViewPager mViewPager;
     private PreviewImagePagerAdapter mPreviewImagePagerAdapter;
     private int mSavedPosition = 0;
@@ -326,14 +334,22 @@ public class PreviewImageActivity extends FileActivity implements
     public void onPageSelected(int position) {
         Timber.d("onPageSelected %s", position);
 
+        preloadImagesAround(position);
+
         if (getOperationsServiceBinder() != null) {
             mSavedPosition = position;
             mHasSavedPosition = true;
 
             OCFile currentFile = mPreviewImagePagerAdapter.getFileAt(position);
+            if (currentFile == null) {
+                // removed since the pager was loaded, by a synchronization for instance
+                reloadImages();
+                return;
+            }
             getSupportActionBar().setTitle(currentFile.getFileName());
             setDrawerIndicatorEnabled(false);
-            if (!mPreviewImagePagerAdapter.pendingErrorAt(position)) {
+            // not downloaded images are shown with a server preview, until the user asks for the original
+            if (currentFile.isDown() && !mPreviewImagePagerAdapter.pendingErrorAt(position)) {
                 getFileOperationsHelper().syncFile(currentFile);
             }
 
@@ -353,6 +369,46 @@ public class PreviewImageActivity extends FileActivity implements
         }
     }
 
+    private void reloadImages() {
+        mPreviewImagePagerAdapter.reloadImages();
+        if (mPreviewImagePagerAdapter.getCount() == 0) {
+            backToDisplayActivity();
+            return;
+        }
+        // the current position may show another image now, or none if the removed ones were at the end
+        getHandler().post(() -> onPageSelected(mViewPager.getCurrentItem()));
+    }
+
+    /**
+     * Decodes in background the downloaded images close to the current page that the {@link ViewPager} does not
+     * keep alive yet, so that they are in the memory cache of Glide when their fragments are created.
+     *
+     * @param position Position of the current page.
+     */
+    private void preloadImagesAround(int position) {
+        final int width = mViewPager.getWidth();
+        final int height = mViewPager.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        for (int distance = mViewPager.getOffscreenPageLimit() + 1; distance <= PRELOAD_DISTANCE; distance++) {
+            preloadImageAt(position - distance, width, height);
+            preloadImageAt(position + distance, width, height);
+        }
+    }
+
+    private void preloadImageAt(int position, int width, int height) {
+        if (position < 0 || position >= mPreviewImagePagerAdapter.getCount()) {
+            return;
+        }
+        OCFile file = mPreviewImagePagerAdapter.getFileAt(position);
+        if (file != null && file.isDown()) {
+            Glide.with(this)
+                    .load(new File(file.getStoragePath()))
+                    .preload(width, height);
+        }
+    }
+
     /**
      * Called when the scroll state changes. Useful for discovering when the user begins dragging,
      * when the pager is automatically settling to the current page. when it is fully stopped/idle.
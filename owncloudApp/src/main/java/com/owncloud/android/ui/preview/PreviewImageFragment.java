@@ -26,7 +26,11 @@ import android.accounts.Account;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -46,6 +50,7 @@ import com.bumptech.glide.request.target.Target;
 import com.github.chrisbanes.photoview.PhotoView;
 import com.owncloud.android.R;
 import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.ImagePreviewCache;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.files.FileMenuFilter;
 import com.owncloud.android.ui.controller.TransferProgressController;
@@ -58,13 +63,13 @@ import timber.log.Timber;
 import java.io.File;
 
 /**
- * This fragment shows a preview of a downloaded image.
+ * This fragment shows a preview of an image.
+ * <p>
+ * If the image is not downloaded, a screen-sized preview rendered by the server is shown instead; the original
+ * is only downloaded when the user requests it, or zooms into the preview.
  * <p>
  * Trying to get an instance with a NULL {@link OCFile} will produce an
  * {@link IllegalStateException}.
- * <p>
- * If the {@link OCFile} passed is not downloaded, an {@link IllegalStateException} is generated on
- * instantiation too.
  */
 public class PreviewImageFragment extends FileFragment {
 
@@ -74,11 +79,26 @@ public class PreviewImageFragment extends FileFragment {
     private static final String ARG_ACCOUNT = "ACCOUNT";
     private static final String ARG_IGNORE_FIRST = "IGNORE_FIRST";
 
+    /**
+     * Maximum size of the previews requested to the server, in pixels
+     */
+    private static final int MAX_SERVER_PREVIEW_SIZE = 2048;
+
+    /**
+     * Zoom into a server preview that triggers the download of the original image
+     */
+    private static final float ZOOM_TO_DOWNLOAD_ORIGINAL = 2f;
+
     private ProgressBar mProgressBar;
     private TransferProgressController mProgressController;
     private PhotoView mImageView;
 
     private Bitmap mBitmap = null;
+    private TiledImageDrawable mTiledImageDrawable = null;
+    private LoadTiledImageTask mLoadTiledImageTask = null;
+    private LoadServerPreviewTask mLoadServerPreviewTask = null;
+    private boolean mOriginalRequested = false;
+    private long mLoadStartTime;
 
     private Account mAccount;
     private boolean mIgnoreFirstSavedState;
@@ -194,9 +214,6 @@ public class PreviewImageFragment extends FileFragment {
         if (getFile() == null) {
             throw new IllegalStateException("Instanced with a NULL OCFile");
         }
-        if (!getFile().isDown()) {
-            throw new IllegalStateException("There is no local file to preview");
-        }
     }
 
     /**
@@ -283,6 +300,19 @@ public class PreviewImageFragment extends FileFragment {
             item.setEnabled(false);
         }
 
+        // a server preview can not be sent nor opened, the original is needed
+        if (getFile() != null && !getFile().isDown()) {
+            item = menu.findItem(R.id.action_send_file);
+            if (item != null) {
+                item.setVisible(false);
+                item.setEnabled(false);
+            }
+            item = menu.findItem(R.id.action_open_file_with);
+            if (item != null) {
+                item.setVisible(false);
+                item.setEnabled(false);
+            }
+        }
     }
 
     /**
@@ -316,6 +346,10 @@ public class PreviewImageFragment extends FileFragment {
                 mContainerActivity.getFileOperationsHelper().syncFile(getFile());
                 return true;
             }
+            case R.id.action_download_file: {
+                downloadOriginal();
+                return true;
+            }
             case R.id.action_set_available_offline: {
                 mContainerActivity.getFileOperationsHelper().toggleAvailableOffline(getFile(), true);
                 return true;
@@ -335,6 +369,11 @@ public class PreviewImageFragment extends FileFragment {
 
     @Override
     public void onDestroy() {
+        releaseTiledImage();
+        if (mLoadServerPreviewTask != null) {
+            mLoadServerPreviewTask.abort();
+            mLoadServerPreviewTask = null;
+        }
         if (mBitmap != null) {
             mBitmap.recycle();
             System.gc();
@@ -393,7 +432,21 @@ public class PreviewImageFragment extends FileFragment {
     }
 
     private void loadAndShowImage() {
+        mLoadStartTime = SystemClock.elapsedRealtime();
 
+        if (!getFile().isDown()) {
+            loadAndShowServerPreview();
+            return;
+        }
+
+        // the image size is read in background; if too big for a single bitmap, only the visible tiles at the
+        // current zoom are decoded
+        releaseTiledImage();
+        mLoadTiledImageTask = new LoadTiledImageTask();
+        mLoadTiledImageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, getFile().getStoragePath());
+    }
+
+    private void loadAndShowLocalImage() {
         Glide.with(getContext())
                 .load(new File(getFile().getStoragePath()))
                 .listener(new RequestListener<Drawable>() {
@@ -409,6 +462,7 @@ public class PreviewImageFragment extends FileFragment {
                     public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
                                                    DataSource dataSource, boolean isFirstResource) {
                         Timber.d("Loading image %s", getFile().getFileName());
+                        logTimeToFirstPixel("local file");
                         return false;
                     }
                 })
@@ -417,6 +471,177 @@ public class PreviewImageFragment extends FileFragment {
         mImageView.setVisibility(View.VISIBLE);
     }
 
+    private void loadAndShowServerPreview() {
+        if (mBitmap != null) {
+            showServerPreview(mBitmap);
+            return;
+        }
+        if (mLoadServerPreviewTask == null) {
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            int px = Math.min(Math.max(metrics.widthPixels, metrics.heightPixels), MAX_SERVER_PREVIEW_SIZE);
+            mLoadServerPreviewTask = new LoadServerPreviewTask(getFile(), mAccount, px);
+            mLoadServerPreviewTask.execute();
+        }
+    }
+
+    private void showServerPreview(Bitmap preview) {
+        mBitmap = preview;
+        mImageView.setImageBitmap(preview);
+        mImageView.setOnScaleChangeListener((scaleFactor, focusX, focusY) -> {
+            if (mImageView.getScale() >= ZOOM_TO_DOWNLOAD_ORIGINAL) {
+                downloadOriginal();
+            }
+        });
+        mImageView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Requests the download of the original image; once finished, the adapter replaces this fragment
+     * with a new one showing the downloaded file.
+     */
+    private void downloadOriginal() {
+        if (!mOriginalRequested && !getFile().isDown()) {
+            mOriginalRequested = true;
+            mProgressController.showProgressBar();
+            mContainerActivity.getFileOperationsHelper().syncFile(getFile());
+        }
+    }
+
+    /**
+     * @return 'True' if the fragment shows, or will show, a preview of the image rendered by the server
+     * instead of the downloaded file.
+     */
+    public boolean isShowingServerPreview() {
+        return getFile() != null && !getFile().isDown();
+    }
+
+    private void logTimeToFirstPixel(String source) {
+        Timber.d("Time to first pixel of %s from %s: %d ms",
+                getFile().getFileName(), source, SystemClock.elapsedRealtime() - mLoadStartTime);
+    }
+
+    private void showTiledImage(TiledImageDrawable drawable) {
+        mTiledImageDrawable = drawable;
+        mImageView.setOnMatrixChangeListener(displayRect ->
+                drawable.updateViewport(displayRect, mImageView.getWidth(), mImageView.getHeight())
+        );
+        mImageView.setImageDrawable(drawable);
+        if (mImageView.getWidth() > 0 && mImageView.getHeight() > 0) {
+            float maxScale = drawable.getMaxUsefulScale(mImageView.getWidth(), mImageView.getHeight());
+            if (maxScale > mImageView.getMaximumScale()) {
+                mImageView.setMaximumScale(maxScale);
+            }
+        }
+        mImageView.setVisibility(View.VISIBLE);
+    }
+
+    private void releaseTiledImage() {
+        if (mLoadTiledImageTask != null) {
+            mLoadTiledImageTask.cancel(true);
+            mLoadTiledImageTask = null;
+        }
+        if (mTiledImageDrawable != null) {
+            mImageView.setOnMatrixChangeListener(null);
+            mImageView.setImageDrawable(null);
+            mTiledImageDrawable.recycle();
+            mTiledImageDrawable = null;
+        }
+    }
+
+    /**
+     * Checks in background if an image is too big for a single bitmap and, if so, prepares a
+     * {@link TiledImageDrawable} for it. Smaller images are loaded with Glide once checked.
+     */
+    private class LoadTiledImageTask extends AsyncTask<String, Void, TiledImageDrawable> {
+
+        private boolean mTiled = false;
+
+        @Override
+        protected TiledImageDrawable doInBackground(String... params) {
+            mTiled = TiledImageDrawable.shouldUseTiles(params[0]);
+            return mTiled ? TiledImageDrawable.create(params[0]) : null;
+        }
+
+        @Override
+        protected void onPostExecute(TiledImageDrawable drawable) {
+            mLoadTiledImageTask = null;
+            if (!mTiled) {
+                if (isAdded()) {
+                    loadAndShowLocalImage();
+                }
+                return;
+            }
+            if (drawable == null) {
+                Timber.e("Error loading tiled image");
+                return;
+            }
+            if (!isAdded()) {
+                drawable.recycle();
+                return;
+            }
+            Timber.d("Loading tiled image %s", getFile().getFileName());
+            logTimeToFirstPixel("tiled local file");
+            showTiledImage(drawable);
+        }
+
+        @Override
+        protected void onCancelled(TiledImageDrawable drawable) {
+            if (drawable != null) {
+                drawable.recycle();
+            }
+        }
+    }
+
+    /**
+     * Gets a screen-sized preview of a not downloaded image from the server, or from its cache, in background.
+     * If the server can not provide it, the original image is downloaded instead.
+     */
+    private class LoadServerPreviewTask extends AsyncTask<Void, Void, Bitmap> {
+
+        private final OCFile mFile;
+        private final Account mAccount;
+        private final int mPx;
+        private final CancellationSignal mSignal = new CancellationSignal();
+
+        LoadServerPreviewTask(OCFile file, Account account, int px) {
+            mFile = file;
+            mAccount = account;
+            mPx = px;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            return ImagePreviewCache.getInstance().getPreview(mFile, mAccount, mPx, mSignal);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap preview) {
+            mLoadServerPreviewTask = null;
+            if (!isAdded()) {
+                return;
+            }
+            if (preview == null) {
+                Timber.w("No server preview for %s, downloading the original", mFile.getFileName());
+                downloadOriginal();
+                return;
+            }
+            logTimeToFirstPixel("server preview");
+            showServerPreview(preview);
+        }
+
+        @Override
+        protected void onCancelled(Bitmap preview) {
+            if (preview != null) {
+                preview.recycle();
+            }
+        }
+
+        void abort() {
+            mSignal.cancel();
+            cancel(true);
+        }
+    }
+
     /**
      * Helper method to test if an {@link OCFile} can be passed to a {@link PreviewImageFragment}
      * to be previewed.
@@ -21,6 +21,7 @@
 package com.owncloud.android.ui.preview;
 
 import android.accounts.Account;
+import android.util.LruCache;
 import android.view.ViewGroup;
 
 import androidx.fragment.app.Fragment;
@@ -38,7 +39,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Adapter class that provides Fragment instances
@@ -46,7 +46,15 @@ import java.util.Vector;
 //public class PreviewImagePagerAdapter extends PagerAdapter {
 public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
 
-    private Vector<OCFile> mImageFiles;
+    /**
+     * Number of image files kept in memory; the rest are only known by their ids
+     */
+    private static final int IMAGE_FILES_CACHE_SIZE = 32;
+
+    private long[] mImageIds;
+    private Map<Long, Integer> mImagePositions;
+    private LruCache<Long, OCFile> mImageFiles;
+    private OCFile mParentFolder;
     private Account mAccount;
     private Set<Object> mObsoleteFragments;
     private Set<Integer> mObsoletePositions;
@@ -77,12 +85,11 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
             throw new IllegalArgumentException("NULL storage manager");
         }
 
+        mParentFolder = parentFolder;
         mAccount = account;
         mStorageManager = storageManager;
-        mImageFiles = mStorageManager.getFolderImages(parentFolder);
-
-        mImageFiles = FileStorageUtils.sortFolder(mImageFiles, FileStorageUtils.mSortOrderFileDisp,
-                FileStorageUtils.mSortAscendingFileDisp);
+        loadImageIds();
+        mImageFiles = new LruCache<>(IMAGE_FILES_CACHE_SIZE);
 
         mObsoleteFragments = new HashSet<>();
         mObsoletePositions = new HashSet<>();
@@ -91,51 +98,90 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
         mCachedFragments = new HashMap<>();
     }
 
+    private void loadImageIds() {
+        mImageIds = mStorageManager.getFolderImageIds(mParentFolder, FileStorageUtils.mSortOrderFileDisp,
+                FileStorageUtils.mSortAscendingFileDisp);
+        mImagePositions = new HashMap<>(mImageIds.length * 2);
+        for (int i = 0; i < mImageIds.length; i++) {
+            mImagePositions.put(mImageIds[i], i);
+        }
+    }
+
     /**
-     * Returns the image files handled by the adapter.
+     * Reads again the images in the folder, after some of them were removed, and replaces every page.
+     */
+    public void reloadImages() {
+        loadImageIds();
+        mImageFiles.evictAll();
+        // positions may have moved, the state kept by position is not valid anymore
+        mObsoleteFragments.addAll(mCachedFragments.values());
+        mObsoletePositions.clear();
+        mDownloadErrors.clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Returns the image file at a position of the adapter.
      *
-     * @return A vector with the image files handled by the adapter.
+     * @return The image file, or null if it was removed after the images were read.
      */
     protected OCFile getFileAt(int position) {
-        return mImageFiles.get(position);
+        final long id = mImageIds[position];
+        OCFile file = mImageFiles.get(id);
+        if (file == null) {
+            file = mStorageManager.getFileById(id);
+            if (file != null) {
+                mImageFiles.put(id, file);
+            }
+        }
+        return file;
     }
 
     public Fragment getItem(int i) {
-        OCFile file = mImageFiles.get(i);
+        OCFile file = getFileAt(i);
         Fragment fragment;
-        if (file.isDown()) {
+        if (file == null) {
+            // removed, the page stays empty until the images are reloaded
+            fragment = new Fragment();
+            mObsoleteFragments.add(fragment);
+            return fragment;
+        }
+        if (file.isDown() || !mDownloadErrors.contains(i)) {
+            // not downloaded images start with a preview from the server
             fragment = PreviewImageFragment.newInstance(
                     file,
                     mAccount,
                     mObsoletePositions.contains(i)
             );
 
-        } else if (mDownloadErrors.contains(i)) {
+        } else {
             fragment = FileDownloadFragment.newInstance(file, mAccount, true);
             ((FileDownloadFragment) fragment).setError(true);
             mDownloadErrors.remove(i);
-
-        } else {
-            fragment = FileDownloadFragment.newInstance(
-                    file, mAccount, mObsoletePositions.contains(i)
-            );
         }
         mObsoletePositions.remove(i);
         return fragment;
     }
 
     public int getFilePosition(OCFile file) {
-        return mImageFiles.indexOf(file);
+        if (file != null) {
+            Integer position = mImagePositions.get(file.getFileId());
+            if (position != null) {
+                return position;
+            }
+        }
+        return -1;
     }
 
     @Override
     public int getCount() {
-        return mImageFiles.size();
+        return mImageIds.length;
     }
 
     @Override
     public CharSequence getPageTitle(int position) {
-        return mImageFiles.get(position).getFileName();
+        OCFile file = getFileAt(position);
+        return file != null ? file.getFileName() : null;
     }
 
     private void updateFile(int position, OCFile file) {
@@ -144,7 +190,7 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
             mObsoleteFragments.add(fragmentToUpdate);
         }
         mObsoletePositions.add(position);
-        mImageFiles.set(position, file);
+        mImageFiles.put(mImageIds[position], file);
     }
 
     private void updateWithDownloadError(int position) {
@@ -183,7 +229,9 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
         Object fragment = super.instantiateItem(container, position);
-        mCachedFragments.put(position, (FileFragment) fragment);
+        if (fragment instanceof FileFragment) {
+            mCachedFragments.put(position, (FileFragment) fragment);
+        }
         return fragment;
     }
 
@@ -222,9 +270,12 @@ public class PreviewImagePagerAdapter extends FragmentStatePagerAdapter {
                 }
             }
             FileFragment fragment = mCachedFragments.get(position);
-            if (fragment instanceof FileDownloadFragment && success) {
+            boolean showsNoLocalFile = fragment instanceof FileDownloadFragment ||
+                    (fragment instanceof PreviewImageFragment &&
+                            ((PreviewImageFragment) fragment).isShowingServerPreview());
+            if (showsNoLocalFile && success) {
                 // trigger the creation of new PreviewImageFragment to replace current FileDownloadFragment
-                // only if the download succeded. If not trigger an error
+                // or server preview only if the download succeded. If not trigger an error
                 notifyDataSetChanged();
             } else if (fragment != null) {
                 fragment.onSyncEvent(action, success, null);
@@ -23,22 +23,28 @@ package com.owncloud.android.ui.preview;
 import android.accounts.Account;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ListView;
 import android.widget.ProgressBar;
-import android.widget.TextView;
 
+import androidx.appcompat.widget.SearchView;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
+import com.google.android.material.snackbar.Snackbar;
 import com.owncloud.android.R;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.files.FileMenuFilter;
+import com.owncloud.android.ui.adapter.TextLinesListAdapter;
 import com.owncloud.android.ui.controller.TransferProgressController;
 import com.owncloud.android.ui.dialog.ConfirmationDialogFragment;
 import com.owncloud.android.ui.dialog.LoadingDialog;
@@ -47,14 +53,10 @@ import com.owncloud.android.ui.fragment.FileFragment;
 import com.owncloud.android.utils.PreferenceUtils;
 import timber.log.Timber;
 
-import java.io.BufferedWriter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
 
 public class PreviewTextFragment extends FileFragment {
     private static final String EXTRA_FILE = "FILE";
@@ -63,8 +65,11 @@ public class PreviewTextFragment extends FileFragment {
     private Account mAccount;
     private ProgressBar mProgressBar;
     private TransferProgressController mProgressController;
-    private TextView mTextPreview;
+    private ListView mTextPreview;
+    private MappedTextFile mTextFile;
+    private TextLinesListAdapter mLinesAdapter;
     private TextLoadAsyncTask mTextLoadTask;
+    private SearchTask mSearchTask;
 
     /**
      * Public factory method to create new PreviewTextFragment instances.
@@ -167,83 +172,117 @@ public class PreviewTextFragment extends FileFragment {
         Timber.v("onStart");
 
         mProgressController.startListeningProgressFor(getFile(), mAccount);
-        loadAndShowTextPreview();
+        if (mLinesAdapter == null || mTextPreview.getAdapter() != mLinesAdapter) {
+            loadAndShowTextPreview();
+        }
     }
 
     private void loadAndShowTextPreview() {
+        cancelTextLoad();
         mTextLoadTask = new TextLoadAsyncTask(new WeakReference<>(mTextPreview));
-        mTextLoadTask.execute(getFile().getStoragePath());
+        // the index is built in the task; it must not block other tasks in the serial executor
+        mTextLoadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, getFile().getStoragePath());
+    }
+
+    private void cancelTextLoad() {
+        if (mTextLoadTask != null) {
+            mTextLoadTask.abort();
+            mTextLoadTask.dismissLoadingDialog();
+            mTextLoadTask = null;
+        }
+        if (mSearchTask != null) {
+            mSearchTask.abort();
+            mSearchTask = null;
+        }
+        if (mTextFile != null) {
+            mTextFile.close();
+            mTextFile = null;
+            mLinesAdapter = null;
+        }
     }
 
     /**
-     * Reads the file to preview and shows its contents. Too critical to be anonymous.
+     * Maps the file to preview, and shows its lines while they are indexed. Too critical to be anonymous.
      */
-    private class TextLoadAsyncTask extends AsyncTask<Object, Void, StringWriter> {
+    private class TextLoadAsyncTask extends AsyncTask<String, Integer, MappedTextFile> {
         private final String DIALOG_WAIT_TAG = "DIALOG_WAIT";
-        private final WeakReference<TextView> mTextViewReference;
+        private final WeakReference<ListView> mListViewReference;
+        private volatile MappedTextFile mLoadingFile;
+        private long mStartTime;
 
-        private TextLoadAsyncTask(WeakReference<TextView> textView) {
-            mTextViewReference = textView;
+        private TextLoadAsyncTask(WeakReference<ListView> listView) {
+            mListViewReference = listView;
         }
 
         @Override
         protected void onPreExecute() {
+            mStartTime = SystemClock.elapsedRealtime();
             showLoadingDialog();
         }
 
         @Override
-        protected StringWriter doInBackground(java.lang.Object... params) {
+        protected MappedTextFile doInBackground(String... params) {
             if (params.length != 1) {
                 throw new IllegalArgumentException("The parameter to " + TextLoadAsyncTask.class.getName() + " must " +
                         "be (1) the file location");
             }
-            final String location = (String) params[0];
-
-            FileInputStream inputStream = null;
-            Scanner sc = null;
-            StringWriter source = new StringWriter();
-            BufferedWriter bufferedWriter = new BufferedWriter(source);
             try {
-                inputStream = new FileInputStream(location);
-                sc = new Scanner(inputStream);
-                while (sc.hasNextLine()) {
-                    bufferedWriter.append(sc.nextLine());
-                    if (sc.hasNextLine()) {
-                        bufferedWriter.append("\n");
-                    }
-                }
-                bufferedWriter.close();
-                IOException exc = sc.ioException();
-                if (exc != null) {
-                    throw exc;
-                }
+                mLoadingFile = MappedTextFile.open(params[0]);
             } catch (IOException e) {
                 Timber.e(e);
-            } finally {
-                if (inputStream != null) {
-                    try {
-                        inputStream.close();
-                    } catch (IOException e) {
-                        Timber.e(e);
-                    }
-                }
-                if (sc != null) {
-                    sc.close();
-                }
+                return null;
+            }
+            if (!isCancelled()) {
+                mLoadingFile.buildIndex(lineCount -> publishProgress(lineCount));
             }
-            return source;
+            return mLoadingFile;
         }
 
         @Override
-        protected void onPostExecute(final StringWriter stringWriter) {
-            final TextView textView = mTextViewReference.get();
-
-            if (textView != null) {
-                textView.setText(new String(stringWriter.getBuffer()));
-                textView.setVisibility(View.VISIBLE);
+        protected void onProgressUpdate(Integer... lineCount) {
+            final ListView listView = mListViewReference.get();
+            if (listView == null || isCancelled()) {
+                return;
+            }
+            if (mTextFile != mLoadingFile) {
+                // first lines available
+                mTextFile = mLoadingFile;
+                mLinesAdapter = new TextLinesListAdapter(listView.getContext(), mTextFile);
+                listView.setAdapter(mLinesAdapter);
+                listView.setVisibility(View.VISIBLE);
+                dismissLoadingDialog();
+                Timber.d("Text preview of %s: first lines shown in %d ms",
+                        getFile().getFileName(), SystemClock.elapsedRealtime() - mStartTime);
             }
+            mLinesAdapter.setLineCount(mTextFile.getLineCount());
+        }
 
+        @Override
+        protected void onPostExecute(MappedTextFile textFile) {
+            mTextLoadTask = null;
             dismissLoadingDialog();
+            if (textFile != null) {
+                Timber.d("Text preview of %s: %d lines indexed in %d ms", getFile().getFileName(),
+                        textFile.getLineCount(), SystemClock.elapsedRealtime() - mStartTime);
+            }
+        }
+
+        @Override
+        protected void onCancelled(MappedTextFile textFile) {
+            if (textFile != null) {
+                textFile.close();
+            }
+        }
+
+        /**
+         * Cancels the task, stopping the indexing of the file.
+         */
+        void abort() {
+            cancel(true);
+            final MappedTextFile loadingFile = mLoadingFile;
+            if (loadingFile != null) {
+                loadingFile.close();
+            }
         }
 
         /**
@@ -278,6 +317,73 @@ public class PreviewTextFragment extends FileFragment {
         }
     }
 
+    /**
+     * Searches for the next line containing a text, from the one highlighted or the first visible one.
+     */
+    private void searchInFile(String query) {
+        if (mTextFile == null || mLinesAdapter == null) {
+            return;
+        }
+        if (mSearchTask != null) {
+            mSearchTask.abort();
+        }
+        int fromLine = mLinesAdapter.getHighlightedLine();
+        if (fromLine < 0) {
+            fromLine = mTextPreview.getFirstVisiblePosition() - 1;
+        }
+        mSearchTask = new SearchTask(mTextFile, query, fromLine);
+        mSearchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Scans the mapped file for a text in background.
+     */
+    private class SearchTask extends AsyncTask<Void, Void, Integer> {
+        private final MappedTextFile mFile;
+        private final String mQuery;
+        private final int mFromLine;
+        private final CancellationSignal mSignal = new CancellationSignal();
+
+        private SearchTask(MappedTextFile file, String query, int fromLine) {
+            mFile = file;
+            mQuery = query;
+            mFromLine = fromLine;
+        }
+
+        @Override
+        protected Integer doInBackground(Void... params) {
+            try {
+                return mFile.find(mQuery, mFromLine, mSignal);
+            } catch (OperationCanceledException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer line) {
+            mSearchTask = null;
+            if (!isAdded() || mFile != mTextFile) {
+                return;
+            }
+            if (line >= 0) {
+                mLinesAdapter.setLineCount(mFile.getLineCount());
+                mLinesAdapter.setHighlightedLine(line);
+                mTextPreview.setSelection(line);
+            } else {
+                Snackbar.make(
+                        getView(),
+                        getString(R.string.preview_text_no_matches, mQuery),
+                        Snackbar.LENGTH_SHORT
+                ).show();
+            }
+        }
+
+        void abort() {
+            mSignal.cancel();
+            cancel(true);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -285,6 +391,23 @@ public class PreviewTextFragment extends FileFragment {
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
         inflater.inflate(R.menu.file_actions_menu, menu);
+        inflater.inflate(R.menu.preview_text_menu, menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search_in_file).getActionView();
+        searchView.setQueryHint(getString(R.string.actionbar_search_in_file));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // submitting the same text again goes to the next match
+                searchInFile(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                return false;
+            }
+        });
     }
 
     /**
@@ -415,8 +538,8 @@ public class PreviewTextFragment extends FileFragment {
         super.onStop();
         Timber.v("onStop");
         if (mTextLoadTask != null) {
-            mTextLoadTask.cancel(Boolean.TRUE);
-            mTextLoadTask.dismissLoadingDialog();
+            // the indexing is restarted in onStart
+            cancelTextLoad();
         }
         mProgressController.stopListeningProgressFor(getFile(), mAccount);
     }
@@ -66,6 +66,7 @@ public class PreviewVideoActivity extends FileActivity implements ExoPlayer.Even
     private SimpleExoPlayerView simpleExoPlayerView;
 
     private SimpleExoPlayer player;
+    private MediaCache.PlaybackStats mPlaybackStats;
     private DefaultTrackSelector trackSelector;
 
     private boolean mAutoplay; // when 'true', the playback starts immediately with the activity
@@ -164,8 +165,9 @@ public class PreviewVideoActivity extends FileActivity implements ExoPlayer.Even
         player.setPlayWhenReady(mAutoplay);
 
         // Prepare video player asynchronously
+        mPlaybackStats = new MediaCache.PlaybackStats();
         new PrepareVideoPlayerAsyncTask(getApplicationContext(), this, getFile(), getAccount(),
-                mainHandler).execute();
+                mainHandler, mPlaybackStats).execute();
     }
 
     /**
@@ -185,6 +187,9 @@ public class PreviewVideoActivity extends FileActivity implements ExoPlayer.Even
             player.release();
             player = null;
             trackSelector = null;
+            if (mPlaybackStats != null) {
+                mPlaybackStats.log(getFile().getFileName());
+            }
             Timber.v("playerReleased");
         }
     }
@@ -94,6 +94,7 @@ public class PreviewVideoFragment extends FileFragment implements View.OnClickLi
     private SimpleExoPlayerView simpleExoPlayerView;
 
     private SimpleExoPlayer player;
+    private MediaCache.PlaybackStats mPlaybackStats;
     private DefaultTrackSelector trackSelector;
 
     private ImageButton fullScreenButton;
@@ -451,8 +452,9 @@ public class PreviewVideoFragment extends FileFragment implements View.OnClickLi
         simpleExoPlayerView.setPlayer(player);
 
         // Prepare video player asynchronously
+        mPlaybackStats = new MediaCache.PlaybackStats();
         new PrepareVideoPlayerAsyncTask(getActivity(), this,
-                getFile(), mAccount, mainHandler).execute();
+                getFile(), mAccount, mainHandler, mPlaybackStats).execute();
     }
 
     /**
@@ -472,6 +474,9 @@ public class PreviewVideoFragment extends FileFragment implements View.OnClickLi
             updateResumePosition();
             player.release();
             trackSelector = null;
+            if (mPlaybackStats != null) {
+                mPlaybackStats.log(getFile().getFileName());
+            }
             Timber.v("playerReleased");
         }
     }
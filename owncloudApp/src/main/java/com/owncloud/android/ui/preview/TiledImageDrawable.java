@@ -0,0 +1,332 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Drawable for images too big to be decoded in a single bitmap.
+ * <p>
+ * A downsampled version of the whole image is always drawn; on top of it, the tiles of the image covering the
+ * visible area are decoded with a {@link BitmapRegionDecoder} at the resolution required by the current zoom,
+ * in background, and kept in a memory cache.
+ * <p>
+ * Its intrinsic size is the size of the original image, so it can be zoomed and panned by a
+ * {@link com.github.chrisbanes.photoview.PhotoView}, that must report every change in its display matrix
+ * through {@link #updateViewport(RectF, int, int)}.
+ */
+public class TiledImageDrawable extends Drawable {
+
+    /**
+     * Images with more pixels than this are shown with tiles
+     */
+    private static final long MIN_PIXELS_FOR_TILING = 4096L * 4096L;
+
+    private static final int TILE_SIZE = 512;
+
+    /**
+     * Maximum size of the downsampled image, safe as hardware texture
+     */
+    private static final int MAX_BASE_SIZE = 2048;
+
+    private static final int MAX_TILE_CACHE_SIZE = 1024 * 1024 * 32; // 32MB
+
+    private final BitmapRegionDecoder mDecoder;
+    private final int mImageWidth;
+    private final int mImageHeight;
+
+    private final Bitmap mBaseBitmap;
+    private final int mBaseSampleSize;
+
+    private final LruCache<String, Bitmap> mTileCache;
+    private final Set<String> mPendingTiles = Collections.synchronizedSet(new HashSet<>());
+    private final ExecutorService mDecodingExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // visible area of the image and sample size for the current zoom; guarded by 'this'
+    private final Rect mVisibleRect = new Rect();
+    private int mSampleSize;
+
+    private final Rect mTileRect = new Rect();
+    private final RectF mDestRect = new RectF();
+
+    private TiledImageDrawable(BitmapRegionDecoder decoder, Bitmap baseBitmap, int baseSampleSize) {
+        mDecoder = decoder;
+        mImageWidth = decoder.getWidth();
+        mImageHeight = decoder.getHeight();
+        mBaseBitmap = baseBitmap;
+        mBaseSampleSize = baseSampleSize;
+        mSampleSize = baseSampleSize;
+
+        final int cacheSize = (int) Math.min(MAX_TILE_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 8);
+        mTileCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Checks if an image is big enough to be shown with a {@link TiledImageDrawable}.
+     * <p>
+     * Images with an EXIF orientation are excluded, since {@link BitmapRegionDecoder} does not rotate them.
+     * Reads the file, so it must not be called from the main thread.
+     *
+     * @param path Absolute path to the image file.
+     * @return 'True' if the image should be shown with tiles.
+     */
+    public static boolean shouldUseTiles(String path) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if ((long) options.outWidth * options.outHeight <= MIN_PIXELS_FOR_TILING) {
+            return false;
+        }
+        try {
+            final int orientation = new ExifInterface(path).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL
+            );
+            return orientation == ExifInterface.ORIENTATION_NORMAL ||
+                    orientation == ExifInterface.ORIENTATION_UNDEFINED;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a drawable for the image in path, decoding its downsampled version. Must not be called from the
+     * main thread.
+     *
+     * @param path Absolute path to the image file.
+     * @return The drawable, or null if the image could not be decoded.
+     */
+    @Nullable
+    public static TiledImageDrawable create(String path) {
+        try {
+            final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+            int sampleSize = 1;
+            while (Math.max(decoder.getWidth(), decoder.getHeight()) / sampleSize > MAX_BASE_SIZE) {
+                sampleSize *= 2;
+            }
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            final Bitmap baseBitmap = BitmapFactory.decodeFile(path, options);
+            if (baseBitmap == null) {
+                decoder.recycle();
+                return null;
+            }
+            return new TiledImageDrawable(decoder, baseBitmap, sampleSize);
+
+        } catch (IOException e) {
+            Timber.e(e, "Image %s could not be opened for tiled decoding", path);
+            return null;
+        }
+    }
+
+    /**
+     * Updates the area of the image that is visible, and the resolution it is displayed with.
+     *
+     * @param displayRect Rectangle where the whole image is drawn, in coordinates of the view.
+     * @param viewWidth   Width of the view, in pixels.
+     * @param viewHeight  Height of the view, in pixels.
+     */
+    public void updateViewport(RectF displayRect, int viewWidth, int viewHeight) {
+        if (displayRect == null || displayRect.width() <= 0 || displayRect.height() <= 0) {
+            return;
+        }
+        final float scale = displayRect.width() / mImageWidth;
+
+        synchronized (this) {
+            mVisibleRect.set(
+                    (int) Math.max(0, -displayRect.left / scale),
+                    (int) Math.max(0, -displayRect.top / scale),
+                    (int) Math.min(mImageWidth, (viewWidth - displayRect.left) / scale),
+                    (int) Math.min(mImageHeight, (viewHeight - displayRect.top) / scale)
+            );
+
+            // largest power of two that keeps at least one image pixel per screen pixel
+            int sampleSize = 1;
+            while (sampleSize * 2 * scale <= 1f) {
+                sampleSize *= 2;
+            }
+            mSampleSize = Math.min(sampleSize, mBaseSampleSize);
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * @param viewWidth  Width of the view, in pixels.
+     * @param viewHeight Height of the view, in pixels.
+     * @return Zoom, relative to the image fitting the view, needed to show the image at twice its full resolution.
+     */
+    public float getMaxUsefulScale(int viewWidth, int viewHeight) {
+        final float fitScale = Math.min((float) viewWidth / mImageWidth, (float) viewHeight / mImageHeight);
+        return 2f / fitScale;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mBaseBitmap.isRecycled()) {
+            return;
+        }
+        final Rect bounds = getBounds();
+        canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale((float) bounds.width() / mImageWidth, (float) bounds.height() / mImageHeight);
+
+        mDestRect.set(0, 0, mImageWidth, mImageHeight);
+        canvas.drawBitmap(mBaseBitmap, null, mDestRect, mPaint);
+
+        final int sampleSize;
+        final Rect visibleRect;
+        synchronized (this) {
+            sampleSize = mSampleSize;
+            visibleRect = new Rect(mVisibleRect);
+        }
+
+        if (sampleSize < mBaseSampleSize && !visibleRect.isEmpty()) {
+            final int tileImageSize = TILE_SIZE * sampleSize;
+            for (int top = visibleRect.top / tileImageSize * tileImageSize;
+                 top < visibleRect.bottom; top += tileImageSize) {
+                for (int left = visibleRect.left / tileImageSize * tileImageSize;
+                     left < visibleRect.right; left += tileImageSize) {
+                    mTileRect.set(
+                            left,
+                            top,
+                            Math.min(left + tileImageSize, mImageWidth),
+                            Math.min(top + tileImageSize, mImageHeight)
+                    );
+                    final String key = buildTileKey(sampleSize, left, top);
+                    final Bitmap tile = mTileCache.get(key);
+                    if (tile != null) {
+                        mDestRect.set(mTileRect);
+                        canvas.drawBitmap(tile, null, mDestRect, mPaint);
+                    } else {
+                        requestTile(key, new Rect(mTileRect), sampleSize);
+                    }
+                }
+            }
+        }
+        canvas.restore();
+    }
+
+    private void requestTile(String key, Rect tileRect, int sampleSize) {
+        if (!mPendingTiles.add(key)) {
+            return;
+        }
+        mDecodingExecutor.execute(() -> {
+            try {
+                // the user may have zoomed or panned while the tile waited
+                boolean stillNeeded;
+                synchronized (this) {
+                    stillNeeded = sampleSize == mSampleSize && Rect.intersects(tileRect, mVisibleRect);
+                }
+                if (stillNeeded && !mDecoder.isRecycled()) {
+                    final BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = sampleSize;
+                    final Bitmap tile = mDecoder.decodeRegion(tileRect, options);
+                    if (tile != null) {
+                        mTileCache.put(key, tile);
+                        mMainHandler.post(this::invalidateSelf);
+                    }
+                }
+            } catch (RuntimeException | OutOfMemoryError e) {
+                Timber.e(e, "Tile %s could not be decoded", key);
+                mTileCache.evictAll();
+            } finally {
+                mPendingTiles.remove(key);
+            }
+        });
+    }
+
+    /**
+     * @return 'True' while there are tiles waiting to be decoded.
+     */
+    public boolean isDecodingTiles() {
+        return !mPendingTiles.isEmpty();
+    }
+
+    /**
+     * Releases the decoder and every bitmap held by the drawable; it can not be drawn anymore after this.
+     */
+    public void recycle() {
+        mDecodingExecutor.shutdownNow();
+        mTileCache.evictAll();
+        mMainHandler.removeCallbacksAndMessages(null);
+        mDecoder.recycle();
+        mBaseBitmap.recycle();
+    }
+
+    private static String buildTileKey(int sampleSize, int left, int top) {
+        return sampleSize + "_" + left + "_" + top;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mImageWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mImageHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.utils;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable {@link Bitmap}s that can be reused as decoding targets (through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}) or as scaling canvases, to avoid allocating
+ * a new bitmap for every thumbnail.
+ * <p>
+ * Bitmaps are grouped in buckets by {@link Bitmap.Config} and allocation size; a request is served by
+ * the smallest pooled bitmap big enough to hold it, as long as it does not waste more than
+ * {@link #MAX_SIZE_MULTIPLE} times the requested memory.
+ */
+public class BitmapPool {
+
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> mBuckets =
+            new EnumMap<>(Bitmap.Config.class);
+    private final long mMaxSizeInBytes;
+    private long mCurrentSizeInBytes = 0;
+
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mPuts = 0;
+    private long mEvictions = 0;
+
+    /**
+     * @param maxSizeInBytes Maximum amount of memory retained by the bitmaps in the pool.
+     */
+    public BitmapPool(long maxSizeInBytes) {
+        mMaxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Gets a mutable bitmap of exactly width x height from the pool, or allocates a new one if none
+     * can be reused. The content of the returned bitmap is undefined.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getReusable(width, height, config);
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Gets a bitmap from the pool that can be used as {@link android.graphics.BitmapFactory.Options#inBitmap}
+     * to decode an image of width x height, or null if there is none.
+     */
+    @Nullable
+    public synchronized Bitmap getReusable(int width, int height, Bitmap.Config config) {
+        final int requiredSize = getSizeInBytes(width, height, config);
+        final TreeMap<Integer, ArrayDeque<Bitmap>> sizes = mBuckets.get(config);
+        if (sizes != null) {
+            final Integer size = sizes.ceilingKey(requiredSize);
+            if (size != null && size <= requiredSize * MAX_SIZE_MULTIPLE) {
+                final Bitmap bitmap = removeFromBucket(sizes, size);
+                mCurrentSizeInBytes -= size;
+                mHits++;
+                return bitmap;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not use the bitmap anymore after this call.
+     */
+    public synchronized void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        if (size > mMaxSizeInBytes) {
+            bitmap.recycle();
+            return;
+        }
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = mBuckets.get(bitmap.getConfig());
+        if (sizes == null) {
+            sizes = new TreeMap<>();
+            mBuckets.put(bitmap.getConfig(), sizes);
+        }
+        ArrayDeque<Bitmap> bucket = sizes.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            sizes.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        mCurrentSizeInBytes += size;
+        mPuts++;
+        trimToSize(mMaxSizeInBytes);
+    }
+
+    /**
+     * Empties the pool, recycling every bitmap in it.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    public synchronized long getCurrentSizeInBytes() {
+        return mCurrentSizeInBytes;
+    }
+
+    /**
+     * @return Ratio of requests served with a pooled bitmap, 0 if there were no requests yet.
+     */
+    public synchronized float getHitRate() {
+        final long requests = mHits + mMisses;
+        return requests == 0 ? 0f : (float) mHits / requests;
+    }
+
+    public synchronized void logStats() {
+        Timber.d("Bitmap pool: hits %d, misses %d, hit rate %.2f, puts %d, evictions %d, size %d bytes",
+                mHits, mMisses, getHitRate(), mPuts, mEvictions, mCurrentSizeInBytes);
+    }
+
+    /**
+     * Evicts the biggest bitmaps first, since they are the less likely to be reused for thumbnails.
+     */
+    private void trimToSize(long maxSizeInBytes) {
+        for (TreeMap<Integer, ArrayDeque<Bitmap>> sizes : mBuckets.values()) {
+            while (mCurrentSizeInBytes > maxSizeInBytes && !sizes.isEmpty()) {
+                final int size = sizes.lastKey();
+                removeFromBucket(sizes, size).recycle();
+                mCurrentSizeInBytes -= size;
+                mEvictions++;
+            }
+        }
+    }
+
+    private static Bitmap removeFromBucket(TreeMap<Integer, ArrayDeque<Bitmap>> sizes, int size) {
+        final ArrayDeque<Bitmap> bucket = sizes.get(size);
+        final Bitmap bitmap = bucket.pop();
+        if (bucket.isEmpty()) {
+            sizes.remove(size);
+        }
+        return bitmap;
+    }
+
+    private static int getSizeInBytes(int width, int height, Bitmap.Config config) {
+        final int bytesPerPixel;
+        switch (config) {
+            case ALPHA_8:
+                bytesPerPixel = 1;
+                break;
+            case RGB_565:
+            case ARGB_4444:
+                bytesPerPixel = 2;
+                break;
+            default:
+                bytesPerPixel = 4;
+        }
+        return width * height * bytesPerPixel;
+    }
+}
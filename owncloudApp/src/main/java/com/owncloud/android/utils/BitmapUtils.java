@@ -23,17 +23,26 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
 import android.media.ExifInterface;
 import android.net.Uri;
 import android.webkit.MimeTypeMap;
 
+import androidx.annotation.Nullable;
 import androidx.core.graphics.drawable.RoundedBitmapDrawable;
 import androidx.core.graphics.drawable.RoundedBitmapDrawableFactory;
 import com.owncloud.android.authentication.AccountUtils;
 import timber.log.Timber;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
@@ -55,13 +64,30 @@ public class BitmapUtils {
      * @return
      */
     public static Bitmap decodeSampledBitmapFromFile(String srcPath, int reqWidth, int reqHeight) {
+        return decodeSampledBitmapFromFile(srcPath, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Decodes a bitmap from a file containing it minimizing the memory use, known that the bitmap
+     * will be drawn in a surface of reqWidth x reqHeight. The pixels are decoded into a bitmap taken
+     * from bitmapPool when there is a suitable one, so the result should be given back to the pool
+     * once it is not needed anymore.
+     *
+     * @param srcPath       Absolute path to the file containing the image.
+     * @param reqWidth      Width of the surface where the Bitmap will be drawn on, in pixels.
+     * @param reqHeight     Height of the surface where the Bitmap will be drawn on, in pixels.
+     * @param bitmapPool    Pool of bitmaps to reuse as decoding target; if null, a new bitmap is allocated.
+     * @return
+     */
+    public static Bitmap decodeSampledBitmapFromFile(String srcPath, int reqWidth, int reqHeight,
+                                                     BitmapPool bitmapPool) {
 
         // set desired options that will affect the size of the bitmap
         final Options options = new Options();
         options.inScaled = true;
         options.inPurgeable = true;
         options.inPreferQualityOverSpeed = false;
-        options.inMutable = false;
+        options.inMutable = bitmapPool != null;
 
         // make a false load of the bitmap to get its dimensions
         options.inJustDecodeBounds = true;
@@ -73,9 +99,85 @@ public class BitmapUtils {
 
         // decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
+
+        if (bitmapPool != null && options.outWidth > 0 && options.outHeight > 0) {
+            // round up, decoders may keep the last partial sample
+            final int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            final int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = bitmapPool.getReusable(sampledWidth, sampledHeight, Bitmap.Config.ARGB_8888);
+            if (options.inBitmap != null) {
+                try {
+                    return BitmapFactory.decodeFile(srcPath, options);
+                } catch (IllegalArgumentException e) {
+                    // the pooled bitmap can not hold the image; decode into a new one
+                    Timber.d("Pooled bitmap not reusable for %s", srcPath);
+                    bitmapPool.put(options.inBitmap);
+                    options.inBitmap = null;
+                }
+            }
+        }
         return BitmapFactory.decodeFile(srcPath, options);
     }
 
+    /**
+     * Creates the thumbnail of a picture decoded from a local file, with {@link #extractThumbnail} and rotated
+     * according to its EXIF orientation. Bitmaps not used as the thumbnail are given back to bitmapPool.
+     *
+     * @param decoded       Bitmap decoded from the file, taken from bitmapPool.
+     * @param storagePath   Path to the file, to read its EXIF orientation.
+     * @param px            Size of the thumbnail, in pixels.
+     * @param bitmapPool    Pool to get bitmaps from and to give them back to.
+     * @return The thumbnail.
+     */
+    public static Bitmap createThumbnail(Bitmap decoded, String storagePath, int px, BitmapPool bitmapPool) {
+        Bitmap thumbnail = extractThumbnail(decoded, px, px, bitmapPool);
+        if (thumbnail != decoded) {
+            bitmapPool.put(decoded);
+        }
+        return rotateImage(thumbnail, storagePath, bitmapPool);
+    }
+
+    /**
+     * Creates a centered bitmap of width x height from source, scaling it down to cover the
+     * whole surface and cropping what exceeds it, like
+     * {@link android.media.ThumbnailUtils#extractThumbnail(Bitmap, int, int)}, but drawing
+     * into a bitmap taken from bitmapPool.
+     *
+     * @param source        Bitmap to extract the thumbnail from. It is not modified nor recycled.
+     * @param width         Width of the thumbnail, in pixels.
+     * @param height        Height of the thumbnail, in pixels.
+     * @param bitmapPool    Pool to get the target bitmap from.
+     * @return The thumbnail, or source itself if it already has the requested size.
+     */
+    public static Bitmap extractThumbnail(Bitmap source, int width, int height, BitmapPool bitmapPool) {
+        if (source == null) {
+            return null;
+        }
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+
+        final float scale = Math.max(
+                (float) width / source.getWidth(),
+                (float) height / source.getHeight()
+        );
+        final float scaledWidth = source.getWidth() * scale;
+        final float scaledHeight = source.getHeight() * scale;
+        final float left = (width - scaledWidth) / 2;
+        final float top = (height - scaledHeight) / 2;
+
+        final Bitmap thumbnail = bitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+        thumbnail.eraseColor(Color.TRANSPARENT);
+        final Canvas canvas = new Canvas(thumbnail);
+        canvas.drawBitmap(
+                source,
+                null,
+                new RectF(left, top, left + scaledWidth, top + scaledHeight),
+                new Paint(Paint.FILTER_BITMAP_FLAG)
+        );
+        return thumbnail;
+    }
+
     /**
      * Calculates a proper value for options.inSampleSize in order to decode a Bitmap minimizing 
      * the memory overload and covering a target surface of reqWidth x reqHeight if the original
@@ -117,9 +219,27 @@ public class BitmapUtils {
      * @return correctly EXIF-rotated bitmap
      */
     public static Bitmap rotateImage(final Bitmap bitmap, final String storagePath) {
+        return rotateImage(bitmap, storagePath, null);
+    }
+
+    /**
+     * Rotate bitmap according to EXIF orientation, giving the replaced bitmap back to a pool.
+     *
+     * @param bitmap      Bitmap to be rotated; returned as is if the orientation is normal.
+     * @param storagePath Path to source file of bitmap. Needed for EXIF information.
+     * @param bitmapPool  Pool to give the replaced bitmap back to; it is recycled if null.
+     * @return correctly EXIF-rotated bitmap
+     */
+    public static Bitmap rotateImage(final Bitmap bitmap, final String storagePath,
+                                     @Nullable BitmapPool bitmapPool) {
         try {
             ExifInterface exifInterface = new ExifInterface(storagePath);
             final int orientation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, 1);
+            if (orientation == ExifInterface.ORIENTATION_NORMAL ||
+                    orientation == ExifInterface.ORIENTATION_UNDEFINED) {
+                // a mutable bitmap would be copied even with an identity matrix
+                return bitmap;
+            }
 
             Matrix matrix = new Matrix();
             // 1: nothing to do
@@ -154,7 +274,11 @@ public class BitmapUtils {
             final Bitmap resultBitmap = Bitmap.createBitmap(bitmap, 0, 0,
                     bitmap.getWidth(), bitmap.getHeight(), matrix, true);
             if (resultBitmap != bitmap) {
-                bitmap.recycle();
+                if (bitmapPool != null) {
+                    bitmapPool.put(bitmap);
+                } else {
+                    bitmap.recycle();
+                }
             }
             return resultBitmap;
         } catch (Exception exception) {
@@ -163,6 +287,112 @@ public class BitmapUtils {
         }
     }
 
+    /**
+     * EXIF tags copied from a picture to its downscaled version by {@link #downscaleJpeg(File, File, int, int)}.
+     */
+    private static final String[] DOWNSCALE_PRESERVED_EXIF_TAGS = {
+            ExifInterface.TAG_ORIENTATION,
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_DATETIME_DIGITIZED,
+            ExifInterface.TAG_DATETIME_ORIGINAL,
+            ExifInterface.TAG_SUBSEC_TIME,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_SOFTWARE,
+            ExifInterface.TAG_ARTIST,
+            ExifInterface.TAG_COPYRIGHT,
+            ExifInterface.TAG_EXPOSURE_TIME,
+            ExifInterface.TAG_F_NUMBER,
+            ExifInterface.TAG_ISO_SPEED_RATINGS,
+            ExifInterface.TAG_FOCAL_LENGTH,
+            ExifInterface.TAG_FLASH,
+            ExifInterface.TAG_WHITE_BALANCE,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF,
+            ExifInterface.TAG_GPS_ALTITUDE,
+            ExifInterface.TAG_GPS_ALTITUDE_REF,
+            ExifInterface.TAG_GPS_DATESTAMP,
+            ExifInterface.TAG_GPS_TIMESTAMP,
+            ExifInterface.TAG_GPS_PROCESSING_METHOD,
+    };
+
+    /**
+     * Writes into target a JPEG version of the picture in source with its longest side reduced to maxSize pixels,
+     * keeping the EXIF metadata of the picture. source is not modified.
+     *
+     * The picture is decoded subsampled to the closest power of 2 above maxSize, so that the full resolution
+     * bitmap is never held in memory, and then scaled to the exact size.
+     *
+     * @param source        Picture to downscale.
+     * @param target        File to write the downscaled picture to; it is overwritten if it exists.
+     * @param maxSize       Maximum width and height of the downscaled picture, in pixels.
+     * @param quality       JPEG compression quality, from 0 to 100.
+     * @return 'true' if target was written, 'false' if source can not be decoded or is not bigger than maxSize.
+     */
+    public static boolean downscaleJpeg(File source, File target, int maxSize, int quality) throws IOException {
+        final String sourcePath = source.getAbsolutePath();
+        final Options options = new Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(sourcePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0 ||
+                Math.max(options.outWidth, options.outHeight) <= maxSize) {
+            return false;
+        }
+
+        options.inSampleSize = calculateSampleFactor(options, maxSize, maxSize);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap;
+        try {
+            final Bitmap sampled = BitmapFactory.decodeFile(sourcePath, options);
+            if (sampled == null) {
+                return false;
+            }
+            final float scale = (float) maxSize / Math.max(sampled.getWidth(), sampled.getHeight());
+            if (scale < 1) {
+                bitmap = Bitmap.createScaledBitmap(
+                        sampled,
+                        Math.max(1, Math.round(sampled.getWidth() * scale)),
+                        Math.max(1, Math.round(sampled.getHeight() * scale)),
+                        true
+                );
+                if (bitmap != sampled) {
+                    sampled.recycle();
+                }
+            } else {
+                bitmap = sampled;
+            }
+        } catch (OutOfMemoryError e) {
+            Timber.w("Not enough memory to downscale %s", sourcePath);
+            return false;
+        }
+
+        final File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            bitmap.recycle();
+            throw new IOException("Unable to create folder " + parent);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+                throw new IOException("Unable to compress " + sourcePath);
+            }
+        } finally {
+            bitmap.recycle();
+        }
+
+        final ExifInterface sourceExif = new ExifInterface(sourcePath);
+        final ExifInterface targetExif = new ExifInterface(target.getAbsolutePath());
+        for (String tag : DOWNSCALE_PRESERVED_EXIF_TAGS) {
+            final String value = sourceExif.getAttribute(tag);
+            if (value != null) {
+                targetExif.setAttribute(tag, value);
+            }
+        }
+        targetExif.saveAttributes();
+        return true;
+    }
+
     private static float fixRawHSLValue(final float value, final float upperBound, final float scale) {
         return (value > upperBound) ? upperBound
                 : (value < 0f) ? 0f
@@ -34,8 +34,18 @@ import com.owncloud.android.lib.resources.files.RemoteFile;
 import timber.log.Timber;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Static methods to help in access to local file system.
@@ -49,6 +59,12 @@ public class FileStorageUtils {
     public static Integer mSortOrderFileDisp = SORT_NAME;
     public static Boolean mSortAscendingFileDisp = true;
 
+    /**
+     * Size of the chunks copied by {@link #copyStream(InputStream, OutputStream, MessageDigest, AtomicBoolean)},
+     * big enough to make the cost of every read and write call negligible.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Get local owncloud storage path for accountName.
      */
@@ -150,11 +166,12 @@ public class FileStorageUtils {
         }
 
         Collections.sort(files, (ocFile1, ocFile2) -> {
-            if (ocFile1.getModificationTimestamp() == 0 || ocFile2.getModificationTimestamp() == 0) {
+            final long timestamp1 = ocFile1.getModificationTimestamp();
+            final long timestamp2 = ocFile2.getModificationTimestamp();
+            if (timestamp1 == 0 || timestamp2 == 0) {
                 return 0;
             } else {
-                Long obj1 = ocFile1.getModificationTimestamp();
-                return val * obj1.compareTo(ocFile2.getModificationTimestamp());
+                return val * Long.compare(timestamp1, timestamp2);
             }
         });
 
@@ -171,15 +188,16 @@ public class FileStorageUtils {
             val = -1;
         }
 
-        Collections.sort(files, (ocFile1, ocFile2) -> {
-            Long obj1 = ocFile1.getFileLength();
-            return val * obj1.compareTo(ocFile2.getFileLength());
-        });
+        Collections.sort(files, (ocFile1, ocFile2) -> val * Long.compare(ocFile1.getFileLength(),
+                ocFile2.getFileLength()));
 
     }
 
     /**
-     * Sorts list by Name
+     * Sorts list by Name, folders first
+     *
+     * Names are compared with the rules of the current locale, ignoring case. Their collation keys are computed
+     * once per file before sorting, so that comparisons don't need to allocate anything.
      *
      * @param files files to sort
      */
@@ -191,17 +209,38 @@ public class FileStorageUtils {
             val = -1;
         }
 
-        Collections.sort(files, (ocFile1, ocFile2) -> {
-            if (ocFile1.isFolder() && ocFile2.isFolder()) {
-                return val * ocFile1.getFileName().toLowerCase().compareTo(ocFile2.getFileName().toLowerCase());
-            } else if (ocFile1.isFolder()) {
-                return -1;
-            } else if (ocFile2.isFolder()) {
-                return 1;
+        final Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        final NameSortEntry[] entries = new NameSortEntry[files.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new NameSortEntry(files.get(i), collator);
+        }
+
+        Arrays.sort(entries, (entry1, entry2) -> {
+            if (entry1.mIsFolder != entry2.mIsFolder) {
+                return entry1.mIsFolder ? -1 : 1;
             }
-            return val * ocFile1.getFileName().toLowerCase().compareTo(ocFile2.getFileName().toLowerCase());
+            return val * entry1.mNameKey.compareTo(entry2.mNameKey);
         });
 
+        for (int i = 0; i < entries.length; i++) {
+            files.set(i, entries[i].mFile);
+        }
+    }
+
+    /**
+     * File to sort by name, with the values to compare already computed.
+     */
+    private static class NameSortEntry {
+        private final OCFile mFile;
+        private final boolean mIsFolder;
+        private final CollationKey mNameKey;
+
+        NameSortEntry(OCFile file, Collator collator) {
+            mFile = file;
+            mIsFolder = file.isFolder();
+            mNameKey = collator.getCollationKey(file.getFileName());
+        }
     }
 
     /**
@@ -218,6 +257,42 @@ public class FileStorageUtils {
         return (result != null) ? result : "";
     }
 
+    /**
+     * Copies in to out in a single pass, updating digest with the same bytes, so that the contents do not have to
+     * be read again to get their checksum.
+     *
+     * @param in                    Stream to copy from; it is not closed.
+     * @param out                   Stream to copy to; it is not closed.
+     * @param digest                Digest to update with the bytes copied, or null to just copy them.
+     * @param cancellationRequested Checked before every chunk copied, the copy stops when set; may be null.
+     * @return 'true' if in was copied to its end, 'false' if the copy was cancelled.
+     */
+    public static boolean copyStream(InputStream in, OutputStream out, MessageDigest digest,
+                                     AtomicBoolean cancellationRequested) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) > -1) {
+            if (cancellationRequested != null && cancellationRequested.get()) {
+                return false;
+            }
+            out.write(buffer, 0, read);
+            if (digest != null) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param type   Checksum type, as named in the ownCloud checksum header.
+     * @param digest  Digest updated with the whole contents; it is reset.
+     * @return Checksum in the format of the ownCloud checksum header, e.g. "SHA1:2fd4e1c6...".
+     */
+    public static String getChecksum(String type, MessageDigest digest) {
+        byte[] hash = digest.digest();
+        return type + ":" + String.format(Locale.ROOT, "%0" + (hash.length * 2) + "x", new BigInteger(1, hash));
+    }
+
     public static boolean deleteDir(File dir) {
         if (dir != null && dir.isDirectory()) {
             String[] children = dir.list();
@@ -22,8 +22,10 @@ package com.owncloud.android.utils;
 import timber.log.Timber;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 public class SecurityUtils {
 
@@ -41,4 +43,18 @@ public class SecurityUtils {
 
         return hash;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return SHA-256 digest of the UTF-8 bytes of the string, as 64 hexadecimal digits.
+     */
+    public static String stringToSHA256Hash(String stringToTransform) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(stringToTransform.getBytes(StandardCharsets.UTF_8));
+            return String.format(Locale.ROOT, "%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
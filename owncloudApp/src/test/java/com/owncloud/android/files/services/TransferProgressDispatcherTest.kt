@@ -0,0 +1,70 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services
+
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class TransferProgressDispatcherTest {
+
+    @Test
+    fun `first progress and completion are always delivered`() {
+        val listener = RecordingListener()
+        val dispatcher = TransferProgressDispatcher(listener, 1)
+
+        dispatcher.onTransferProgress(10, 10, 30, FILE_NAME)
+        dispatcher.onTransferProgress(10, 20, 30, FILE_NAME)
+        dispatcher.onTransferProgress(10, 30, 30, FILE_NAME)
+
+        assertEquals(listOf(10L, 30L), listener.transferred)
+        assertEquals(listOf(10L, 20L), listener.progressRates)
+    }
+
+    @Test
+    fun `progress is delivered again after the interval`() {
+        val listener = RecordingListener()
+        val dispatcher = TransferProgressDispatcher(listener, 1000)
+
+        dispatcher.onTransferProgress(10, 10, 30, FILE_NAME)
+        Thread.sleep(2)
+        dispatcher.onTransferProgress(10, 20, 30, FILE_NAME)
+
+        assertEquals(listOf(10L, 20L), listener.transferred)
+    }
+
+    private class RecordingListener : OnDatatransferProgressListener {
+        val progressRates = mutableListOf<Long>()
+        val transferred = mutableListOf<Long>()
+
+        override fun onTransferProgress(
+            progressRate: Long,
+            totalTransferredSoFar: Long,
+            totalToTransfer: Long,
+            fileName: String?
+        ) {
+            progressRates.add(progressRate)
+            transferred.add(totalTransferredSoFar)
+        }
+    }
+
+    companion object {
+        private const val FILE_NAME = "file.bin"
+    }
+}
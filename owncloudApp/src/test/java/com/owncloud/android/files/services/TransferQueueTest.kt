@@ -0,0 +1,98 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.files.services
+
+import com.owncloud.android.files.services.TransferQueue.Priority
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class TransferQueueTest {
+
+    @Test
+    fun `transfers are taken by priority`() {
+        val queue = TransferQueue<String>()
+        queue.add("retry", Priority.RETRY)
+        queue.add("camera", Priority.CAMERA_UPLOAD)
+        queue.add("offline", Priority.AVAILABLE_OFFLINE)
+        queue.add("user", Priority.USER)
+
+        assertEquals(listOf("user", "offline", "camera", "retry"), pollAll(queue))
+    }
+
+    @Test
+    fun `transfers of the same priority are taken in arrival order`() {
+        val queue = TransferQueue<String>()
+        queue.add("camera 1", Priority.CAMERA_UPLOAD)
+        queue.add("user 1", Priority.USER)
+        queue.add("camera 2", Priority.CAMERA_UPLOAD)
+        queue.add("user 2", Priority.USER)
+
+        assertEquals(listOf("user 1", "user 2", "camera 1", "camera 2"), pollAll(queue))
+    }
+
+    @Test
+    fun `waiting transfers are promoted`() {
+        val queue = TransferQueue<String>(AGING_MILLIS)
+        queue.add("retry", Priority.RETRY)
+        // long enough to be promoted over every other priority but the user one
+        Thread.sleep(AGING_MILLIS * (Priority.values().size + 1))
+        queue.add("camera", Priority.CAMERA_UPLOAD)
+
+        assertEquals(listOf("retry", "camera"), pollAll(queue))
+    }
+
+    @Test
+    fun `waiting transfers are never promoted over user transfers`() {
+        val queue = TransferQueue<String>(AGING_MILLIS)
+        queue.add("retry", Priority.RETRY)
+        queue.add("camera", Priority.CAMERA_UPLOAD)
+        Thread.sleep(AGING_MILLIS * (Priority.values().size + 1))
+        queue.add("offline", Priority.AVAILABLE_OFFLINE)
+        queue.add("user", Priority.USER)
+
+        // aged transfers are taken as the highest priority below the user one, older first
+        assertEquals(listOf("user", "retry", "camera", "offline"), pollAll(queue))
+    }
+
+    @Test
+    fun `retries requested by the user are not delayed by camera uploads`() {
+        val queue = TransferQueue<String>()
+        queue.add("camera 1", Priority.of(false, true, false))
+        queue.add("automatic retry", Priority.of(true, false, false))
+        queue.add("camera 2", Priority.of(false, true, false))
+        queue.add("user retry", Priority.of(false, false, false))
+
+        assertEquals(listOf("user retry", "camera 1", "camera 2", "automatic retry"), pollAll(queue))
+    }
+
+    @Test
+    fun `empty queue`() {
+        val queue = TransferQueue<String>()
+        assertNull(queue.poll())
+        assertEquals(0, queue.size())
+    }
+
+    private fun pollAll(queue: TransferQueue<String>): List<String> =
+        generateSequence { queue.poll() }.toList()
+
+    companion object {
+        private const val AGING_MILLIS = 10L
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class FolderRefresherTest {
+
+    private lateinit var executor: ExecutorService
+    private lateinit var folderRefresher: FolderRefresher
+
+    private var now = 0L
+    private val refreshes = AtomicInteger()
+    private val notifications = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        executor = Executors.newFixedThreadPool(4)
+        folderRefresher = FolderRefresher(FRESHNESS_WINDOW_MS, executor) { now }
+    }
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun `fifty queries of a folder refresh it once`() {
+        val refreshStarted = CountDownLatch(1)
+        val releaseRefresh = CountDownLatch(1)
+        val refreshed = CountDownLatch(1)
+        val queries = Executors.newFixedThreadPool(8)
+
+        val loading = AtomicInteger()
+        repeat(QUERIES) {
+            queries.execute {
+                val isLoading = folderRefresher.refreshIfNeeded(
+                    FOLDER_ID,
+                    refresh = {
+                        refreshes.incrementAndGet()
+                        refreshStarted.countDown()
+                        releaseRefresh.await()
+                    },
+                    onRefreshed = {
+                        notifications.incrementAndGet()
+                        refreshed.countDown()
+                    }
+                )
+                if (isLoading) loading.incrementAndGet()
+            }
+        }
+        queries.shutdown()
+        assertTrue(queries.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS))
+        assertTrue(refreshStarted.await(TIMEOUT_S, TimeUnit.SECONDS))
+
+        releaseRefresh.countDown()
+        assertTrue(refreshed.await(TIMEOUT_S, TimeUnit.SECONDS))
+
+        assertEquals(1, refreshes.get())
+        assertEquals(1, notifications.get())
+        assertEquals(QUERIES, loading.get())
+
+        // the query following the notification shows the refreshed content
+        assertFalse(query(FOLDER_ID))
+        assertEquals(1, refreshes.get())
+    }
+
+    @Test
+    fun `folder is refreshed again after the freshness window`() {
+        assertTrue(query(FOLDER_ID))
+        waitForRefreshes(1)
+
+        now += FRESHNESS_WINDOW_MS - 1
+        assertFalse(query(FOLDER_ID))
+
+        now += 1
+        assertTrue(query(FOLDER_ID))
+        waitForRefreshes(2)
+    }
+
+    @Test
+    fun `folders are refreshed independently`() {
+        assertTrue(query(FOLDER_ID))
+        assertTrue(query(FOLDER_ID + 1))
+        waitForRefreshes(2)
+    }
+
+    @Test
+    fun `folder changed by an operation is not refreshed`() {
+        folderRefresher.setRefreshed(FOLDER_ID)
+
+        assertFalse(query(FOLDER_ID))
+        assertEquals(0, refreshes.get())
+    }
+
+    @Test
+    fun `refreshes older than the freshness window are forgotten`() {
+        repeat(QUERIES) { folderRefresher.setRefreshed(FOLDER_ID + it) }
+        assertEquals(QUERIES, folderRefresher.recentRefreshCount)
+
+        now += FRESHNESS_WINDOW_MS
+        folderRefresher.setRefreshed(FOLDER_ID)
+        assertEquals(1, folderRefresher.recentRefreshCount)
+    }
+
+    private fun query(folderId: Long): Boolean =
+        folderRefresher.refreshIfNeeded(
+            folderId,
+            refresh = { refreshes.incrementAndGet() },
+            onRefreshed = { notifications.incrementAndGet() }
+        )
+
+    private fun waitForRefreshes(expected: Int) {
+        val deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_S)
+        while (notifications.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(WAIT_STEP_MS)
+        }
+        assertEquals(expected, refreshes.get())
+        assertEquals(expected, notifications.get())
+    }
+
+    companion object {
+        private const val FOLDER_ID = 42L
+        private const val QUERIES = 50
+        private const val FRESHNESS_WINDOW_MS = 30_000L
+        private const val TIMEOUT_S = 5L
+        private const val WAIT_STEP_MS = 10L
+    }
+}
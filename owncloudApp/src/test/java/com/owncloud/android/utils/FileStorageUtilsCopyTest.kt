@@ -0,0 +1,70 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.security.MessageDigest
+import java.util.Random
+import java.util.concurrent.atomic.AtomicBoolean
+
+class FileStorageUtilsCopyTest {
+
+    @Test
+    fun `copy computes the checksum of the contents copied`() {
+        val contents = randomBytes(CHECKED_SIZE)
+        val out = ByteArrayOutputStream()
+        val digest = MessageDigest.getInstance("SHA-1")
+
+        assertTrue(FileStorageUtils.copyStream(ByteArrayInputStream(contents), out, digest, AtomicBoolean(false)))
+
+        assertArrayEquals(contents, out.toByteArray())
+        assertEquals(
+            FileStorageUtils.getChecksum("SHA1", MessageDigest.getInstance("SHA-1").apply { update(contents) }),
+            FileStorageUtils.getChecksum("SHA1", digest)
+        )
+    }
+
+    @Test
+    fun `checksum is formatted as in the checksum header`() {
+        val digest = MessageDigest.getInstance("SHA-1").apply { update("abc".toByteArray()) }
+        assertEquals("SHA1:a9993e364706816aba3e25717850c26c9cd0d89d", FileStorageUtils.getChecksum("SHA1", digest))
+    }
+
+    @Test
+    fun `copy stops when cancelled`() {
+        val out = ByteArrayOutputStream()
+        assertFalse(
+            FileStorageUtils.copyStream(ByteArrayInputStream(randomBytes(CHECKED_SIZE)), out, null, AtomicBoolean(true))
+        )
+        assertEquals(0, out.size())
+    }
+
+    private fun randomBytes(size: Int) = ByteArray(size).also { Random(SEED).nextBytes(it) }
+
+    companion object {
+        private const val CHECKED_SIZE = 1_000_000
+        private const val SEED = 42L
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * ownCloud Android client application
+ *
+ * Copyright (C) 2020 ownCloud GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils
+
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Vector
+
+class FileStorageUtilsSortTest {
+
+    @Test
+    fun `sort by name puts folders first and ignores case`() {
+        val files = Vector(
+            listOf(
+                file("/b.txt"), folder("/Zeta/"), file("/A.txt"), folder("/alpha/"), file("/c.txt")
+            )
+        )
+
+        FileStorageUtils.sortFolder(files, FileStorageUtils.SORT_NAME, true)
+        assertEquals(listOf("alpha", "Zeta", "A.txt", "b.txt", "c.txt"), files.map { it.fileName })
+
+        FileStorageUtils.sortFolder(files, FileStorageUtils.SORT_NAME, false)
+        assertEquals(listOf("Zeta", "alpha", "c.txt", "b.txt", "A.txt"), files.map { it.fileName })
+    }
+
+    @Test
+    fun `sort by size and date`() {
+        val files = Vector((1..5).map { i ->
+            file("/file_$i.txt").apply {
+                fileLength = (i * 7 % 5).toLong()
+                modificationTimestamp = (i * 3 % 5 + 1).toLong()
+            }
+        })
+
+        FileStorageUtils.sortFolder(files, FileStorageUtils.SORT_SIZE, true)
+        assertEquals(listOf(0L, 1L, 2L, 3L, 4L), files.map { it.fileLength })
+
+        FileStorageUtils.sortFolder(files, FileStorageUtils.SORT_DATE, false)
+        assertEquals(listOf(5L, 4L, 3L, 2L, 1L), files.map { it.modificationTimestamp })
+    }
+
+    private fun file(path: String) = OCFile(path).apply { mimetype = "text/plain" }
+
+    private fun folder(path: String) = OCFile(path).apply { mimetype = "DIR" }
+}